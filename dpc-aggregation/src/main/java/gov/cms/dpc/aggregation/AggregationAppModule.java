@@ -63,11 +63,18 @@ public class AggregationAppModule extends DropwizardAwareModule<DPCAggregationCo
     OperationsConfig provideOperationsConfig() {
         final var config = getConfiguration();
 
-        return new OperationsConfig(
+        return new OperationsConfig.Builder(
                 config.getResourcesPerFileCount(),
                 config.getExportPath(),
                 config.getRetryCount(),
-                config.getPollingFrequency()
-        );
+                config.getPollingFrequency())
+                .workerCount(config.getWorkerCount())
+                .patientConcurrency(config.getPatientConcurrency())
+                .pagePrefetch(config.getPagePrefetch())
+                .checkpointPatientCount(config.getCheckpointPatientCount())
+                .checkpointFrequency(config.getCheckpointFrequency())
+                .compressOutput(config.isCompressOutput())
+                .beneficiaryGroupSize(config.getBeneficiaryGroupSize())
+                .build();
     }
 }
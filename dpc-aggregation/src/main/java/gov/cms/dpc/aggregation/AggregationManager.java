@@ -1,35 +1,53 @@
 package gov.cms.dpc.aggregation;
 
 import gov.cms.dpc.aggregation.engine.AggregationEngine;
+import gov.cms.dpc.aggregation.engine.OperationsConfig;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages the lifecycle of the pool of {@link AggregationEngine} workers.
+ * Each worker runs on its own thread, claims its own batches from the queue and has its own aggregator ID.
+ */
 public class AggregationManager implements Managed {
 
     private static final Logger logger = LoggerFactory.getLogger(AggregationManager.class);
 
-    private final Thread thread;
-    private final AggregationEngine engine;
+    private final List<Thread> threads;
+    private final List<AggregationEngine> engines;
 
     @Inject
-    public AggregationManager(AggregationEngine engine) {
-        logger.info("Instantiating Aggregation Manager");
-        this.engine = engine;
-        thread = new Thread(this.engine);
+    public AggregationManager(Provider<AggregationEngine> engineProvider, OperationsConfig operationsConfig) {
+        final int workerCount = operationsConfig.getWorkerCount();
+        logger.info("Instantiating Aggregation Manager with {} workers", workerCount);
+        this.threads = new ArrayList<>(workerCount);
+        this.engines = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            final AggregationEngine engine = engineProvider.get();
+            this.engines.add(engine);
+            this.threads.add(new Thread(engine, String.format("aggregation-worker-%d", i)));
+        }
     }
 
     @Override
     public void start() {
-        logger.debug("Starting Aggregation thread");
-        thread.start();
+        logger.debug("Starting {} Aggregation threads", threads.size());
+        threads.forEach(Thread::start);
     }
 
     @Override
     public void stop() {
-        logger.debug("Stopping Aggregation thread");
-        this.engine.stop();
+        logger.debug("Stopping {} Aggregation threads", threads.size());
+        engines.forEach(AggregationEngine::stop);
+    }
+
+    List<AggregationEngine> getEngines() {
+        return engines;
     }
-}
\ No newline at end of file
+}
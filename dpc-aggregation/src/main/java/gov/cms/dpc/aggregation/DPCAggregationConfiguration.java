@@ -46,9 +46,43 @@ public class DPCAggregationConfiguration extends TypesafeConfiguration implement
     @Max(100000) // Keep files under a GB
     private int resourcesPerFileCount = 10000;
 
-    // How often in milliseconds to check the queue for new batches
+    // The longest time in milliseconds to wait between checks of the queue for new batches.
+    // Aggregators are woken up when batches are submitted, so this is only a fallback for missed notifications.
     @Min(50)
-    private int pollingFrequency = 500;
+    private int pollingFrequency = 5000;
+
+    // The number of batches this aggregator will work on concurrently, each on its own worker thread
+    @Min(1)
+    @Max(64)
+    private int workerCount = 1;
+
+    // The number of patients of a batch that are fetched from BlueButton concurrently. Output is still written in patient order.
+    @Min(1)
+    @Max(100)
+    private int patientConcurrency = 1;
+
+    // The number of pages of resources of a patient that are fetched from BlueButton ahead of the writing
+    @Min(1)
+    @Max(16)
+    private int pagePrefetch = 2;
+
+    // The batch progress is saved after this many patients, or this many milliseconds, whichever comes first.
+    // The frequency has to stay well under the 5 minutes after which the queue considers a running batch as stuck.
+    @Min(1)
+    private int checkpointPatientCount = 1;
+
+    @Min(0)
+    @Max(120000)
+    private int checkpointFrequency = 0;
+
+    // Write the export files gzip compressed. The API decompresses them for clients which do not accept gzip.
+    private boolean compressOutput = false;
+
+    // The number of patients searched for together in a single BlueButton request, 1 to fetch each patient on its own.
+    // BlueButton has to support multi-valued patient parameters, patients it returns nothing for are still fetched on their own.
+    @Min(1)
+    @Max(100)
+    private int beneficiaryGroupSize = 1;
 
     @Override
     public DataSourceFactory getDatabase() {
@@ -80,6 +114,34 @@ public class DPCAggregationConfiguration extends TypesafeConfiguration implement
         return resourcesPerFileCount;
     }
 
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public int getPatientConcurrency() {
+        return patientConcurrency;
+    }
+
+    public int getPagePrefetch() {
+        return pagePrefetch;
+    }
+
+    public int getCheckpointPatientCount() {
+        return checkpointPatientCount;
+    }
+
+    public int getCheckpointFrequency() {
+        return checkpointFrequency;
+    }
+
+    public boolean isCompressOutput() {
+        return compressOutput;
+    }
+
+    public int getBeneficiaryGroupSize() {
+        return beneficiaryGroupSize;
+    }
+
     @Override
     public BBClientConfiguration getBlueButtonConfiguration() {
         return this.clientConfiguration;
@@ -8,14 +8,18 @@ import gov.cms.dpc.bluebutton.client.BlueButtonClient;
 import gov.cms.dpc.common.utils.MetricMaker;
 import gov.cms.dpc.queue.IJobQueue;
 import gov.cms.dpc.queue.annotations.AggregatorID;
+import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.CompositeException;
 import io.reactivex.exceptions.UndeliverableException;
 import io.reactivex.plugins.RxJavaPlugins;
-import org.bouncycastle.jcajce.provider.digest.SHA256;
+import io.reactivex.schedulers.Schedulers;
 import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.reactivestreams.Publisher;
@@ -23,10 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +47,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * - It starts with an iteration of resource types in a job and produces a series of JobQueueBatchFile for that resource type
  * - Partial job batches are saved out and written along the way
  * - When the aggregator shuts down, a batch is paused and another aggregator can claim the batch to continue processing
+ * - An aggregator may run several engines (workers) concurrently, see {@link OperationsConfig#getWorkerCount()}.
+ *   Each engine has its own aggregator ID, but they share the {@link BlueButtonClient} and the engine metrics
  */
 public class AggregationEngine implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(AggregationEngine.class);
@@ -53,8 +60,11 @@ public class AggregationEngine implements Runnable {
     private final FhirContext fhirContext;
     private final Meter resourceMeter;
     private final Meter operationalOutcomeMeter;
+    private final Meter bytesWrittenMeter;
     private Disposable subscribe;
     private AtomicBoolean queueRunning = new AtomicBoolean(false);
+    private final AtomicBoolean batchClaimed = new AtomicBoolean(false);
+    private final AtomicBoolean blueButtonUnavailable = new AtomicBoolean(false);
 
     /**
      * Create an engine.
@@ -74,10 +84,11 @@ public class AggregationEngine implements Runnable {
         this.fhirContext = fhirContext;
         this.operationsConfig = operationsConfig;
 
-        // Metrics
+        // Metrics, shared by all the engines of the pool
         final var metricFactory = new MetricMaker(metricRegistry, AggregationEngine.class);
         resourceMeter = metricFactory.registerMeter("resourceFetched");
         operationalOutcomeMeter = metricFactory.registerMeter("operationalOutcomes");
+        bytesWrittenMeter = metricFactory.registerMeter("bytesWritten");
     }
 
     /**
@@ -86,7 +97,8 @@ public class AggregationEngine implements Runnable {
     @Override
     public void run() {
         // Run loop
-        logger.info("Starting aggregation engine with exportPath:\"{}\" resourcesPerFile:{} ",
+        logger.info("Starting aggregation engine {} with exportPath:\"{}\" resourcesPerFile:{} ",
+                aggregatorID,
                 operationsConfig.getExportPath(),
                 operationsConfig.getResourcesPerFileCount());
         setGlobalErrorHandler();
@@ -97,8 +109,10 @@ public class AggregationEngine implements Runnable {
      * Stop the engine.
      */
     public void stop() {
-        logger.info("Shutting down aggregation engine");
-        this.subscribe.dispose();
+        logger.info("Shutting down aggregation engine {}", aggregatorID);
+        if (this.subscribe != null) {
+            this.subscribe.dispose();
+        }
         queueRunning.set(false);
     }
 
@@ -108,19 +122,21 @@ public class AggregationEngine implements Runnable {
 
     /**
      * The main run-loop of the engine.
+     * <p>
+     * After a batch is processed the queue is claimed again straight away. When the queue is empty, the engine waits
+     * until the queue signals that new batches are available, or {@link OperationsConfig#getPollingFrequency()} milliseconds at most.
      */
     protected void pollQueue() {
         queueRunning.set(true);
-        subscribe = Observable.fromCallable(() -> this.queue.claimBatch(aggregatorID))
+        subscribe = Observable.fromCallable(this::claimBatch)
                 .doOnNext(job -> logger.trace("Polling queue for job"))
                 .doOnError(error -> logger.error("Unable to complete job.", error))
                 .onErrorResumeNext(Observable.empty()) // Keep the queue running on error
                 .filter(Optional::isPresent)
                 .map(Optional::get)
-                .repeatWhen(completed -> {
-                    logger.debug(String.format("No job, polling again in %d milliseconds", operationsConfig.getPollingFrequency()));
-                    return completed.delay(operationsConfig.getPollingFrequency(), TimeUnit.MILLISECONDS);
-                })
+                // Use the io scheduler, as the batch is processed on the polling thread and blocks it until completion.
+                // The computation scheduler is sized to the number of cores and would limit the number of concurrent workers.
+                .repeatWhen(completed -> completed.concatMapSingle(c -> Single.fromCallable(this::awaitNextPoll).subscribeOn(Schedulers.io())))
                 .subscribe(this::processJobBatch, error -> {
                     logger.error("Fatal error processing the queue! Queue processing is stopping!", error);
                     queueRunning.set(false);
@@ -128,83 +144,219 @@ public class AggregationEngine implements Runnable {
     }
 
     /**
-     * Loops over the partials of a job batch and handles completed, error, and paused job scenarios
+     * Claim a batch from the queue, recording whether one was found.
+     *
+     * @return the claimed batch, if any
+     */
+    private Optional<JobQueueBatch> claimBatch() {
+        batchClaimed.set(false);
+        final Optional<JobQueueBatch> batch = this.queue.claimBatch(aggregatorID);
+        batchClaimed.set(batch.isPresent());
+        return batch;
+    }
+
+    /**
+     * Wait before claiming from the queue again. There is no wait after a batch was processed, as there may be more batches waiting.
+     * After a batch was paused because BlueButton is unavailable, the engine backs off for the polling frequency, whatever the queue signals.
+     *
+     * @return {@code true} new batches were signalled
+     * @throws InterruptedException - If the engine is stopped while waiting
+     */
+    private boolean awaitNextPoll() throws InterruptedException {
+        if (blueButtonUnavailable.getAndSet(false)) {
+            logger.info("BlueButton is unavailable, waiting {} milliseconds before claiming another batch", operationsConfig.getPollingFrequency());
+            TimeUnit.MILLISECONDS.sleep(operationsConfig.getPollingFrequency());
+            return false;
+        }
+        if (batchClaimed.get()) {
+            return true;
+        }
+        logger.debug("No job, waiting for new batches for up to {} milliseconds", operationsConfig.getPollingFrequency());
+        return this.queue.awaitNewBatches(aggregatorID, operationsConfig.getPollingFrequency(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loops over the partials of a job batch and handles completed, error, and paused job scenarios.
+     * <p>
+     * Patients are fetched from BlueButton in groups of {@link OperationsConfig#getBeneficiaryGroupSize()}, with a single search for each resource type of a group.
+     * Up to {@link OperationsConfig#getPatientConcurrency()} groups are fetched from BlueButton concurrently,
+     * but the fetched resources are written (and the batch progress saved) one patient at a time, in patient order.
+     * This keeps the output files deterministic and the patient index an accurate checkpoint.
+     * <p>
+     * Resources are written a page at a time as they arrive, on a separate thread from the fetching.
+     * Each patient has at most {@link OperationsConfig#getPagePrefetch()} pages fetched ahead of the writing.
+     * <p>
+     * The batch progress is saved every {@link OperationsConfig#getCheckpointPatientCount()} patients or
+     * {@link OperationsConfig#getCheckpointFrequency()} milliseconds, whichever comes first.
+     * Completing, pausing or failing the batch saves any remaining progress.
+     * <p>
+     * If the BlueButton circuit breaker is open when a patient is started, the patients before it are written and the batch is paused
+     * rather than failed, so it can be claimed again once BlueButton has recovered.
      *
      * @param job - the job to process
      */
     @Trace
     protected void processJobBatch(JobQueueBatch job) {
+        // Writers are kept for the whole batch, so they can keep their files open and track the running checksum and length
+        final Map<ResourceType, ResourceWriter> writers = new HashMap<>();
         try {
             logger.info("Processing job {} batch {}, exporting to: {}.", job.getJobID(), job.getBatchID(), this.operationsConfig.getExportPath());
-            logger.debug("Has {} attributed beneficiaries", job.getPatients().size());
+            logger.debug("Has {} attributed beneficiaries", job.getPatientCount());
 
-            Optional<String> nextPatientID = job.fetchNextPatient(aggregatorID);
+            final List<String> patients = job.getPatients();
+            final int startIndex = Math.min(job.getPatientIndex().orElse(-1) + 1, patients.size());
+            final int pagePrefetch = operationsConfig.getPagePrefetch();
+            final var checkpoint = new Checkpoint(operationsConfig.getCheckpointPatientCount(), operationsConfig.getCheckpointFrequency());
 
             // Stop processing when no patients or early shutdown
-            boolean queueRunning = true;
-            while (nextPatientID.isPresent()) {
-                this.processJobBatchPartial(job, nextPatientID.get());
-
-                // Check if the subscriber is still running before getting the next part of the batch
-                queueRunning = !this.subscribe.isDisposed();
-                nextPatientID = queueRunning ? job.fetchNextPatient(aggregatorID) : Optional.empty();
-            }
+            Flowable.fromIterable(patients.subList(startIndex, patients.size()))
+                    .buffer(operationsConfig.getBeneficiaryGroupSize())
+                    // Errors are delayed to the patient boundary, so a failed patient never interrupts the writing of the patient before it
+                    .concatMapEagerDelayError(group -> fetchGroup(job, group).subscribeOn(Schedulers.io()),
+                            operationsConfig.getPatientConcurrency(), pagePrefetch, false)
+                    // Write on another thread, so the next pages are fetched while the current one is written
+                    .observeOn(Schedulers.io(), false, pagePrefetch)
+                    .map(page -> this.processJobBatchPartial(job, writers, checkpoint, page))
+                    // Check if the subscriber is still running before getting the next part of the batch
+                    .takeUntil(page -> page.isPatientComplete() && this.subscribe.isDisposed())
+                    .ignoreElements()
+                    .blockingAwait();
 
             // Finish processing the batch
-            if (queueRunning) {
+            if (!this.subscribe.isDisposed() || isAllPatientsProcessed(job)) {
                 logger.info("COMPLETED job {} batch {}", job.getJobID(), job.getBatchID());
-                // Calculate metadata for the file (length and checksum)
-                calculateFileMetadata(job);
                 this.queue.completeBatch(job, aggregatorID);
             } else {
                 logger.info("PAUSED job {} batch {}", job.getJobID(), job.getBatchID());
                 this.queue.pauseBatch(job, aggregatorID);
             }
         } catch (Exception error) {
-            logger.error("FAILED job {} batch {}", job.getJobID(), job.getBatchID(), error);
-            this.queue.failBatch(job, aggregatorID);
+            if (isBlueButtonUnavailable(error)) {
+                logger.warn("PAUSED job {} batch {}, BlueButton is unavailable", job.getJobID(), job.getBatchID());
+                blueButtonUnavailable.set(true);
+                this.queue.pauseBatch(job, aggregatorID);
+            } else {
+                logger.error("FAILED job {} batch {}", job.getJobID(), job.getBatchID(), error);
+                this.queue.failBatch(job, aggregatorID);
+            }
+        } finally {
+            closeWriters(job, writers.values());
         }
     }
 
-    private void calculateFileMetadata(JobQueueBatch job) {
-        job.getJobQueueBatchFiles()
-                .forEach(batchFile -> {
-                    final File file = new File(String.format("%s/%s.ndjson", this.operationsConfig.getExportPath(), batchFile.getFileName()));
-                    try {
-                        final byte[] checksum = generateChecksum(file);
-                        batchFile.setChecksum(checksum);
-                    } catch (IOException e) { // If we can't generate the checksum, that's a faulting error, just continue
-                        logger.error("Unable to generate checksum for file {}", batchFile.getFileName());
-                    }
-                    batchFile.setFileLength(file.length());
-                });
+    private static void closeWriters(JobQueueBatch job, Collection<ResourceWriter> writers) {
+        for (final ResourceWriter writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.error("Unable to close {} file of job {} batch {}", writer.getResourceType(), job.getJobID(), job.getBatchID(), e);
+            }
+        }
     }
 
     /**
-     * Processes a partial of a job batch. Marks the partial as completed upon processing
+     * Whether the processing of a batch stopped only because the BlueButton circuit breaker is open.
+     * Several patients may be stopped by the breaker at the same time, in which case their errors are combined.
      *
-     * @param job       - the job to process
-     * @param patientID - The current patient id processing
+     * @param error - the error processing the batch
+     * @return {@code true} all the errors are from the circuit breaker
      */
-    private List<JobQueueBatchFile> processJobBatchPartial(JobQueueBatch job, String patientID) {
-        final var results = Flowable.fromIterable(job.getResourceTypes())
-                .flatMap(resourceType -> completeResource(job, patientID, resourceType))
+    private static boolean isBlueButtonUnavailable(Throwable error) {
+        if (error instanceof CompositeException) {
+            return ((CompositeException) error).getExceptions().stream().allMatch(CallNotPermittedException.class::isInstance);
+        }
+        return error instanceof CallNotPermittedException;
+    }
+
+    private static boolean isAllPatientsProcessed(JobQueueBatch job) {
+        return job.getPatientIndex().orElse(-1) + 1 >= job.getPatientCount();
+    }
+
+    /**
+     * Fetch all the resource types of the job for a group of patients.
+     * Each resource type is searched for the whole group at once, then the patients are emitted one after the other.
+     * Patients missing from the search results are fetched on their own, unless the search only looked for the updates since a point in time.
+     * The group searches are done before anything is emitted, so they can always stop the batch when BlueButton is unavailable.
+     *
+     * @param job        - the job to fetch for
+     * @param patientIDs - the patients of the group
+     * @return a flow of the pages of resources of the patients, each patient ending with a page marking it as complete
+     */
+    private Flowable<PatientPage> fetchGroup(JobQueueBatch job, List<String> patientIDs) {
+        if (patientIDs.size() == 1) {
+            return fetchPatient(job, patientIDs.get(0), List.of());
+        }
+        return Flowable.fromIterable(job.getResourceTypes())
+                .map(resourceType -> new ResourceFetcher(bbclient, job.getJobID(), job.getBatchID(), resourceType, operationsConfig, job.getSince().orElse(null)).fetchResources(patientIDs))
                 .toList()
-                .blockingGet(); // Wait on the main thread until completion
-        this.queue.completePartialBatch(job, aggregatorID);
-        return results;
+                .flatMapPublisher(fetched -> Flowable.fromIterable(patientIDs)
+                        .concatMap(patientID -> fetchPatient(job, patientID, fetched)));
     }
 
     /**
-     * Fetch and write a specific resource type
+     * Fetch all the resource types of the job for a single patient.
+     * Resource types are fetched one after the other, concurrency is across patients.
+     * Only the first resource type can stop the batch when BlueButton is unavailable, as the later ones start after resources of the patient were written.
+     *
+     * @param job       - the job to fetch for
+     * @param patientID - the patient to fetch
+     * @param fetched   - the resources already fetched for the group of the patient, by resource type, empty if the patient is not part of a group
+     * @return a flow of the pages of resources of the patient, ending with a page marking the patient as complete
+     */
+    private Flowable<PatientPage> fetchPatient(JobQueueBatch job, String patientID, List<Map<String, List<Resource>>> fetched) {
+        final List<ResourceType> resourceTypes = job.getResourceTypes();
+        return Flowable.range(0, resourceTypes.size())
+                .concatMap(index -> {
+                    final List<Resource> groupResources = fetched.isEmpty() ? null : fetched.get(index).get(patientID);
+                    if (groupResources != null) {
+                        return Flowable.just(new PatientPage(patientID, resourceTypes.get(index), groupResources));
+                    }
+                    return new ResourceFetcher(bbclient, job.getJobID(), job.getBatchID(), resourceTypes.get(index), operationsConfig, job.getSince().orElse(null))
+                            .fetchResources(patientID, index == 0)
+                            .map(resources -> new PatientPage(patientID, resourceTypes.get(index), resources));
+                }, 1)
+                .concatWith(Flowable.fromCallable(() -> PatientPage.complete(patientID)));
+    }
+
+    /**
+     * Processes a page of a partial of a job batch. Marks the partial as completed upon processing its last page,
+     * and saves the batch progress when a checkpoint is due.
+     *
+     * @param job        - the job to process
+     * @param writers    - the writers of the batch, by resource type
+     * @param checkpoint - the checkpoint state of the batch
+     * @param page       - A page of the resources fetched for the current patient
+     * @return the processed page
+     */
+    private PatientPage processJobBatchPartial(JobQueueBatch job, Map<ResourceType, ResourceWriter> writers, Checkpoint checkpoint, PatientPage page) {
+        if (!page.isPatientComplete()) {
+            completeResource(job, writers, page.getResourceType(), Flowable.fromIterable(page.getResources()))
+                    .toList()
+                    .blockingGet(); // Wait until completion
+            return page;
+        }
+
+        final String patientID = job.fetchNextPatient(aggregatorID).orElseThrow(() -> new JobQueueFailure(job.getJobID(), job.getBatchID(), "No patients left to process"));
+        if (!patientID.equals(page.getPatientID())) {
+            throw new JobQueueFailure(job.getJobID(), job.getBatchID(), "Fetched patients are out of order with the batch");
+        }
+        if (checkpoint.patientCompleted()) {
+            this.queue.completePartialBatch(job, aggregatorID);
+            checkpoint.reset();
+        }
+        return page;
+    }
+
+    /**
+     * Write the fetched resources of a specific resource type
      *
      * @param job          context
+     * @param writers      the writers of the batch, by resource type
      * @param resourceType to process
+     * @param mixedFlow    the fetched resources, including any {@link ResourceType#OperationOutcome}
      */
-    private Flowable<JobQueueBatchFile> completeResource(JobQueueBatch job, String patientID, ResourceType resourceType) {
+    private Flowable<JobQueueBatchFile> completeResource(JobQueueBatch job, Map<ResourceType, ResourceWriter> writers, ResourceType resourceType, Flowable<Resource> mixedFlow) {
         // Make this flow hot (ie. only called once) when multiple subscribers attach
-        final var fetcher = new ResourceFetcher(bbclient, job.getJobID(), job.getBatchID(), resourceType, operationsConfig);
-        final Flowable<Resource> mixedFlow = fetcher.fetchResources(patientID);
         final var connectableMixedFlow = mixedFlow.publish().autoConnect(2);
 
         // Batch the non-error resources into files
@@ -214,7 +366,7 @@ public class AggregationEngine implements Runnable {
             resourceCount.set(file.getCount());
             sequenceCount.set(file.getSequence());
         });
-        final var writer = new ResourceWriter(fhirContext, job, resourceType, operationsConfig);
+        final var writer = writers.computeIfAbsent(resourceType, type -> new ResourceWriter(fhirContext, job, type, operationsConfig, bytesWrittenMeter));
         final Flowable<JobQueueBatchFile> resourceFlow = connectableMixedFlow.compose((upstream) -> bufferAndWrite(upstream, writer, resourceCount, sequenceCount, resourceMeter));
 
         // Batch the error resources into files
@@ -224,7 +376,7 @@ public class AggregationEngine implements Runnable {
             errorResourceCount.set(file.getCount());
             errorSequenceCount.set(file.getSequence());
         });
-        final var errorWriter = new ResourceWriter(fhirContext, job, ResourceType.OperationOutcome, operationsConfig);
+        final var errorWriter = writers.computeIfAbsent(ResourceType.OperationOutcome, type -> new ResourceWriter(fhirContext, job, type, operationsConfig, bytesWrittenMeter));
         final Flowable<JobQueueBatchFile> outcomeFlow = connectableMixedFlow.compose((upstream) -> bufferAndWrite(upstream, errorWriter, errorResourceCount, errorSequenceCount, operationalOutcomeMeter));
 
         // Merge the resultant flows
@@ -319,9 +471,69 @@ public class AggregationEngine implements Runnable {
         this.subscribe = subscribe;
     }
 
-    static byte[] generateChecksum(File file) throws IOException {
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            return new SHA256.Digest().digest(fileInputStream.readAllBytes());
+    /**
+     * Tracks when the progress of a batch should next be saved
+     */
+    private static class Checkpoint {
+        private final int patientCount;
+        private final long frequency;
+        private int completedPatients;
+        private long lastCheckpoint;
+
+        Checkpoint(int patientCount, long frequency) {
+            this.patientCount = patientCount;
+            this.frequency = frequency;
+            reset();
+        }
+
+        /**
+         * Record a completed patient
+         *
+         * @return - {@code true} a checkpoint is due
+         */
+        boolean patientCompleted() {
+            completedPatients++;
+            return completedPatients >= patientCount || System.currentTimeMillis() - lastCheckpoint >= frequency;
+        }
+
+        void reset() {
+            completedPatients = 0;
+            lastCheckpoint = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A page of the resources fetched for a single patient, or the marker that all the resources of the patient have been fetched
+     */
+    private static class PatientPage {
+        private final String patientID;
+        private final ResourceType resourceType;
+        private final List<Resource> resources;
+
+        PatientPage(String patientID, ResourceType resourceType, List<Resource> resources) {
+            this.patientID = patientID;
+            this.resourceType = resourceType;
+            this.resources = resources;
+        }
+
+        static PatientPage complete(String patientID) {
+            return new PatientPage(patientID, null, List.of());
+        }
+
+        String getPatientID() {
+            return patientID;
+        }
+
+        ResourceType getResourceType() {
+            return resourceType;
+        }
+
+        List<Resource> getResources() {
+            return resources;
+        }
+
+        boolean isPatientComplete() {
+            return resourceType == null;
         }
     }
 }
@@ -5,10 +5,17 @@ package gov.cms.dpc.aggregation.engine;
  */
 public class OperationsConfig {
 
-    private int retryCount;
-    private int resourcesPerFileCount;
-    private String exportPath;
-    private int pollingFrequency;
+    private final int retryCount;
+    private final int resourcesPerFileCount;
+    private final String exportPath;
+    private final int pollingFrequency;
+    private final int workerCount;
+    private final int patientConcurrency;
+    private final int pagePrefetch;
+    private final int checkpointPatientCount;
+    private final int checkpointFrequency;
+    private final boolean compressOutput;
+    private final int beneficiaryGroupSize;
 
     public OperationsConfig(
             int resourcesPerFileCount,
@@ -16,10 +23,7 @@ public class OperationsConfig {
             int retryCount,
             int pollingFrequency
     ) {
-        this.retryCount = retryCount;
-        this.resourcesPerFileCount = resourcesPerFileCount;
-        this.exportPath = exportPath;
-        this.pollingFrequency = pollingFrequency;
+        this(new Builder(resourcesPerFileCount, exportPath, retryCount, pollingFrequency));
     }
 
     public OperationsConfig(
@@ -27,10 +31,21 @@ public class OperationsConfig {
             String exportPath,
             int pollingFrequency
     ) {
-        this.retryCount = 3;
-        this.resourcesPerFileCount = resourcesPerFileCount;
-        this.exportPath = exportPath;
-        this.pollingFrequency = pollingFrequency;
+        this(resourcesPerFileCount, exportPath, 3, pollingFrequency);
+    }
+
+    private OperationsConfig(Builder builder) {
+        this.retryCount = builder.retryCount;
+        this.resourcesPerFileCount = builder.resourcesPerFileCount;
+        this.exportPath = builder.exportPath;
+        this.pollingFrequency = builder.pollingFrequency;
+        this.workerCount = builder.workerCount;
+        this.patientConcurrency = builder.patientConcurrency;
+        this.pagePrefetch = builder.pagePrefetch;
+        this.checkpointPatientCount = builder.checkpointPatientCount;
+        this.checkpointFrequency = builder.checkpointFrequency;
+        this.compressOutput = builder.compressOutput;
+        this.beneficiaryGroupSize = builder.beneficiaryGroupSize;
     }
 
     public int getRetryCount() {
@@ -48,4 +63,97 @@ public class OperationsConfig {
     public int getPollingFrequency() {
         return pollingFrequency;
     }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public int getPatientConcurrency() {
+        return patientConcurrency;
+    }
+
+    public int getPagePrefetch() {
+        return pagePrefetch;
+    }
+
+    public int getCheckpointPatientCount() {
+        return checkpointPatientCount;
+    }
+
+    public int getCheckpointFrequency() {
+        return checkpointFrequency;
+    }
+
+    public boolean isCompressOutput() {
+        return compressOutput;
+    }
+
+    public int getBeneficiaryGroupSize() {
+        return beneficiaryGroupSize;
+    }
+
+    /**
+     * Builds an {@link OperationsConfig}. The tuning of the engine defaults to a single worker processing one patient at a time,
+     * saving the progress after each patient, without compression or grouping.
+     */
+    public static class Builder {
+
+        private final int resourcesPerFileCount;
+        private final String exportPath;
+        private final int retryCount;
+        private final int pollingFrequency;
+        private int workerCount = 1;
+        private int patientConcurrency = 1;
+        private int pagePrefetch = 2;
+        private int checkpointPatientCount = 1;
+        private int checkpointFrequency = 0;
+        private boolean compressOutput = false;
+        private int beneficiaryGroupSize = 1;
+
+        public Builder(int resourcesPerFileCount, String exportPath, int retryCount, int pollingFrequency) {
+            this.resourcesPerFileCount = resourcesPerFileCount;
+            this.exportPath = exportPath;
+            this.retryCount = retryCount;
+            this.pollingFrequency = pollingFrequency;
+        }
+
+        public Builder workerCount(int workerCount) {
+            this.workerCount = workerCount;
+            return this;
+        }
+
+        public Builder patientConcurrency(int patientConcurrency) {
+            this.patientConcurrency = patientConcurrency;
+            return this;
+        }
+
+        public Builder pagePrefetch(int pagePrefetch) {
+            this.pagePrefetch = pagePrefetch;
+            return this;
+        }
+
+        public Builder checkpointPatientCount(int checkpointPatientCount) {
+            this.checkpointPatientCount = checkpointPatientCount;
+            return this;
+        }
+
+        public Builder checkpointFrequency(int checkpointFrequency) {
+            this.checkpointFrequency = checkpointFrequency;
+            return this;
+        }
+
+        public Builder compressOutput(boolean compressOutput) {
+            this.compressOutput = compressOutput;
+            return this;
+        }
+
+        public Builder beneficiaryGroupSize(int beneficiaryGroupSize) {
+            this.beneficiaryGroupSize = beneficiaryGroupSize;
+            return this;
+        }
+
+        public OperationsConfig build() {
+            return new OperationsConfig(this);
+        }
+    }
 }
@@ -5,18 +5,26 @@ import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.dpc.bluebutton.client.BlueButtonClient;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
-import io.github.resilience4j.retry.transformer.RetryTransformer;
+import io.reactivex.Emitter;
 import io.reactivex.Flowable;
 import org.hl7.fhir.dstu3.model.*;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A resource fetcher will fetch resources of particular type from passed {@link BlueButtonClient}
@@ -28,6 +36,7 @@ class ResourceFetcher {
     private UUID jobID;
     private UUID batchID;
     private ResourceType resourceType;
+    private OffsetDateTime since;
 
     /**
      * Create a context for fetching FHIR resources
@@ -42,74 +51,167 @@ class ResourceFetcher {
                            UUID batchID,
                            ResourceType resourceType,
                     OperationsConfig config) {
+        this(blueButtonClient, jobID, batchID, resourceType, config, null);
+    }
+
+    /**
+     * Create a context for fetching the FHIR resources updated since a point in time.
+     * The Patient resource itself is always fetched, so that unknown patients are still reported.
+     * @param blueButtonClient - client to BlueButton to use
+     * @param jobID - the jobID for logging and reporting
+     * @param batchID - the batchID for logging and reporting
+     * @param resourceType - the resource type to fetch
+     * @param since - the lower bound of the last updated time of the resources, null to fetch all the resources
+     */
+    ResourceFetcher(BlueButtonClient blueButtonClient,
+                    UUID jobID,
+                    UUID batchID,
+                    ResourceType resourceType,
+                    OperationsConfig config,
+                    OffsetDateTime since) {
         this.blueButtonClient = blueButtonClient;
         this.retryConfig = RetryConfig.custom()
                 .maxAttempts(config.getRetryCount())
+                // Retrying while the circuit breaker is open only adds load once it closes
+                .ignoreExceptions(CallNotPermittedException.class)
                 .build();
         this.jobID = jobID;
         this.batchID = batchID;
         this.resourceType = resourceType;
+        this.since = since;
     }
 
     /**
      * Fetch all the resources for a specific patient. If errors are encountered from BlueButton,
      * a OperationalOutcome resource is used.
+     * <p>
+     * If the BlueButton circuit breaker is open before any resource was emitted, the {@link CallNotPermittedException} is passed along as an error
+     * so that the caller can stop and retry the patient later. Once resources have been emitted, it is turned into an OperationalOutcome like other errors.
+     * <p>
+     * The resources are emitted a page (bundle) at a time, as they are fetched. The next page is only requested from BlueButton
+     * when downstream requests it, so the number of pages held in memory is bounded by the consumer's prefetch, rather than by
+     * the number of resources of the patient. Each page request is retried on its own, so pages that were already emitted are never repeated.
      *
      * @param patientID to use
-     * @return a flow with all the resources for specific patient
+     * @return a flow with the pages of resources for specific patient
+     */
+    Flowable<List<Resource>> fetchResources(String patientID) {
+        return fetchResources(patientID, true);
+    }
+
+    /**
+     * Fetch all the resources for a specific patient, see {@link #fetchResources(String)}.
+     *
+     * @param patientID       to use
+     * @param passUnavailable {@code true} pass along a {@link CallNotPermittedException} when no resources were emitted yet
+     * @return a flow with the pages of resources for specific patient
      */
-    Flowable<Resource> fetchResources(String patientID) {
-        Retry retry = Retry.of("bb-resource-fetcher", this.retryConfig);
-        return Flowable.fromCallable(() -> {
-            logger.debug("Fetching first {} from BlueButton for {}", resourceType.toString(), patientID);
-            final Resource firstFetched = fetchFirst(patientID);
-            if (ResourceType.Coverage.equals(resourceType) || ResourceType.ExplanationOfBenefit.equals(resourceType)) {
-                return fetchAllBundles(patientID, (Bundle)firstFetched);
-            } else {
+    Flowable<List<Resource>> fetchResources(String patientID, boolean passUnavailable) {
+        final Retry retry = Retry.of("bb-resource-fetcher", this.retryConfig);
+        final AtomicBoolean emitted = new AtomicBoolean(false);
+        return Flowable.<List<Resource>, Optional<Bundle>>generate(Optional::empty, (lastBundle, emitter) -> {
+            if (lastBundle.isEmpty()) {
+                logger.debug("Fetching first {} from BlueButton for {}", resourceType.toString(), patientID);
+                final Resource firstFetched = Retry.decorateSupplier(retry, () -> fetchFirst(patientID)).get();
+                if (ResourceType.Coverage.equals(resourceType) || ResourceType.ExplanationOfBenefit.equals(resourceType)) {
+                    return emitBundle(patientID, (Bundle) firstFetched, emitter);
+                }
                 logger.debug("Done fetching {} for {}", resourceType.toString(), patientID);
-                return List.of(firstFetched);
+                emitter.onNext(List.of(firstFetched));
+                emitter.onComplete();
+                return Optional.empty();
             }
+
+            logger.debug("Fetching next bundle {} from BlueButton for {}", resourceType.toString(), patientID);
+            final Bundle nextBundle = Retry.decorateSupplier(retry, () -> blueButtonClient.requestNextBundleFromServer(lastBundle.get())).get();
+            return emitBundle(patientID, nextBundle, emitter);
         })
-                .compose(RetryTransformer.of(retry))
-                .onErrorResumeNext((Throwable error) -> handleError(patientID, error))
-                .flatMap(Flowable::fromIterable);
+                .doOnNext(page -> emitted.set(true))
+                .onErrorResumeNext((Throwable error) -> handleError(patientID, error, passUnavailable && !emitted.get()));
     }
 
     /**
-     * Given a bundle, return a list of resources in the passed in bundle and all
-     * the resources from the next bundles.
+     * Fetch the resources of several patients with a single search, following all its pages, and demultiplex them by patient.
+     * <p>
+     * This is a best effort: patients without any resources in the result, and all the patients when the search fails
+     * or returns resources of patients outside the group, are missing from the returned map.
+     * They should be fetched on their own with {@link #fetchResources(String, boolean)}, which also reports them as not found when needed.
+     * When fetching the resources updated since a point in time, most patients usually have none, so a successful search is final:
+     * the patients without resources are returned with an empty list rather than fetched again. The Patient resources are always fetched in full,
+     * so they still fall back to fetching the missing patients on their own.
+     * The resources of the group are held in memory until they are all fetched, so groups should be kept small.
      *
-     * @param patientID to fetch for
-     * @param firstBundle of resources. Included in the result list
-     * @return a list of all the resources in the first bundle and all next bundles
+     * @param patientIDs of the group
+     * @return the resources of each patient of the group found in the search
+     * @throws CallNotPermittedException if the BlueButton circuit breaker is open, nothing was fetched so the patients can be fetched again later
      */
-    private List<Resource> fetchAllBundles(String patientID, Bundle firstBundle) {
-        final var resources = new ArrayList<Resource>();
-        addResources(resources, firstBundle);
-
-        // Loop until no more next bundles
-        var bundle = firstBundle;
-        while (bundle.getLink(Bundle.LINK_NEXT) != null) {
-            logger.debug("Fetching next bundle {} from BlueButton for {}", resourceType.toString(), patientID);
-            bundle = blueButtonClient.requestNextBundleFromServer(bundle);
-            addResources(resources, bundle);
+    Map<String, List<Resource>> fetchResources(List<String> patientIDs) {
+        final Retry retry = Retry.of("bb-resource-fetcher", this.retryConfig);
+        final Set<String> group = new HashSet<>(patientIDs);
+        final Map<String, List<Resource>> resources = new LinkedHashMap<>();
+        try {
+            logger.debug("Fetching {} from BlueButton for a group of {} patients", resourceType.toString(), patientIDs.size());
+            Bundle bundle = Retry.decorateSupplier(retry, () -> fetchFirst(patientIDs)).get();
+            while (true) {
+                for (final Resource resource : extractResources(bundle)) {
+                    final String patientID = getPatientID(resource);
+                    if (!group.contains(patientID)) {
+                        // The upstream ignored the multi-valued parameter, so the result cannot be trusted to be complete
+                        logger.warn("Fetched {} of a patient outside the group, fetching each patient on its own", resourceType.toString());
+                        return Map.of();
+                    }
+                    resources.computeIfAbsent(patientID, id -> new ArrayList<>()).add(resource);
+                }
+                if (bundle.getLink(Bundle.LINK_NEXT) == null) {
+                    if (since != null && resourceType != ResourceType.Patient) {
+                        patientIDs.forEach(patientID -> resources.putIfAbsent(patientID, List.of()));
+                    }
+                    return resources;
+                }
+                final Bundle lastBundle = bundle;
+                bundle = Retry.decorateSupplier(retry, () -> blueButtonClient.requestNextBundleFromServer(lastBundle)).get();
+            }
+        } catch (JobQueueFailure | CallNotPermittedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Unable to fetch {} for a group of {} patients, fetching each patient on its own", resourceType.toString(), patientIDs.size(), e);
+            return Map.of();
         }
+    }
 
-        logger.debug("Done fetching bundles {} for {}", resourceType.toString(), patientID);
-        return resources;
+    /**
+     * Emit the resources of a bundle, and complete the flow if it is the last bundle.
+     *
+     * @param patientID to fetch for
+     * @param bundle    of resources
+     * @param emitter   to emit to
+     * @return the bundle, to fetch the next bundle from
+     */
+    private Optional<Bundle> emitBundle(String patientID, Bundle bundle, Emitter<List<Resource>> emitter) {
+        emitter.onNext(extractResources(bundle));
+        if (bundle.getLink(Bundle.LINK_NEXT) == null) {
+            logger.debug("Done fetching bundles {} for {}", resourceType.toString(), patientID);
+            emitter.onComplete();
+        }
+        return Optional.of(bundle);
     }
 
     /**
      * Turn an error into a flow.
      * @param patientID the flow
      * @param error the error
+     * @param passUnavailable pass along an open circuit breaker as an error
      * @return a Flowable of list of resources
      */
-    private Publisher<List<Resource>> handleError(String patientID, Throwable error) {
+    private Publisher<List<Resource>> handleError(String patientID, Throwable error, boolean passUnavailable) {
         if (error instanceof JobQueueFailure) {
             // JobQueueFailure is an internal error. Just pass it along as an error.
             return Flowable.error(error);
         }
+        if (passUnavailable && error instanceof CallNotPermittedException) {
+            // BlueButton is unavailable, nothing was fetched, so the patient can be fetched again later
+            return Flowable.error(error);
+        }
 
         // Other errors should be turned into OperationalOutcome and just recorded.
         logger.error("Turning error into OperationalOutcome. Error is: ", error);
@@ -128,21 +230,64 @@ class ResourceFetcher {
             case Patient:
                 return blueButtonClient.requestPatientFromServer(patientID);
             case ExplanationOfBenefit:
-                return blueButtonClient.requestEOBFromServer(patientID);
+                return since == null ? blueButtonClient.requestEOBFromServer(patientID) : blueButtonClient.requestEOBFromServer(patientID, since);
+            case Coverage:
+                return since == null ? blueButtonClient.requestCoverageFromServer(patientID) : blueButtonClient.requestCoverageFromServer(patientID, since);
+            default:
+                throw new JobQueueFailure(jobID, batchID, "Unexpected resource type: " + resourceType.toString());
+        }
+    }
+
+    /**
+     * Search for the resources of a group of patients.
+     *
+     * @param patientIDs of the group
+     * @return the first bundle of resources
+     */
+    private Bundle fetchFirst(List<String> patientIDs) {
+        switch (resourceType) {
+            case Patient:
+                return blueButtonClient.requestPatientsFromServer(patientIDs);
+            case ExplanationOfBenefit:
+                return blueButtonClient.requestEOBFromServer(patientIDs, since);
             case Coverage:
-                return blueButtonClient.requestCoverageFromServer(patientID);
+                return blueButtonClient.requestCoverageFromServer(patientIDs, since);
             default:
                 throw new JobQueueFailure(jobID, batchID, "Unexpected resource type: " + resourceType.toString());
         }
     }
 
     /**
-     * Add resources in a bundle to a list
+     * Get the ID of the patient a resource belongs to
+     *
+     * @param resource - a resource of the resource type of this fetcher
+     * @return the ID of the patient
+     */
+    private static String getPatientID(Resource resource) {
+        final Reference patient;
+        switch (resource.getResourceType()) {
+            case Patient:
+                return resource.getIdElement().getIdPart();
+            case ExplanationOfBenefit:
+                patient = ((ExplanationOfBenefit) resource).getPatient();
+                break;
+            case Coverage:
+                patient = ((Coverage) resource).getBeneficiary();
+                break;
+            default:
+                throw new DataFormatException("Unexpected resource type: " + resource.getResourceType().toString());
+        }
+        return patient.getReferenceElement().getIdPart();
+    }
+
+    /**
+     * Extract the resources of a bundle
      *
-     * @param resources - the list to add resources to
      * @param bundle - the bundle to extract resources from
+     * @return the resources of the bundle
      */
-    private void addResources(ArrayList<Resource> resources, Bundle bundle) {
+    private List<Resource> extractResources(Bundle bundle) {
+        final var resources = new ArrayList<Resource>(bundle.getEntry().size());
         bundle.getEntry().forEach((entry) -> {
             final var resource = entry.getResource();
             if (resource.getResourceType() != resourceType) {
@@ -150,6 +295,7 @@ class ResourceFetcher {
             }
             resources.add(resource);
         });
+        return resources;
     }
 
     /**
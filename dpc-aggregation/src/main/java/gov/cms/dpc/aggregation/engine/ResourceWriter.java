@@ -1,34 +1,72 @@
 package gov.cms.dpc.aggregation.engine;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.codahale.metrics.Meter;
+import com.google.common.io.CountingOutputStream;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import org.bouncycastle.jcajce.provider.digest.SHA256;
 import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Writes files from batches of FHIR Resources
+ * Writes files from batches of FHIR Resources.
+ * <p>
+ * A writer is used for the whole batch. It keeps the file it is appending to open and encodes resources directly into it,
+ * without building intermediate strings or byte arrays. The running checksum and length of the file are tracked as it is written,
+ * so the {@link JobQueueBatchFile} metadata is kept up to date without reading the file back.
+ * <p>
+ * When {@link OperationsConfig#isCompressOutput()} is set, each written batch is a complete gzip member appended to the file.
+ * A gzip file may contain multiple members, so the file is valid at every checkpoint and a resumed batch can keep appending to it.
+ * The checksum is always computed on the uncompressed NDJSON content.
  */
-class ResourceWriter {
+class ResourceWriter implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(ResourceWriter.class);
     private static final char DELIM = '\n';
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    private FhirContext fhirContext;
-    private OperationsConfig config;
-    private JobQueueBatch job;
-    private ResourceType resourceType;
+    private final IParser jsonParser;
+    private final OperationsConfig config;
+    private final JobQueueBatch job;
+    private final ResourceType resourceType;
+    private final Meter bytesMeter;
+
+    // State of the file currently being appended to
+    private int currentSequence = -1;
+    private FileChannel fileChannel;
+    private OutputStream fileStream;
+    private boolean fileCompressed;
+    private MessageDigest fileDigest;
+    private long fileLength;
+    private long uncompressedLength;
 
     /**
      * Form the full file name of an output file
@@ -41,21 +79,50 @@ class ResourceWriter {
         return String.format("%s/%s.ndjson", exportPath, JobQueueBatchFile.formOutputFileName(batchID, resourceType, sequence));
     }
 
+    /**
+     * Generate the SHA256 checksum of a file, reading it in chunks
+     *
+     * @param file - the file to checksum
+     * @return the checksum
+     * @throws IOException - If the read fails
+     */
+    static byte[] generateChecksum(File file) throws IOException {
+        return generateChecksum(file, false);
+    }
+
+    /**
+     * Generate the SHA256 checksum of the uncompressed content of a file, reading it in chunks
+     *
+     * @param file       - the file to checksum
+     * @param compressed - {@code true} the file is gzip compressed
+     * @return the checksum
+     * @throws IOException - If the read fails
+     */
+    static byte[] generateChecksum(File file, boolean compressed) throws IOException {
+        final MessageDigest digest = new SHA256.Digest();
+        updateDigest(digest, file, compressed);
+        return digest.digest();
+    }
+
     /**
      * Create a context for fetching FHIR resources
      * @param fhirContext - the single context for the engine
      * @param config - config to use for the engine
      * @param job - the context for logging and reporting
      * @param resourceType - the resource type to fetch
+     * @param bytesMeter - a meter on the number of bytes written
      */
     ResourceWriter(FhirContext fhirContext,
                     JobQueueBatch job,
                     ResourceType resourceType,
-                    OperationsConfig config) {
-        this.fhirContext = fhirContext;
+                    OperationsConfig config,
+                    Meter bytesMeter) {
+        // The parser is not thread-safe, but a writer is only used by one thread at a time
+        this.jsonParser = fhirContext.newJsonParser();
         this.config = config;
         this.job = job;
         this.resourceType = resourceType;
+        this.bytesMeter = bytesMeter;
     }
 
     /**
@@ -74,25 +141,28 @@ class ResourceWriter {
      */
     JobQueueBatchFile writeBatch(AtomicInteger counter, List<Resource> batch) {
         try {
-            final var byteStream = new ByteArrayOutputStream();
             final var sequence = counter.getAndIncrement();
-            final var jsonParser = fhirContext.newJsonParser();
-            OutputStream writer = byteStream;
             String outputPath = formOutputFilePath(config.getExportPath(), job.getBatchID(), resourceType, sequence);
             JobQueueBatchFile file = job.addJobQueueFile(resourceType, sequence, batch.size());
 
             boolean isStartOfFile = batch.size() == file.getCount();
-            Boolean shouldAppendToFile = !isStartOfFile;
 
             logger.debug("Start writing to {}", outputPath);
-            for (var resource: batch) {
-                final String str = jsonParser.encodeResourceToString(resource);
-                writer.write(str.getBytes(StandardCharsets.UTF_8));
-                writer.write(DELIM);
+            openFile(file, outputPath, isStartOfFile);
+            final var contentStream = new CountingOutputStream(new DigestOutputStream(fileCompressed ?
+                    new GZIPOutputStream(new NonClosingOutputStream(fileStream), BUFFER_SIZE) :
+                    new NonClosingOutputStream(fileStream), fileDigest));
+            // The parser closes the writer it encodes to, so only close the writer once the batch is written
+            try (final var writer = new OutputStreamWriter(contentStream, StandardCharsets.UTF_8)) {
+                final var parserWriter = new NonClosingWriter(writer);
+                for (var resource: batch) {
+                    jsonParser.encodeResourceToWriter(resource, parserWriter);
+                    parserWriter.write(DELIM);
+                }
             }
-            writer.flush();
-            writer.close();
-            writeToFile(byteStream.toByteArray(), outputPath, shouldAppendToFile);
+            // Flush at the end of each batch, so the file is complete when the batch progress is saved
+            fileStream.flush();
+            updateFileMetadata(file, contentStream.getCount());
             logger.debug("Finished writing to '{}'", outputPath);
 
             return file;
@@ -106,20 +176,140 @@ class ResourceWriter {
     }
 
     /**
-     * Write a array of bytes to a file. Name the file according to the supplied name
+     * Close the current file, if any
      *
-     * @param bytes - Bytes to write
-     * @param fileName - The fileName to write too
-     * @param append - If the
-     * @throws IOException - If the write fails
+     * @throws IOException - If the close fails
      */
-    private void writeToFile(byte[] bytes, String fileName, Boolean append) throws IOException {
-        if (bytes.length == 0) {
+    @Override
+    public void close() throws IOException {
+        if (fileStream != null) {
+            try {
+                fileStream.flush();
+            } finally {
+                fileChannel.close();
+                fileStream = null;
+                fileChannel = null;
+            }
+        }
+    }
+
+    /**
+     * Open the file about to be written, unless it is the current one.
+     * If we are appending to a file that this writer has not written to (e.g. a batch resumed by another aggregator),
+     * the existing contents are read once to seed the checksum, and the file keeps the compression it was created with.
+     *
+     * @param file          - the {@link JobQueueBatchFile} to be written
+     * @param fileName      - the file to be written
+     * @param isStartOfFile - {@code true} the file is being created
+     * @throws IOException - If the file cannot be opened
+     */
+    private void openFile(JobQueueBatchFile file, String fileName, boolean isStartOfFile) throws IOException {
+        if (fileStream != null && !isStartOfFile && file.getSequence() == currentSequence) {
             return;
         }
-        try (final var outputFile = new FileOutputStream(fileName, append)) {
-            outputFile.write(bytes);
-            outputFile.flush();
+        close();
+
+        currentSequence = file.getSequence();
+        fileDigest = new SHA256.Digest();
+        fileLength = 0;
+        uncompressedLength = 0;
+        if (isStartOfFile) {
+            file.setCompressed(config.isCompressOutput());
+        }
+        fileCompressed = file.isCompressed();
+        final File existing = new File(fileName);
+        if (!isStartOfFile && existing.exists()) {
+            logger.debug("Seeding checksum from existing file {}", fileName);
+            uncompressedLength = updateDigest(fileDigest, existing, fileCompressed);
+            fileLength = existing.length();
+        }
+
+        fileChannel = isStartOfFile ?
+                FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) :
+                FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileStream = new BufferedOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE);
+    }
+
+    /**
+     * Update the file's metadata from the running checksum and lengths
+     *
+     * @param file         - the {@link JobQueueBatchFile} that was written
+     * @param writtenCount - the number of uncompressed bytes written for the batch
+     * @throws IOException - If the file size cannot be read
+     * @throws CloneNotSupportedException - If the digest cannot be copied
+     */
+    private void updateFileMetadata(JobQueueBatchFile file, long writtenCount) throws IOException, CloneNotSupportedException {
+        final long length = fileChannel.size();
+        bytesMeter.mark(length - fileLength);
+        fileLength = length;
+        uncompressedLength += writtenCount;
+        // Finish a copy of the digest, so that we can continue appending to the file
+        file.setChecksum(((MessageDigest) fileDigest.clone()).digest());
+        file.setFileLength(fileLength);
+        file.setUncompressedLength(uncompressedLength);
+    }
+
+    /**
+     * Update a digest with the uncompressed contents of a file
+     *
+     * @param digest     - the digest to update
+     * @param file       - the file to read
+     * @param compressed - {@code true} the file is gzip compressed
+     * @return the number of uncompressed bytes read
+     * @throws IOException - If the read fails
+     */
+    private static long updateDigest(MessageDigest digest, File file, boolean compressed) throws IOException {
+        long length = 0;
+        try (final InputStream inputStream = compressed ? new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE) : new FileInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The parser flushes and closes the {@link Writer} it encodes to, so this keeps the writer open between resources
+     * and leaves flushing to the end of the batch.
+     */
+    private static class NonClosingWriter extends FilterWriter {
+
+        NonClosingWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void flush() {
+            // Flushed at the end of the batch
+        }
+
+        @Override
+        public void close() {
+            // Closed at the end of the batch
+        }
+    }
+
+    /**
+     * Keeps the file open when the per batch (gzip) streams are closed.
+     * The file is closed by {@link ResourceWriter#close()}.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // Closed by ResourceWriter#close()
         }
     }
 }
@@ -1,13 +1,16 @@
 package gov.cms.dpc.aggregation;
 
 import gov.cms.dpc.aggregation.engine.AggregationEngine;
+import gov.cms.dpc.aggregation.engine.OperationsConfig;
 import gov.cms.dpc.testing.BufferedLoggerHandler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(BufferedLoggerHandler.class)
@@ -23,7 +26,16 @@ class AggregationManagerTest {
 
     @Test
     void testShutdown() {
-        new AggregationManager(engine).stop();
+        new AggregationManager(() -> engine, new OperationsConfig(10, "/tmp", 3, 500)).stop();
         verify(engine).stop();
     }
+
+    @Test
+    void testWorkerPool() {
+        final var manager = new AggregationManager(() -> engine, new OperationsConfig.Builder(10, "/tmp", 3, 500).workerCount(4).build());
+        assertEquals(4, manager.getEngines().size(), "Should have one engine per worker");
+
+        manager.stop();
+        verify(engine, times(4)).stop();
+    }
 }
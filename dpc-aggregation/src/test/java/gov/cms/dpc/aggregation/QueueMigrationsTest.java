@@ -0,0 +1,163 @@
+package gov.cms.dpc.aggregation;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.IntegrationTest;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.sql.*;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the queue migrations against a queue database which already holds batches, to verify that the data migrations carry them across.
+ */
+@IntegrationTest
+@ExtendWith(BufferedLoggerHandler.class)
+public class QueueMigrationsTest {
+
+    private static final String MIGRATIONS = "migrations/queue.migrations.xml";
+    // Number of changesets applied before the batch patients were normalized
+    private static final int PRE_NORMALIZE_CHANGESETS = 3;
+
+    private static final UUID ORGANIZATION_ID = UUID.randomUUID();
+    private static final OffsetDateTime SUBMIT_TIME = OffsetDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final UUID jobID = UUID.randomUUID();
+    private final UUID completedBatch = UUID.randomUUID();
+    private final UUID runningBatch = UUID.randomUUID();
+    private final UUID emptyBatch = UUID.randomUUID();
+    private final UUID failedBatch = UUID.randomUUID();
+    private final UUID otherJobID = UUID.randomUUID();
+    private final UUID otherBatch = UUID.randomUUID();
+
+    private Connection connection;
+    private Liquibase liquibase;
+
+    @BeforeEach
+    void migrateWithBatches() throws SQLException, LiquibaseException {
+        final Config queueDB = ConfigFactory.load("ci.application.conf").getConfig("dpc.aggregation.queuedb");
+        connection = DriverManager.getConnection(queueDB.getString("url"), queueDB.getString("user"), queueDB.getString("password"));
+        final Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        liquibase = new Liquibase(MIGRATIONS, new ClassLoaderResourceAccessor(), database);
+
+        liquibase.dropAll();
+        liquibase.update(PRE_NORMALIZE_CHANGESETS, "");
+
+        insertBatch(completedBatch, jobID, 2, "p1,p2,p3", 2, SUBMIT_TIME.plusMinutes(2));
+        insertBatch(runningBatch, jobID, 1, "p4,p5", 0, SUBMIT_TIME.plusMinutes(1));
+        insertBatch(emptyBatch, jobID, 0, "", null, null);
+        insertBatch(failedBatch, jobID, 3, "p6,p7", 0, SUBMIT_TIME.plusMinutes(3));
+        insertBatch(otherBatch, otherJobID, 0, "p8,p9", null, null);
+
+        liquibase.update("");
+    }
+
+    @AfterEach
+    void resetDatabase() throws SQLException, LiquibaseException {
+        try {
+            // Leave an empty, fully migrated database for the other tests
+            liquibase.dropAll();
+            liquibase.update("");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void testNormalizeBatchPatients() throws SQLException {
+        assertAll(() -> assertEquals(List.of("p1", "p2", "p3"), getPatients(completedBatch), "Should keep the patients in order"),
+                () -> assertEquals(List.of("p4", "p5"), getPatients(runningBatch), "Should keep the patients in order"),
+                () -> assertEquals(List.of(), getPatients(emptyBatch), "Should not have patients"),
+                () -> assertEquals(3, getPatientCount(completedBatch), "Should count the patients"),
+                () -> assertEquals(2, getPatientCount(runningBatch), "Should count the patients"),
+                () -> assertEquals(0, getPatientCount(emptyBatch), "Should not count any patient"));
+    }
+
+    @Test
+    void testJobStatusSummary() throws SQLException {
+        // Completed batches processed all their patients, the others up to (and including) their patient index
+        assertSummary(jobID, 4, 1, 1, 1, 1, 7, 5, SUBMIT_TIME.plusMinutes(1));
+        assertSummary(otherJobID, 1, 1, 0, 0, 0, 2, 0, null);
+    }
+
+    private void insertBatch(UUID batchID, UUID jobID, int status, String patients, Integer patientIndex, OffsetDateTime startTime) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("INSERT INTO job_queue_batch " +
+                "(batch_id, job_id, organization_id, status, priority, patients, patient_index, resource_types, submit_time, update_time, start_time) " +
+                "VALUES (?, ?, ?, ?, 1000, ?, ?, 'Patient', ?, ?, ?)")) {
+            statement.setObject(1, batchID);
+            statement.setObject(2, jobID);
+            statement.setObject(3, ORGANIZATION_ID);
+            statement.setInt(4, status);
+            statement.setString(5, patients);
+            statement.setObject(6, patientIndex, Types.INTEGER);
+            statement.setObject(7, SUBMIT_TIME);
+            statement.setObject(8, SUBMIT_TIME);
+            statement.setObject(9, startTime);
+            statement.executeUpdate();
+        }
+    }
+
+    private void assertSummary(UUID jobID, int batchCount, int queuedCount, int runningCount, int completedCount, int failedCount,
+                               int patientCount, int patientsProcessed, OffsetDateTime startTime) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("SELECT organization_id, batch_count, queued_count, running_count, completed_count, failed_count, " +
+                "patient_count, patients_processed, start_time FROM job_status_summary WHERE job_id = ?")) {
+            statement.setObject(1, jobID);
+            try (final ResultSet results = statement.executeQuery()) {
+                assertTrue(results.next(), "Should summarize the job");
+                final OffsetDateTime summaryStart = results.getObject("start_time", OffsetDateTime.class);
+                assertAll(() -> assertEquals(ORGANIZATION_ID, results.getObject("organization_id", UUID.class), "Should have the organization"),
+                        () -> assertEquals(batchCount, results.getInt("batch_count"), "Should count the batches"),
+                        () -> assertEquals(queuedCount, results.getInt("queued_count"), "Should count the queued batches"),
+                        () -> assertEquals(runningCount, results.getInt("running_count"), "Should count the running batches"),
+                        () -> assertEquals(completedCount, results.getInt("completed_count"), "Should count the completed batches"),
+                        () -> assertEquals(failedCount, results.getInt("failed_count"), "Should count the failed batches"),
+                        () -> assertEquals(patientCount, results.getInt("patient_count"), "Should count the patients"),
+                        () -> assertEquals(patientsProcessed, results.getInt("patients_processed"), "Should count the processed patients"),
+                        () -> assertTrue(startTime == null ? summaryStart == null : startTime.isEqual(summaryStart), "Should start with the earliest batch"));
+            }
+        }
+    }
+
+    private List<String> getPatients(UUID batchID) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("SELECT patient_order, patient_id FROM job_queue_batch_patient WHERE batch_id = ? ORDER BY patient_order")) {
+            statement.setObject(1, batchID);
+            final List<String> patients = new ArrayList<>();
+            try (final ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    // Hibernate reads the patients back by their position, so the order must start at zero without gaps
+                    assertEquals(patients.size(), results.getInt(1), "Should number the patients from zero");
+                    patients.add(results.getString(2));
+                }
+            }
+            return patients;
+        }
+    }
+
+    private int getPatientCount(UUID batchID) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("SELECT patient_count FROM job_queue_batch WHERE batch_id = ?")) {
+            statement.setObject(1, batchID);
+            try (final ResultSet results = statement.executeQuery()) {
+                results.next();
+                return results.getInt(1);
+            }
+        }
+    }
+}
@@ -13,6 +13,8 @@ import gov.cms.dpc.queue.MemoryBatchQueue;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.testing.BufferedLoggerHandler;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.reactivex.disposables.Disposable;
 import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.ResourceType;
@@ -27,6 +29,7 @@ import org.mockito.Mockito;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -114,6 +117,8 @@ class AggregationEngineTest {
         );
 
         // Work the batch
+        final var bytesWritten = metricRegistry.meter(MetricRegistry.name(AggregationEngine.class, "bytesWritten"));
+        final long bytesWrittenBefore = bytesWritten.getCount();
         queue.claimBatch(engine.getAggregatorID())
                 .ifPresent(engine::processJobBatch);
 
@@ -123,6 +128,7 @@ class AggregationEngineTest {
         assertEquals(1000, completeJob.getPriority());
         final var outputFilePath = ResourceWriter.formOutputFilePath(exportPath, completeJob.getBatchID(), ResourceType.Patient, 0);
         assertTrue(Files.exists(Path.of(outputFilePath)));
+        assertEquals(completeJob.getJobQueueFile(ResourceType.Patient).orElseThrow().getFileLength(), bytesWritten.getCount() - bytesWrittenBefore, "Should meter the bytes written");
         final var errorFilePath = ResourceWriter.formOutputFilePath(exportPath, completeJob.getBatchID(), ResourceType.OperationOutcome, 0);
         assertFalse(Files.exists(Path.of(errorFilePath)), "expect no error file");
     }
@@ -245,6 +251,73 @@ class AggregationEngineTest {
         }
     }
 
+    /**
+     * Test that fetching patients concurrently still writes them in patient order
+     */
+    @Test
+    void concurrentPatientsJobTest() throws Exception {
+        final var concurrentEngine = new AggregationEngine(aggregatorID, bbclient, queue, fhirContext, metricRegistry, new OperationsConfig.Builder(1000, exportPath, 3, 500).patientConcurrency(4).build());
+        concurrentEngine.setSubscribe(subscribe);
+
+        // Make the first patient the slowest to fetch
+        final var slowPatientID = MockBlueButtonClient.TEST_PATIENT_IDS.get(1);
+        final var fastPatientID = MockBlueButtonClient.TEST_PATIENT_IDS.get(0);
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(250);
+            return invocation.callRealMethod();
+        }).when(bbclient).requestPatientFromServer(slowPatientID);
+
+        final var patientIDs = List.of(slowPatientID, fastPatientID, fastPatientID, slowPatientID);
+        final var jobID = queue.createJob(
+                UUID.randomUUID(),
+                TEST_PROVIDER_ID,
+                patientIDs,
+                Collections.singletonList(ResourceType.Patient)
+        );
+
+        // Work the batch
+        queue.claimBatch(concurrentEngine.getAggregatorID())
+                .ifPresent(concurrentEngine::processJobBatch);
+
+        // Look at the result
+        final var completeJob = queue.getJobBatches(jobID).stream().findFirst().orElseThrow();
+        assertEquals(JobStatus.COMPLETED, completeJob.getStatus());
+        final var outputFilePath = ResourceWriter.formOutputFilePath(exportPath, completeJob.getBatchID(), ResourceType.Patient, 0);
+        final var parser = fhirContext.newJsonParser();
+        final List<String> writtenIDs = Files.readAllLines(Path.of(outputFilePath))
+                .stream()
+                .map(line -> parser.parseResource(Patient.class, line).getIdElement().getIdPart())
+                .collect(Collectors.toList());
+        assertEquals(patientIDs, writtenIDs, "Should write patients in batch order");
+    }
+
+    /**
+     * Test that the batch progress is saved every few patients, rather than after each patient
+     */
+    @Test
+    void batchedCheckpointTest() {
+        final var checkpointEngine = new AggregationEngine(aggregatorID, bbclient, queue, fhirContext, metricRegistry, new OperationsConfig.Builder(1000, exportPath, 3, 500).checkpointPatientCount(3).checkpointFrequency(60000).build());
+        checkpointEngine.setSubscribe(subscribe);
+
+        final var patientID = MockBlueButtonClient.TEST_PATIENT_IDS.get(0);
+        final var jobID = queue.createJob(
+                UUID.randomUUID(),
+                TEST_PROVIDER_ID,
+                Collections.nCopies(7, patientID),
+                Collections.singletonList(ResourceType.Patient)
+        );
+
+        queue.claimBatch(checkpointEngine.getAggregatorID())
+                .ifPresent(checkpointEngine::processJobBatch);
+
+        // Two checkpoints for the first 6 patients, the last patient is saved when completing the batch
+        final var completeJob = queue.getJobBatches(jobID).stream().findFirst().orElseThrow();
+        assertAll(() -> assertEquals(JobStatus.COMPLETED, completeJob.getStatus()),
+                () -> assertEquals(7, completeJob.getJobQueueFile(ResourceType.Patient).orElseThrow().getCount()));
+        verify(queue, times(2)).completePartialBatch(Mockito.any(), Mockito.any());
+        verify(queue, times(1)).completeBatch(Mockito.any(), Mockito.any());
+    }
+
     /**
      * Test if the engine can handle a job with no attributions
      */
@@ -346,6 +419,35 @@ class AggregationEngineTest {
                 () -> assertTrue(Files.exists(Path.of(expectedErrorPath)), "expected an error file"));
     }
 
+    /**
+     * Test that a batch is paused, rather than failed, when the BlueButton circuit breaker is open
+     */
+    @Test
+    void circuitBreakerOpenPausesBatchTest() {
+        final var unavailablePatientID = MockBlueButtonClient.TEST_PATIENT_IDS.get(1);
+        Mockito.doThrow(CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("test")))
+                .when(bbclient).requestPatientFromServer(unavailablePatientID);
+
+        final var jobID = queue.createJob(
+                UUID.randomUUID(),
+                TEST_PROVIDER_ID,
+                MockBlueButtonClient.TEST_PATIENT_IDS,
+                Collections.singletonList(ResourceType.Patient)
+        );
+
+        // Work the batch
+        queue.claimBatch(engine.getAggregatorID())
+                .ifPresent(engine::processJobBatch);
+
+        final var actual = queue.getJobBatches(jobID).stream().findFirst().get();
+        assertAll(() -> assertEquals(JobStatus.QUEUED, actual.getStatus(), "Should be paused"),
+                () -> assertEquals(0, actual.getPatientIndex().get(), "Should have processed the patient before the unavailable one"),
+                () -> assertTrue(actual.getJobQueueFile(ResourceType.OperationOutcome).isEmpty(), "Should not record an error for the unavailable patient"));
+        Mockito.verify(queue).pauseBatch(Mockito.any(), Mockito.eq(aggregatorID));
+        Mockito.verify(queue, never()).failBatch(Mockito.any(), Mockito.any());
+        Mockito.verify(bbclient, times(1)).requestPatientFromServer(unavailablePatientID);
+    }
+
     @Test
     void testBlueButtonException() {
         // Test generic runtime exception
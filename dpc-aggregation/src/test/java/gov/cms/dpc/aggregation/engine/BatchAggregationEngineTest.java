@@ -20,7 +20,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
@@ -28,9 +33,12 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(BufferedLoggerHandler.class)
 class BatchAggregationEngineTest {
@@ -126,7 +134,7 @@ class BatchAggregationEngineTest {
                     final var outputFilePath = String.format("%s/%s.ndjson", exportPath, batchFile.getFileName());
                     final File file = new File(Path.of(outputFilePath).toString());
                     assertAll(() -> assertNotNull(file, "Should have input file"),
-                            () -> assertArrayEquals(AggregationEngine.generateChecksum(file), batchFile.getChecksum(), "Should have checksum"),
+                            () -> assertArrayEquals(ResourceWriter.generateChecksum(file), batchFile.getChecksum(), "Should have checksum"),
                             () -> assertEquals(file.length(), batchFile.getFileLength(), "Should have matching file length"));
                 });
 
@@ -134,6 +142,83 @@ class BatchAggregationEngineTest {
         assertFalse(Files.exists(Path.of(errorFilePath)), "expect no error file");
     }
 
+    /**
+     * Test that the file metadata is correct when a paused batch is resumed by another aggregator
+     */
+    @Test
+    void resumedJobChecksumTest() {
+        final var orgID = UUID.randomUUID();
+        final var jobID = queue.createJob(
+                orgID,
+                TEST_PROVIDER_ID,
+                MockBlueButtonClient.TEST_PATIENT_IDS,
+                Collections.singletonList(ResourceType.Coverage)
+        );
+
+        // Process the first patient and pause
+        final var pausingEngine = new AggregationEngine(UUID.randomUUID(), new MockBlueButtonClient(fhirContext), queue, fhirContext, metricRegistry, operationsConfig);
+        final var disposed = Mockito.mock(Disposable.class);
+        doReturn(true).when(disposed).isDisposed();
+        pausingEngine.setSubscribe(disposed);
+        queue.claimBatch(pausingEngine.getAggregatorID())
+                .ifPresent(pausingEngine::processJobBatch);
+        assertEquals(JobStatus.QUEUED, queue.getJobBatches(jobID).stream().findFirst().orElseThrow().getStatus());
+
+        // Resume and finish with the other engine
+        queue.claimBatch(engine.getAggregatorID())
+                .ifPresent(engine::processJobBatch);
+
+        final var completeJob = queue.getJobBatches(jobID).stream().findFirst().orElseThrow();
+        assertEquals(JobStatus.COMPLETED, completeJob.getStatus());
+        completeJob.getJobQueueBatchFiles()
+                .forEach(batchFile -> {
+                    final File file = new File(String.format("%s/%s.ndjson", exportPath, batchFile.getFileName()));
+                    assertAll(() -> assertArrayEquals(ResourceWriter.generateChecksum(file), batchFile.getChecksum(), "Should have checksum of the whole file"),
+                            () -> assertEquals(file.length(), batchFile.getFileLength(), "Should have matching file length"));
+                });
+    }
+
+    /**
+     * Test that compressed files are valid gzip, with correct metadata, when a paused batch is resumed by another aggregator
+     */
+    @Test
+    void resumedCompressedJobTest() {
+        final var orgID = UUID.randomUUID();
+        final var jobID = queue.createJob(
+                orgID,
+                TEST_PROVIDER_ID,
+                MockBlueButtonClient.TEST_PATIENT_IDS,
+                Collections.singletonList(ResourceType.Coverage)
+        );
+        final var compressedConfig = new OperationsConfig.Builder(10, exportPath, 3, 3).compressOutput(true).build();
+
+        // Process the first patient and pause
+        final var pausingEngine = new AggregationEngine(UUID.randomUUID(), new MockBlueButtonClient(fhirContext), queue, fhirContext, metricRegistry, compressedConfig);
+        final var disposed = Mockito.mock(Disposable.class);
+        doReturn(true).when(disposed).isDisposed();
+        pausingEngine.setSubscribe(disposed);
+        queue.claimBatch(pausingEngine.getAggregatorID())
+                .ifPresent(pausingEngine::processJobBatch);
+
+        // Resume and finish with another engine
+        final var resumingEngine = new AggregationEngine(UUID.randomUUID(), new MockBlueButtonClient(fhirContext), queue, fhirContext, metricRegistry, compressedConfig);
+        resumingEngine.setSubscribe(subscribe);
+        queue.claimBatch(resumingEngine.getAggregatorID())
+                .ifPresent(resumingEngine::processJobBatch);
+
+        final var completeJob = queue.getJobBatches(jobID).stream().findFirst().orElseThrow();
+        assertEquals(JobStatus.COMPLETED, completeJob.getStatus());
+        completeJob.getJobQueueBatchFiles()
+                .forEach(batchFile -> {
+                    final File file = new File(String.format("%s/%s.ndjson", exportPath, batchFile.getFileName()));
+                    assertAll(() -> assertTrue(batchFile.isCompressed(), "Should be compressed"),
+                            () -> assertArrayEquals(ResourceWriter.generateChecksum(file, true), batchFile.getChecksum(), "Should have checksum of the uncompressed content"),
+                            () -> assertEquals(file.length(), batchFile.getFileLength(), "Should have matching file length"),
+                            () -> assertEquals(batchFile.getCount(), readCompressedLines(file).size(), "Should have a line per resource"),
+                            () -> assertEquals(readCompressedLines(file).stream().mapToLong(line -> line.getBytes(StandardCharsets.UTF_8).length + 1).sum(), batchFile.getUncompressedLength(), "Should have uncompressed length"));
+                });
+    }
+
     /**
      * Test if a engine can handle a simple job with one resource type, one test provider, and one patient.
      */
@@ -166,4 +251,45 @@ class BatchAggregationEngineTest {
         final var errorFilePath = ResourceWriter.formOutputFilePath(exportPath, completeJob.getBatchID(), ResourceType.OperationOutcome, 0);
         assertTrue(Files.exists(Path.of(errorFilePath)), "expect no error file");
     }
+
+    /**
+     * Test that patients fetched in groups produce the same output as patients fetched on their own, with fewer requests
+     */
+    @Test
+    void groupedJobWithBadPatientTest() {
+        final var orgID = UUID.randomUUID();
+        final var ungroupedJobID = queue.createJob(orgID, TEST_PROVIDER_ID, MockBlueButtonClient.TEST_PATIENT_WITH_BAD_IDS, Collections.singletonList(ResourceType.ExplanationOfBenefit));
+        queue.claimBatch(engine.getAggregatorID())
+                .ifPresent(engine::processJobBatch);
+
+        final var groupedClient = Mockito.spy(new MockBlueButtonClient(fhirContext));
+        final var groupedConfig = new OperationsConfig.Builder(10, exportPath, 3, 3).beneficiaryGroupSize(3).build();
+        final var groupedEngine = new AggregationEngine(UUID.randomUUID(), groupedClient, queue, fhirContext, metricRegistry, groupedConfig);
+        groupedEngine.setSubscribe(subscribe);
+        final var groupedJobID = queue.createJob(orgID, TEST_PROVIDER_ID, MockBlueButtonClient.TEST_PATIENT_WITH_BAD_IDS, Collections.singletonList(ResourceType.ExplanationOfBenefit));
+        queue.claimBatch(groupedEngine.getAggregatorID())
+                .ifPresent(groupedEngine::processJobBatch);
+
+        final var ungroupedJob = queue.getJobBatches(ungroupedJobID).stream().findFirst().orElseThrow();
+        final var groupedJob = queue.getJobBatches(groupedJobID).stream().findFirst().orElseThrow();
+        assertEquals(JobStatus.COMPLETED, groupedJob.getStatus());
+        for (final ResourceType resourceType : List.of(ResourceType.ExplanationOfBenefit, ResourceType.OperationOutcome)) {
+            assertEquals(countResources(ungroupedJob, resourceType), countResources(groupedJob, resourceType), String.format("Should have the same number of %s", resourceType));
+        }
+        // Two groups, then the bad patients on their own
+        verify(groupedClient, times(2)).requestEOBFromServer(Mockito.anyList(), Mockito.isNull());
+    }
+
+    private static int countResources(JobQueueBatch batch, ResourceType resourceType) {
+        return batch.getJobQueueBatchFiles().stream()
+                .filter(file -> file.getResourceType() == resourceType)
+                .mapToInt(JobQueueBatchFile::getCount)
+                .sum();
+    }
+
+    private static List<String> readCompressedLines(File file) throws IOException {
+        try (final var reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
 }
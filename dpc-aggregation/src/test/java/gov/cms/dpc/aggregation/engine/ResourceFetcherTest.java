@@ -0,0 +1,142 @@
+package gov.cms.dpc.aggregation.engine;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import gov.cms.dpc.bluebutton.client.BlueButtonClient;
+import gov.cms.dpc.bluebutton.client.MockBlueButtonClient;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import io.reactivex.subscribers.TestSubscriber;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class ResourceFetcherTest {
+
+    private static final FhirContext fhirContext = FhirContext.forDstu3();
+    private static final String TEST_PATIENT_ID = MockBlueButtonClient.TEST_PATIENT_IDS.get(0);
+
+    private BlueButtonClient bbclient;
+    private ResourceFetcher fetcher;
+
+    @BeforeEach
+    void setupEach() {
+        bbclient = Mockito.spy(new MockBlueButtonClient(fhirContext));
+        fetcher = new ResourceFetcher(bbclient, UUID.randomUUID(), UUID.randomUUID(), ResourceType.ExplanationOfBenefit, new OperationsConfig(10, "/tmp", 3, 500));
+    }
+
+    /**
+     * Test that the next pages are only fetched when requested
+     */
+    @Test
+    void pagesFetchedOnRequest() {
+        final TestSubscriber<List<Resource>> subscriber = fetcher.fetchResources(TEST_PATIENT_ID).test(1);
+        subscriber.assertValueCount(1);
+        subscriber.assertNotComplete();
+        verify(bbclient, never()).requestNextBundleFromServer(any(Bundle.class));
+
+        subscriber.request(1);
+        subscriber.assertValueCount(2);
+        verify(bbclient, times(1)).requestNextBundleFromServer(any(Bundle.class));
+
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.assertComplete();
+        verify(bbclient, times(3)).requestNextBundleFromServer(any(Bundle.class));
+        assertEquals(32, subscriber.values().stream().mapToInt(List::size).sum(), "Should have all the resources");
+    }
+
+    /**
+     * Test that only the failing page is retried, so that emitted pages are not repeated
+     */
+    @Test
+    void pageRetried() {
+        doThrow(new InternalErrorException("Retry me"))
+                .doCallRealMethod()
+                .when(bbclient).requestNextBundleFromServer(any(Bundle.class));
+
+        final TestSubscriber<List<Resource>> subscriber = fetcher.fetchResources(TEST_PATIENT_ID).test();
+        subscriber.assertComplete();
+        verify(bbclient, times(1)).requestEOBFromServer(TEST_PATIENT_ID);
+        verify(bbclient, times(4)).requestNextBundleFromServer(any(Bundle.class));
+        assertEquals(32, subscriber.values().stream().mapToInt(List::size).sum(), "Should not repeat resources");
+    }
+
+    /**
+     * Test that the resources of a group search are split by patient, leaving out the patients without resources
+     */
+    @Test
+    void groupDemultiplexed() {
+        final List<String> group = MockBlueButtonClient.TEST_PATIENT_WITH_BAD_IDS;
+        final Map<String, List<Resource>> resources = fetcher.fetchResources(group);
+
+        verify(bbclient, times(1)).requestEOBFromServer(group, null);
+        assertEquals(MockBlueButtonClient.TEST_PATIENT_IDS.size(), resources.size(), "Should only have the patients with resources");
+        for (final String patientID : MockBlueButtonClient.TEST_PATIENT_IDS) {
+            final int expected = fetcher.fetchResources(patientID).toList().blockingGet().stream().mapToInt(List::size).sum();
+            assertEquals(expected, resources.get(patientID).size(), "Should have the same resources as fetching the patient on its own");
+        }
+    }
+
+    /**
+     * Test that a failed group search leaves every patient to be fetched on its own
+     */
+    @Test
+    void groupFailureFallsBack() {
+        doThrow(new InternalErrorException("Unsupported"))
+                .when(bbclient).requestEOBFromServer(anyList(), isNull());
+
+        assertTrue(fetcher.fetchResources(MockBlueButtonClient.TEST_PATIENT_IDS).isEmpty(), "Should not have any patient");
+    }
+
+    /**
+     * Test that a group search for the resources updated since a given time is final, even for the patients without any updates
+     */
+    @Test
+    void groupSinceFinal() {
+        final OffsetDateTime since = OffsetDateTime.parse("2019-04-01T00:00:00Z");
+        final ResourceFetcher sinceFetcher = new ResourceFetcher(bbclient, UUID.randomUUID(), UUID.randomUUID(), ResourceType.ExplanationOfBenefit, new OperationsConfig(10, "/tmp", 3, 500), since);
+        final List<String> group = MockBlueButtonClient.TEST_PATIENT_IDS;
+        final Map<String, List<Resource>> resources = sinceFetcher.fetchResources(group);
+
+        verify(bbclient, times(1)).requestEOBFromServer(group, since);
+        assertEquals(group.size(), resources.size(), "Should have every patient of the group");
+        assertTrue(resources.get(TEST_PATIENT_ID).isEmpty(), "Should not have any resources for the patient without updates");
+        assertFalse(resources.get(group.get(1)).isEmpty(), "Should have the resources of the updated patient");
+    }
+
+    /**
+     * Test that only the resources updated since the given time are fetched
+     */
+    @Test
+    void sinceFiltered() {
+        // The sample EOBs of the first patient were last updated in March, those of the second in April
+        final OffsetDateTime since = OffsetDateTime.parse("2019-04-01T00:00:00Z");
+        final ResourceFetcher sinceFetcher = new ResourceFetcher(bbclient, UUID.randomUUID(), UUID.randomUUID(), ResourceType.ExplanationOfBenefit, new OperationsConfig(10, "/tmp", 3, 500), since);
+
+        final TestSubscriber<List<Resource>> subscriber = sinceFetcher.fetchResources(TEST_PATIENT_ID).test();
+        subscriber.assertComplete();
+        verify(bbclient, times(1)).requestEOBFromServer(TEST_PATIENT_ID, since);
+        assertEquals(0, subscriber.values().stream().mapToInt(List::size).sum(), "Should not have any resources");
+
+        final String updatedPatientID = MockBlueButtonClient.TEST_PATIENT_IDS.get(1);
+        final int expected = fetcher.fetchResources(updatedPatientID).toList().blockingGet().stream().mapToInt(List::size).sum();
+        assertEquals(expected, sinceFetcher.fetchResources(updatedPatientID).toList().blockingGet().stream().mapToInt(List::size).sum(), "Should have all the updated resources");
+    }
+}
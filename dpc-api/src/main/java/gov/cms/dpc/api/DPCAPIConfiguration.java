@@ -2,6 +2,7 @@ package gov.cms.dpc.api;
 
 import ca.mestevens.java.configuration.TypesafeConfiguration;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import gov.cms.dpc.api.auth.AuthCacheConfiguration;
 import gov.cms.dpc.macaroons.config.TokenPolicy;
 import gov.cms.dpc.common.hibernate.auth.IDPCAuthDatabase;
 import gov.cms.dpc.common.hibernate.attribution.IDPCDatabase;
@@ -62,6 +63,11 @@ public class DPCAPIConfiguration extends TypesafeConfiguration implements IDPCDa
     @NotEmpty
     private String keyPairLocation;
 
+    @Valid
+    @NotNull
+    @JsonProperty("authCache")
+    private AuthCacheConfiguration authCache = new AuthCacheConfiguration();
+
     public TokenPolicy getTokenPolicy() {
         return tokenPolicy;
     }
@@ -125,6 +131,14 @@ public class DPCAPIConfiguration extends TypesafeConfiguration implements IDPCDa
         this.keyPairLocation = keyPairLocation;
     }
 
+    public AuthCacheConfiguration getAuthCache() {
+        return authCache;
+    }
+
+    public void setAuthCache(AuthCacheConfiguration authCache) {
+        this.authCache = authCache;
+    }
+
     public boolean isAuthenticationDisabled() {
         return authenticationDisabled;
     }
@@ -0,0 +1,146 @@
+package gov.cms.dpc.api.auth;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the caches used by the authentication path.
+ * Each API instance has its own in-memory caches, so an entry invalidated on one instance stays valid on the others until it expires.
+ * The JTI cache is the exception, as it can be shared through the auth database.
+ */
+public class AuthCacheConfiguration {
+
+    @Valid
+    @NotNull
+    private CacheConfiguration tokenOrganizations = new CacheConfiguration();
+
+    @Valid
+    @NotNull
+    private CacheConfiguration verifiedMacaroons = new CacheConfiguration();
+
+    @Valid
+    @NotNull
+    private CacheConfiguration resourceOwners = new CacheConfiguration();
+
+    @Valid
+    @NotNull
+    private JTICacheConfiguration jwtIDs = new JTICacheConfiguration();
+
+    public AuthCacheConfiguration() {
+        // Jackson required
+    }
+
+    public CacheConfiguration getTokenOrganizations() {
+        return tokenOrganizations;
+    }
+
+    public void setTokenOrganizations(CacheConfiguration tokenOrganizations) {
+        this.tokenOrganizations = tokenOrganizations;
+    }
+
+    public CacheConfiguration getVerifiedMacaroons() {
+        return verifiedMacaroons;
+    }
+
+    public void setVerifiedMacaroons(CacheConfiguration verifiedMacaroons) {
+        this.verifiedMacaroons = verifiedMacaroons;
+    }
+
+    public CacheConfiguration getResourceOwners() {
+        return resourceOwners;
+    }
+
+    public void setResourceOwners(CacheConfiguration resourceOwners) {
+        this.resourceOwners = resourceOwners;
+    }
+
+    public JTICacheConfiguration getJwtIDs() {
+        return jwtIDs;
+    }
+
+    public void setJwtIDs(JTICacheConfiguration jwtIDs) {
+        this.jwtIDs = jwtIDs;
+    }
+
+    public static class CacheConfiguration {
+
+        private boolean enabled = true;
+
+        @Min(1)
+        private int maximumSize = 10_000;
+
+        @Min(1)
+        @Max(3600)
+        private int expireAfter = 60; // s, also bounds how long other instances keep an invalidated entry
+
+        CacheConfiguration() {
+            // Jackson required
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public int getExpireAfter() {
+            return expireAfter;
+        }
+
+        public void setExpireAfter(int expireAfter) {
+            this.expireAfter = expireAfter;
+        }
+    }
+
+    public static class JTICacheConfiguration {
+
+        private boolean shared = true; // Records the JTIs in the auth database, so that replays against other instances are caught
+
+        @Min(1)
+        private int maximumSize = 100_000; // JTIs remembered in memory, by each instance
+
+        @Min(1)
+        @Max(3600)
+        private int cleanupInterval = 60; // s, between deletions of the expired JTIs from the auth database
+
+        JTICacheConfiguration() {
+            // Jackson required
+        }
+
+        public boolean isShared() {
+            return shared;
+        }
+
+        public void setShared(boolean shared) {
+            this.shared = shared;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public int getCleanupInterval() {
+            return cleanupInterval;
+        }
+
+        public void setCleanupInterval(int cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+        }
+    }
+}
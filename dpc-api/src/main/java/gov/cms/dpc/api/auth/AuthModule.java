@@ -1,23 +1,29 @@
 package gov.cms.dpc.api.auth;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Binder;
+import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
 import com.hubspot.dropwizard.guicier.DropwizardAwareModule;
 import gov.cms.dpc.api.DPCAPIConfiguration;
 import gov.cms.dpc.api.auth.filters.PathAuthorizationFilter;
 import gov.cms.dpc.api.auth.jwt.CaffeineJTICache;
+import gov.cms.dpc.api.auth.jwt.DatabaseJTICache;
 import gov.cms.dpc.api.auth.jwt.IJTICache;
 import gov.cms.dpc.api.auth.jwt.JwtKeyResolver;
 import gov.cms.dpc.api.auth.macaroonauth.MacaroonsAuthenticator;
 import gov.cms.dpc.api.auth.staticauth.StaticAuthFactory;
 import gov.cms.dpc.api.auth.staticauth.StaticAuthFilter;
 import gov.cms.dpc.api.auth.staticauth.StaticAuthenticator;
+import gov.cms.dpc.common.hibernate.auth.DPCAuthManagedSessionFactory;
 import gov.cms.dpc.macaroons.thirdparty.BakeryKeyPair;
 import io.dropwizard.auth.Authenticator;
 import io.jsonwebtoken.SigningKeyResolverAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Singleton;
+
 /**
  * {@link DropwizardAwareModule} for determining which authentication system to use.
  * if {@link DPCAPIConfiguration#isAuthenticationDisabled()} returns {@code true} then the {@link StaticAuthFilter} is used.
@@ -46,7 +52,35 @@ public class AuthModule extends DropwizardAwareModule<DPCAPIConfiguration> {
         }
         binder.bind(DPCAuthDynamicFeature.class);
         binder.bind(SigningKeyResolverAdapter.class).to(JwtKeyResolver.class);
-        binder.bind(IJTICache.class).to(CaffeineJTICache.class);
         binder.bind(BakeryKeyPair.class).toProvider(new BakeryKeyPairProvider(this.getConfiguration()));
     }
+
+    @Provides
+    @Singleton
+    TokenOrganizationCache provideTokenOrganizationCache(MetricRegistry registry) {
+        return new TokenOrganizationCache(getConfiguration().getAuthCache().getTokenOrganizations(), registry);
+    }
+
+    @Provides
+    @Singleton
+    VerifiedMacaroonCache provideVerifiedMacaroonCache(MetricRegistry registry) {
+        return new VerifiedMacaroonCache(getConfiguration().getAuthCache().getVerifiedMacaroons(), registry);
+    }
+
+    @Provides
+    @Singleton
+    ResourceOwnershipCache provideResourceOwnershipCache(MetricRegistry registry) {
+        return new ResourceOwnershipCache(getConfiguration().getAuthCache().getResourceOwners(), registry);
+    }
+
+    @Provides
+    @Singleton
+    IJTICache provideJTICache(DPCAuthManagedSessionFactory factory, MetricRegistry registry) {
+        final AuthCacheConfiguration.JTICacheConfiguration config = getConfiguration().getAuthCache().getJwtIDs();
+        if (!config.isShared()) {
+            logger.warn("JTI cache is not shared, JWTs replayed against other API instances will not be caught");
+            return new CaffeineJTICache();
+        }
+        return new DatabaseJTICache(factory.getSessionFactory(), config, registry);
+    }
 }
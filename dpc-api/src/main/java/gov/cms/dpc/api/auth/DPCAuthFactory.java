@@ -15,23 +15,25 @@ public class DPCAuthFactory implements AuthFactory {
 
     private final MacaroonBakery bakery;
     private final TokenDAO dao;
+    private final VerifiedMacaroonCache verifiedMacaroons;
     private final Authenticator<DPCAuthCredentials, OrganizationPrincipal> authenticator;
 
     @Inject
-    public DPCAuthFactory(MacaroonBakery bakery, Authenticator<DPCAuthCredentials, OrganizationPrincipal> authenticator, TokenDAO dao) {
+    public DPCAuthFactory(MacaroonBakery bakery, Authenticator<DPCAuthCredentials, OrganizationPrincipal> authenticator, TokenDAO dao, VerifiedMacaroonCache verifiedMacaroons) {
         this.bakery = bakery;
         this.authenticator = authenticator;
         this.dao = dao;
+        this.verifiedMacaroons = verifiedMacaroons;
     }
 
     @Override
     public DPCAuthFilter createPathAuthorizer(PathAuthorizer pa) {
-        return new PathAuthorizationFilter(bakery, authenticator, dao, pa);
+        return new PathAuthorizationFilter(bakery, authenticator, dao, verifiedMacaroons, pa);
     }
 
     @Override
     public DPCAuthFilter createStandardAuthorizer() {
-        return new PrincipalInjectionAuthFilter(bakery, authenticator, dao);
+        return new PrincipalInjectionAuthFilter(bakery, authenticator, dao, verifiedMacaroons);
     }
 
     @Override
@@ -28,6 +28,8 @@ import static gov.cms.dpc.api.auth.MacaroonHelpers.BEARER_PREFIX;
  * in the form 'Bearer {macaroon-values}'.
  * <p>
  * Or, directly via the 'token' query param (e.g. no Bearer prefix)
+ * <p>
+ * Successful verifications are cached by the {@link VerifiedMacaroonCache}, so repeated requests with the same token skip the deserialization and verification.
  */
 public abstract class DPCAuthFilter extends AuthFilter<DPCAuthCredentials, OrganizationPrincipal> {
 
@@ -36,12 +38,14 @@ public abstract class DPCAuthFilter extends AuthFilter<DPCAuthCredentials, Organ
 
     private final TokenDAO dao;
     private final MacaroonBakery bakery;
+    private final VerifiedMacaroonCache verifiedMacaroons;
 
 
-    protected DPCAuthFilter(MacaroonBakery bakery, Authenticator<DPCAuthCredentials, OrganizationPrincipal> auth, TokenDAO dao) {
+    protected DPCAuthFilter(MacaroonBakery bakery, Authenticator<DPCAuthCredentials, OrganizationPrincipal> auth, TokenDAO dao, VerifiedMacaroonCache verifiedMacaroons) {
         this.authenticator = auth;
         this.bakery = bakery;
         this.dao = dao;
+        this.verifiedMacaroons = verifiedMacaroons;
     }
 
     protected abstract DPCAuthCredentials buildCredentials(String macaroon, UUID organizationID, UriInfo uriInfo);
@@ -63,6 +67,16 @@ public abstract class DPCAuthFilter extends AuthFilter<DPCAuthCredentials, Organ
 
         logger.trace("Making request to validate token.");
 
+        final VerifiedMacaroonCache.VerifiedMacaroon verified = this.verifiedMacaroons.get(macaroon, () -> verifyMacaroon(macaroon), this::isStillIssued);
+
+        // Cache hits skip the verification, so the logging context has to be set here as well
+        MDC.clear();
+        MDC.put("organization_id", verified.getOrganizationID().toString());
+
+        return buildCredentials(macaroon, verified.getOrganizationID(), uriInfo);
+    }
+
+    private VerifiedMacaroonCache.VerifiedMacaroon verifyMacaroon(String macaroon) {
         final List<Macaroon> m1;
         try {
             m1 = MacaroonBakery.deserializeMacaroon(macaroon);
@@ -72,7 +86,15 @@ public abstract class DPCAuthFilter extends AuthFilter<DPCAuthCredentials, Organ
         }
 
         // Lookup the organization by Macaroon id
-        final UUID orgID = extractOrgIDFromMacaroon(m1);
+        final UUID macaroonID = UUID.fromString(m1.get(0).identifier);
+        UUID orgID;
+        boolean issued = true;
+        try {
+            orgID = this.dao.findOrgByToken(macaroonID);
+        } catch (Exception e) {
+            issued = false;
+            orgID = extractOrgIDFromMacaroon(m1);
+        }
 
         // Now that we have the organization_id, set it in the logging context
         MDC.clear();
@@ -85,30 +107,31 @@ public abstract class DPCAuthFilter extends AuthFilter<DPCAuthCredentials, Organ
             throw new WebApplicationException(unauthorizedHandler.buildResponse(BEARER_PREFIX, realm));
         }
 
-        return buildCredentials(macaroon, orgID, uriInfo);
+        // Golden Macaroons are not issued as tokens, so they cannot be checked for deletion on a cache hit and are verified every time
+        return new VerifiedMacaroonCache.VerifiedMacaroon(issued ? macaroonID : null, orgID, MacaroonHelpers.extractExpirationFromCaveats(m1).orElse(null));
     }
 
-    private UUID extractOrgIDFromMacaroon(List<Macaroon> macaroons) {
-        final Macaroon rootMacaroon = macaroons.get(0);
-        final UUID macaroonID = UUID.fromString(rootMacaroon.identifier);
-        UUID orgID;
+    private boolean isStillIssued(VerifiedMacaroonCache.VerifiedMacaroon verified) {
         try {
-            orgID = this.dao.findOrgByToken(macaroonID);
+            return verified.getOrganizationID().equals(this.dao.findOrgByToken(verified.getTokenID()));
         } catch (Exception e) {
-            // The macaroon ID doesn't match, we need to determine if we're looking at a Golden Macaroon, or if the client id has been deleted
-            // Check the length of the provided Macaroons, if more than 1, it's a client token which has been removed, so fail
-            // If the length is 1 it's either a golden macaroon or an undischarged Macaroon, which will fail in the next auth phase
-            if (macaroons.size() > 1) {
-                throw new WebApplicationException(unauthorizedHandler.buildResponse(BEARER_PREFIX, realm));
-            }
-            // Find the org_id caveat and extract the value
-            orgID = MacaroonHelpers.extractOrgIDFromCaveats(Collections.singletonList(rootMacaroon))
-                    .orElseThrow(() -> {
-                        logger.error("Cannot find organization_id on Macaroon");
-                        throw new WebApplicationException(unauthorizedHandler.buildResponse(BEARER_PREFIX, realm));
-                    });
+            logger.debug("Token {} is no longer issued", verified.getTokenID());
+            return false;
         }
+    }
 
-        return orgID;
+    private UUID extractOrgIDFromMacaroon(List<Macaroon> macaroons) {
+        // The macaroon ID doesn't match, we need to determine if we're looking at a Golden Macaroon, or if the client id has been deleted
+        // Check the length of the provided Macaroons, if more than 1, it's a client token which has been removed, so fail
+        // If the length is 1 it's either a golden macaroon or an undischarged Macaroon, which will fail in the next auth phase
+        if (macaroons.size() > 1) {
+            throw new WebApplicationException(unauthorizedHandler.buildResponse(BEARER_PREFIX, realm));
+        }
+        // Find the org_id caveat and extract the value
+        return MacaroonHelpers.extractOrgIDFromCaveats(Collections.singletonList(macaroons.get(0)))
+                .orElseThrow(() -> {
+                    logger.error("Cannot find organization_id on Macaroon");
+                    throw new WebApplicationException(unauthorizedHandler.buildResponse(BEARER_PREFIX, realm));
+                });
     }
 }
@@ -15,7 +15,9 @@ import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -89,6 +91,24 @@ public class MacaroonHelpers {
                     .findAny();
     }
 
+    /**
+     * Find the earliest expiration of the given Macaroons (e.g. a root Macaroon and its discharges).
+     * Third-party caveats are skipped, as their conditions are only readable by their discharger.
+     *
+     * @param macaroons - {@link List} of {@link Macaroon} to extract the expiration from
+     * @return - {@link Optional} {@link OffsetDateTime} of the earliest expiration, empty if none of the Macaroons expire
+     */
+    static Optional<OffsetDateTime> extractExpirationFromCaveats(List<Macaroon> macaroons) {
+        return macaroons
+                .stream()
+                .flatMap(macaroon -> MacaroonBakery.getCaveats(macaroon).stream())
+                .filter(caveat -> !caveat.isThirdParty())
+                .map(MacaroonCaveat::getCondition)
+                .filter(condition -> condition.getKey().equals(ExpirationCaveatSupplier.EXPIRATION_KEY))
+                .map(condition -> OffsetDateTime.parse(condition.getValue()))
+                .min(Comparator.naturalOrder());
+    }
+
     private static List<CaveatSupplier> generateV1Caveats(Duration tokenLifetime, UUID organizationID) {
         return generateDefaultCaveats(1, tokenLifetime, organizationID);
     }
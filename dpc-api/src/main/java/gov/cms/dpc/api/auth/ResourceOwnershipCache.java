@@ -0,0 +1,107 @@
+package gov.cms.dpc.api.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import gov.cms.dpc.common.cache.MeteredCache;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded, time limited cache of the organization which owns each resource checked by a {@link gov.cms.dpc.api.auth.annotations.PathAuthorizer}.
+ * <p>
+ * Without it, every request to a path authorized resource searches the attribution service to confirm the owner of the resource.
+ * The resources created through the API are recorded as soon as they are created, and removed when they are deleted through the API.
+ * Other resources are recorded once a search has confirmed their owner, searches which do not find the resource are never cached.
+ * Entries expire once they are older than the configured duration, which bounds how long a resource deleted outside of this API instance stays authorized.
+ */
+public class ResourceOwnershipCache {
+
+    private final MeteredCache<String, UUID> cache;
+
+    /**
+     * Create a cache. Always searches for the owner when the cache is disabled.
+     *
+     * @param config   - the {@link AuthCacheConfiguration.CacheConfiguration} of the cache
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     */
+    public ResourceOwnershipCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry) {
+        this(config, registry, Ticker.systemTicker());
+    }
+
+    ResourceOwnershipCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry, Ticker ticker) {
+        this.cache = new MeteredCache<>(config.isEnabled(), () -> Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(config.getExpireAfter()))
+                .ticker(ticker)
+                .build(), registry, ResourceOwnershipCache.class);
+    }
+
+    /**
+     * Check whether an organization owns a resource, searching for it on a miss
+     *
+     * @param resourceType   - the {@link ResourceType} of the resource
+     * @param resourceID     - the ID of the resource
+     * @param organizationID - the {@link UUID} of the organization
+     * @param search         - searches for the resource owned by the organization, returns {@code true} when found
+     * @return - {@code true} the organization owns the resource
+     */
+    public boolean isOwner(ResourceType resourceType, String resourceID, UUID organizationID, BooleanSupplier search) {
+        final String key = key(resourceType, resourceID);
+        if (cache.getIfPresent(key, organizationID::equals) != null) {
+            return true;
+        }
+        final boolean owner = search.getAsBoolean();
+        if (owner) {
+            cache.put(key, organizationID);
+        }
+        return owner;
+    }
+
+    /**
+     * Record the owner of a resource created through the API
+     *
+     * @param resourceType   - the {@link ResourceType} of the resource
+     * @param resourceID     - the {@link IIdType} of the created resource, ignored when the server did not return it
+     * @param organizationID - the {@link UUID} of the organization which owns the resource
+     */
+    public void recordOwner(ResourceType resourceType, @Nullable IIdType resourceID, UUID organizationID) {
+        if (resourceID != null && resourceID.hasIdPart()) {
+            cache.put(key(resourceType, resourceID.getIdPart()), organizationID);
+        }
+    }
+
+    /**
+     * Record the owner of each of the resources of a bulk submission
+     *
+     * @param resources      - the {@link Bundle} of resources created through the API
+     * @param organizationID - the {@link UUID} of the organization which owns the resources
+     */
+    public void recordOwners(Bundle resources, UUID organizationID) {
+        resources.getEntry()
+                .stream()
+                .filter(Bundle.BundleEntryComponent::hasResource)
+                .map(Bundle.BundleEntryComponent::getResource)
+                .forEach(resource -> recordOwner(resource.getResourceType(), resource.getIdElement(), organizationID));
+    }
+
+    /**
+     * Remove a resource from the cache, so that the next request for it searches for its owner again
+     *
+     * @param resourceType - the {@link ResourceType} of the resource
+     * @param resourceID   - the ID of the resource
+     */
+    public void invalidate(ResourceType resourceType, String resourceID) {
+        cache.invalidate(key(resourceType, resourceID));
+    }
+
+    private static String key(ResourceType resourceType, String resourceID) {
+        return resourceType.toString() + "/" + resourceID;
+    }
+}
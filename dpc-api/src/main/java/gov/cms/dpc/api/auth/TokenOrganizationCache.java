@@ -0,0 +1,67 @@
+package gov.cms.dpc.api.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import gov.cms.dpc.common.cache.MeteredCache;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded, time limited cache of the organization each access token was issued to, as found by {@link gov.cms.dpc.api.jdbi.TokenDAO#findOrgByToken(UUID)}.
+ * <p>
+ * Every authenticated request looks up the organization of its token, so caching it keeps the auth database load independent of the request rate.
+ * Only successful lookups are cached, tokens which are not found (e.g. Golden Macaroons, or deleted tokens) are looked up every time.
+ * Entries are invalidated when their token is deleted, and expire once they are older than the configured duration, however often they are read.
+ */
+public class TokenOrganizationCache {
+
+    private final MeteredCache<UUID, UUID> cache;
+
+    /**
+     * Create a cache. Always looks up the organization when the cache is disabled.
+     *
+     * @param config   - the {@link AuthCacheConfiguration.CacheConfiguration} of the cache
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     */
+    public TokenOrganizationCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry) {
+        this(config, registry, Ticker.systemTicker());
+    }
+
+    TokenOrganizationCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry, Ticker ticker) {
+        this.cache = new MeteredCache<>(config.isEnabled(), () -> Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(config.getExpireAfter()))
+                .ticker(ticker)
+                .build(), registry, TokenOrganizationCache.class);
+    }
+
+    /**
+     * Get the organization of a token, looking it up on a miss
+     *
+     * @param tokenID - the {@link UUID} of the token
+     * @param lookup  - looks up the organization of the token, throws if the token is not found
+     * @return - the {@link UUID} of the organization which was issued the token
+     */
+    public UUID get(UUID tokenID, Function<UUID, UUID> lookup) {
+        final UUID cached = cache.getIfPresent(tokenID);
+        if (cached != null) {
+            return cached;
+        }
+        // Concurrent misses of the same token may look it up twice, which is harmless
+        final UUID organizationID = lookup.apply(tokenID);
+        cache.put(tokenID, organizationID);
+        return organizationID;
+    }
+
+    /**
+     * Remove a token from the cache, so that the next request with it looks it up again
+     *
+     * @param tokenID - the {@link UUID} of the token
+     */
+    public void invalidate(UUID tokenID) {
+        cache.invalidate(tokenID);
+    }
+}
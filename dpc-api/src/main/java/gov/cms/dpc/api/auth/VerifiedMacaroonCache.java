@@ -0,0 +1,176 @@
+package gov.cms.dpc.api.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import gov.cms.dpc.common.cache.MeteredCache;
+import gov.cms.dpc.common.utils.MetricMaker;
+import org.bouncycastle.jcajce.provider.digest.SHA256;
+import org.bouncycastle.util.encoders.Hex;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, short-lived cache of the Macaroons which have been fully deserialized and verified by the {@link DPCAuthFilter}.
+ * <p>
+ * Clients send the same access token with every request until it expires, so caching the outcome of the verification turns it into a hash and a lookup.
+ * Entries are keyed by the SHA-256 digest of the serialized Macaroon, so the tokens themselves are not kept in memory.
+ * Each entry expires after the configured duration, or when the token expires, whichever comes first.
+ * <p>
+ * A cached entry is only returned once the caller has checked that its token is still issued, which is what rejects deleted tokens before they expire.
+ * Failed verifications are never cached.
+ */
+public class VerifiedMacaroonCache {
+
+    private final MeteredCache<String, VerifiedMacaroon> cache;
+    private final Timer verifications;
+
+    /**
+     * Create a cache. Always verifies the Macaroon when the cache is disabled.
+     *
+     * @param config   - the {@link AuthCacheConfiguration.CacheConfiguration} of the cache
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     */
+    public VerifiedMacaroonCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry) {
+        this(config, registry, Ticker.systemTicker());
+    }
+
+    VerifiedMacaroonCache(AuthCacheConfiguration.CacheConfiguration config, MetricRegistry registry, Ticker ticker) {
+        this.cache = new MeteredCache<>(config.isEnabled(), () -> Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfter(new TokenExpiry(Duration.ofSeconds(config.getExpireAfter())))
+                .ticker(ticker)
+                .build(), registry, VerifiedMacaroonCache.class);
+        this.verifications = new MetricMaker(registry, VerifiedMacaroonCache.class).registerTimer("verificationTimer");
+    }
+
+    /**
+     * Get the outcome of the verification of a Macaroon, verifying it on a miss
+     *
+     * @param macaroon     - the serialized Macaroon, as sent by the client
+     * @param verifier     - fully verifies the Macaroon, throws if it is not valid
+     * @param stillIssued  - checks that the token of a cached entry has not been deleted since it was verified
+     * @return - the {@link VerifiedMacaroon}
+     */
+    public VerifiedMacaroon get(String macaroon, Supplier<VerifiedMacaroon> verifier, Predicate<VerifiedMacaroon> stillIssued) {
+        if (!cache.isEnabled()) {
+            return verify(verifier);
+        }
+        final String key = digest(macaroon);
+        final VerifiedMacaroon cached = cache.getIfPresent(key, stillIssued);
+        if (cached != null) {
+            return cached;
+        }
+        // Concurrent misses of the same Macaroon may verify it twice, which is harmless
+        final VerifiedMacaroon verified = verify(verifier);
+        if (verified.isCacheable()) {
+            cache.put(key, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * Remove a Macaroon from the cache, so that the next request with it verifies it again
+     *
+     * @param macaroon - the serialized Macaroon
+     */
+    public void invalidate(String macaroon) {
+        if (cache.isEnabled()) {
+            cache.invalidate(digest(macaroon));
+        }
+    }
+
+    private VerifiedMacaroon verify(Supplier<VerifiedMacaroon> verifier) {
+        try (Timer.Context ignored = verifications.time()) {
+            return verifier.get();
+        }
+    }
+
+    private static String digest(String macaroon) {
+        return Hex.toHexString(new SHA256.Digest().digest(macaroon.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The outcome of the successful verification of a Macaroon
+     */
+    public static class VerifiedMacaroon {
+
+        private final UUID tokenID;
+        private final UUID organizationID;
+        private final OffsetDateTime expires;
+
+        /**
+         * @param tokenID        - the {@link UUID} of the issued token, null when the Macaroon was not issued as a token (e.g. Golden Macaroons)
+         * @param organizationID - the {@link UUID} of the organization the Macaroon grants access to
+         * @param expires        - the earliest expiration of the Macaroon, null when it does not expire
+         */
+        public VerifiedMacaroon(@Nullable UUID tokenID, UUID organizationID, @Nullable OffsetDateTime expires) {
+            this.tokenID = tokenID;
+            this.organizationID = organizationID;
+            this.expires = expires;
+        }
+
+        @Nullable
+        public UUID getTokenID() {
+            return tokenID;
+        }
+
+        public UUID getOrganizationID() {
+            return organizationID;
+        }
+
+        @Nullable
+        public OffsetDateTime getExpires() {
+            return expires;
+        }
+
+        /**
+         * Only issued tokens can be checked for deletion, and only expiring ones can be bounded by their expiration
+         *
+         * @return - {@code true} the verification can be cached
+         */
+        boolean isCacheable() {
+            return tokenID != null && expires != null && expires.isAfter(OffsetDateTime.now(ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * Expires each entry after the configured duration, or when its token expires if that is sooner. Reads do not extend the lifetime of an entry.
+     */
+    private static class TokenExpiry implements Expiry<String, VerifiedMacaroon> {
+
+        private final Duration expireAfter;
+
+        TokenExpiry(Duration expireAfter) {
+            this.expireAfter = expireAfter;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedMacaroon value, long currentTime) {
+            final Duration remaining = Duration.between(OffsetDateTime.now(ZoneOffset.UTC), value.getExpires());
+            if (remaining.isNegative()) {
+                return 0;
+            }
+            return remaining.compareTo(expireAfter) < 0 ? remaining.toNanos() : expireAfter.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedMacaroon value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedMacaroon value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package gov.cms.dpc.api.auth.jwt;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import gov.cms.dpc.api.auth.AuthCacheConfiguration;
+import gov.cms.dpc.common.cache.MeteredCache;
+import gov.cms.dpc.common.utils.MetricMaker;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * {@link IJTICache} shared by all the API instances through the auth database, so that a JTI replayed against another instance is caught as well.
+ * <p>
+ * Each JTI is recorded in the unlogged JWT_IDS table by a single insert, which only succeeds when no instance has recorded it within the replay window,
+ * so concurrent replays cannot both pass. The expiration is computed by the database, which keeps the window consistent across instances.
+ * Expired JTIs are deleted at most once per cleanup interval, by whichever request comes along first.
+ * <p>
+ * The JTIs seen by this instance are also kept in a bounded in-memory cache, which rejects local replays without going to the database.
+ * JTIs which are not persisted (e.g. when only validating a JWT) are only checked against that cache, so that each token request makes a single round trip:
+ * the insert which records the JTI is also the only check that matters across instances.
+ * The hits of that cache are the replays caught locally, those caught by the database are metered separately.
+ */
+public class DatabaseJTICache implements IJTICache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseJTICache.class);
+
+    // Matches the longest lifetime of a JWT accepted by the TokenResource
+    static final Duration REPLAY_WINDOW = Duration.ofMinutes(5);
+
+    // An expired JTI which has not been cleaned up yet is overwritten, rather than reported as a replay
+    private static final String RECORD_QUERY = "INSERT INTO jwt_ids (jti, expires) VALUES (:jti, NOW() + :window * INTERVAL '1 second') " +
+            "ON CONFLICT (jti) DO UPDATE SET expires = EXCLUDED.expires WHERE jwt_ids.expires < NOW()";
+    private static final String CLEANUP_QUERY = "DELETE FROM jwt_ids WHERE expires < NOW()";
+
+    private final SessionFactory factory;
+    private final MeteredCache<String, Boolean> seen;
+    private final Ticker ticker;
+    private final long cleanupInterval;
+    private final AtomicLong nextCleanup;
+    private final Meter sharedReplays;
+    private final Timer queries;
+
+    /**
+     * Create a cache on top of the JWT_IDS table. The table is expected to be created by the auth migrations.
+     *
+     * @param factory  - the auth database {@link SessionFactory}
+     * @param config   - the {@link AuthCacheConfiguration.JTICacheConfiguration} of the cache
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     */
+    public DatabaseJTICache(SessionFactory factory, AuthCacheConfiguration.JTICacheConfiguration config, MetricRegistry registry) {
+        this(factory, config, registry, Ticker.systemTicker());
+    }
+
+    DatabaseJTICache(SessionFactory factory, AuthCacheConfiguration.JTICacheConfiguration config, MetricRegistry registry, Ticker ticker) {
+        this.factory = factory;
+        this.seen = new MeteredCache<>(true, () -> Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(REPLAY_WINDOW)
+                .ticker(ticker)
+                .build(), registry, DatabaseJTICache.class);
+        this.ticker = ticker;
+        this.cleanupInterval = TimeUnit.SECONDS.toNanos(config.getCleanupInterval());
+        this.nextCleanup = new AtomicLong(ticker.read());
+
+        final var metricMaker = new MetricMaker(registry, DatabaseJTICache.class);
+        this.sharedReplays = metricMaker.registerMeter("sharedReplaysMeter");
+        this.queries = metricMaker.registerTimer("queryTimer");
+    }
+
+    @Override
+    public boolean isJTIOk(String jti, boolean persist) {
+        if (this.seen.getIfPresent(jti) != null) {
+            logger.warn("JTI {} is being replayed", jti);
+            return false;
+        }
+
+        if (!persist) {
+            return true;
+        }
+
+        final boolean isOk = inTransaction(session -> record(session, jti));
+        if (!isOk) {
+            logger.warn("JTI {} is being replayed against another instance", jti);
+            sharedReplays.mark();
+        }
+        // Replays are remembered as well, so that repeating them does not go to the database
+        this.seen.put(jti, true);
+        return isOk;
+    }
+
+    private boolean record(Session session, String jti) {
+        final int recorded = session.createNativeQuery(RECORD_QUERY)
+                .setParameter("jti", jti)
+                .setParameter("window", REPLAY_WINDOW.getSeconds())
+                .executeUpdate();
+        cleanup(session);
+        return recorded > 0;
+    }
+
+    private void cleanup(Session session) {
+        final long now = ticker.read();
+        final long next = nextCleanup.get();
+        // Only one of the concurrent requests due for a cleanup runs it
+        if (now - next >= 0 && nextCleanup.compareAndSet(next, now + cleanupInterval)) {
+            final int deleted = session.createNativeQuery(CLEANUP_QUERY).executeUpdate();
+            logger.debug("Deleted {} expired JTIs", deleted);
+        }
+    }
+
+    private <T> T inTransaction(Function<Session, T> function) {
+        try (Timer.Context ignored = queries.time();
+             final Session session = this.factory.openSession()) {
+            final Transaction tx = session.beginTransaction();
+            try {
+                final T result = function.apply(session);
+                tx.commit();
+                return result;
+            } catch (RuntimeException e) {
+                tx.rollback();
+                throw e;
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package gov.cms.dpc.api.auth.macaroonauth;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import gov.cms.dpc.api.auth.DPCAuthCredentials;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.fhir.DPCIdentifierSystem;
 import io.dropwizard.auth.Authenticator;
 import org.hl7.fhir.dstu3.model.Bundle;
@@ -23,10 +24,12 @@ public class MacaroonsAuthenticator implements Authenticator<DPCAuthCredentials,
     private static final Logger logger = LoggerFactory.getLogger(MacaroonsAuthenticator.class);
 
     private final IGenericClient client;
+    private final ResourceOwnershipCache ownershipCache;
 
     @Inject
-    public MacaroonsAuthenticator(IGenericClient client) {
+    public MacaroonsAuthenticator(IGenericClient client, ResourceOwnershipCache ownershipCache) {
         this.client = client;
+        this.ownershipCache = ownershipCache;
     }
 
     @Override
@@ -45,7 +48,20 @@ public class MacaroonsAuthenticator implements Authenticator<DPCAuthCredentials,
             return validateOrganization(principal, credentials);
         }
 
-        // Otherwise, try to lookup the matching resource
+        // Otherwise, try to lookup the matching resource, unless its owner is already known
+        final boolean owner = this.ownershipCache.isOwner(credentials.getPathAuthorizer().type(),
+                credentials.getPathValue(),
+                principal.getID(),
+                () -> searchResource(credentials));
+
+        if (!owner) {
+            return Optional.empty();
+        }
+
+        return Optional.of(principal);
+    }
+
+    private boolean searchResource(DPCAuthCredentials credentials) {
         logger.debug("Looking up resource {} in path authorizer. With value: {}", credentials.getPathAuthorizer().type(), credentials.getPathAuthorizer().pathParam());
         Map<String, List<String>> searchParams = new HashMap<>();
         searchParams.put("_id", Collections.singletonList(credentials.getPathValue()));
@@ -65,11 +81,7 @@ public class MacaroonsAuthenticator implements Authenticator<DPCAuthCredentials,
                 .encodedJson()
                 .execute();
 
-        if (bundle.getTotal() == 0) {
-            return Optional.empty();
-        }
-
-        return Optional.of(principal);
+        return bundle.getTotal() > 0;
     }
 
     private Optional<OrganizationPrincipal> validateOrganization(OrganizationPrincipal principal, DPCAuthCredentials credentials) {
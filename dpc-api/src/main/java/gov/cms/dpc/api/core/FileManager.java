@@ -41,6 +41,8 @@ public class FileManager {
         logger.debug("Streaming file {}", path.toString());
         return new FilePointer(Hex.toHexString(batchFile.getChecksum()),
                 batchFile.getFileLength(),
+                batchFile.isCompressed() ? batchFile.getUncompressedLength() : batchFile.getFileLength(),
+                batchFile.isCompressed(),
                 batchFile.getJobID(),
                 jobQueueBatch.getStartTime().orElseThrow(() -> new IllegalStateException("Cannot find start time of completed job")),
                 new File(path.toString()));
@@ -50,13 +52,21 @@ public class FileManager {
 
         private final String checksum;
         private final long fileSize;
+        private final long uncompressedSize;
+        private final boolean compressed;
         private final UUID jobID;
         private final OffsetDateTime creationTime;
         private final File file;
 
         public FilePointer(String checksum, long fileSize, UUID jobID, OffsetDateTime creationTime, File file) {
+            this(checksum, fileSize, fileSize, false, jobID, creationTime, file);
+        }
+
+        public FilePointer(String checksum, long fileSize, long uncompressedSize, boolean compressed, UUID jobID, OffsetDateTime creationTime, File file) {
             this.checksum = checksum;
             this.fileSize = fileSize;
+            this.uncompressedSize = uncompressedSize;
+            this.compressed = compressed;
             this.jobID = jobID;
             this.creationTime = creationTime;
             this.file = file;
@@ -70,6 +80,20 @@ public class FileManager {
             return fileSize;
         }
 
+        /**
+         * @return - the size of the NDJSON content, which is the file size, unless the file is compressed
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        /**
+         * @return - {@code true} the file is stored gzip compressed
+         */
+        public boolean isCompressed() {
+            return compressed;
+        }
+
         public UUID getJobID() {
             return jobID;
         }
@@ -1,28 +1,33 @@
 package gov.cms.dpc.api.jdbi;
 
+import gov.cms.dpc.api.auth.TokenOrganizationCache;
 import gov.cms.dpc.api.entities.TokenEntity;
 import gov.cms.dpc.api.entities.TokenEntity_;
 import gov.cms.dpc.common.hibernate.auth.DPCAuthManagedSessionFactory;
 import io.dropwizard.hibernate.AbstractDAO;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
 import javax.inject.Inject;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import javax.transaction.Synchronization;
 import java.util.List;
 import java.util.UUID;
 
 public class TokenDAO extends AbstractDAO<TokenEntity> {
 
     private final SessionFactory factory;
+    private final TokenOrganizationCache organizationCache;
 
     @Inject
-    public TokenDAO(DPCAuthManagedSessionFactory factory) {
+    public TokenDAO(DPCAuthManagedSessionFactory factory, TokenOrganizationCache organizationCache) {
         super(factory.getSessionFactory());
         this.factory = factory.getSessionFactory();
+        this.organizationCache = organizationCache;
     }
 
     public TokenEntity persistToken(TokenEntity entity) {
@@ -52,12 +57,17 @@ public class TokenDAO extends AbstractDAO<TokenEntity> {
 
     /**
      * Method for matching a given token ID with the corresponding Organization.
-     * This is designed to be used within the authentication handlers, thus it creates and manages a {@link Session} on its own
+     * This is designed to be used within the authentication handlers, thus it creates and manages a {@link Session} on its own.
+     * Matches are cached by the {@link TokenOrganizationCache}, so most calls do not touch the database.
      *
      * @param tokenID - {@link UUID} tokenID to match with organization
      * @return - {@link UUID} organization ID which was issued the token
      */
     public UUID findOrgByToken(UUID tokenID) {
+        return this.organizationCache.get(tokenID, this::queryOrgByToken);
+    }
+
+    private UUID queryOrgByToken(UUID tokenID) {
         try (Session session = this.factory.openSession()) {
 
             final CriteriaBuilder builder = session.getCriteriaBuilder();
@@ -72,7 +82,32 @@ public class TokenDAO extends AbstractDAO<TokenEntity> {
         }
     }
 
+    /**
+     * Delete the token, and forget its organization once the deletion is committed.
+     * A lookup of the token from another request could otherwise cache it again before the commit, and keep authorizing it.
+     *
+     * @param entity - {@link TokenEntity} to delete
+     */
     public void deleteToken(TokenEntity entity) {
-        this.currentSession().delete(entity);
+        final UUID tokenID = UUID.fromString(entity.getId());
+        final Session session = this.currentSession();
+        session.delete(entity);
+
+        final Transaction transaction = session.getTransaction();
+        if (transaction.isActive()) {
+            transaction.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                    // Not used
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    organizationCache.invalidate(tokenID);
+                }
+            });
+        } else {
+            this.organizationCache.invalidate(tokenID);
+        }
     }
 }
@@ -26,12 +26,21 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static gov.cms.dpc.fhir.dropwizard.filters.StreamingContentSizeFilter.X_CONTENT_LENGTH;
 
 /**
  * Streaming and range logic was taken from here: https://github.com/aruld/jersey-streaming
+ * <p>
+ * Export files may be stored gzip compressed. These are returned as-is, with a `Content-Encoding: gzip` header, to clients which accept gzip,
+ * and decompressed on the fly for the others. Range requests apply to the returned bytes in both cases.
+ * The two representations have different ETags, the gzip one is suffixed with `--gzip`, which {@link gov.cms.dpc.api.converters.ChecksumParamConverter} strips from the If-None-Match header.
+ * <p>
+ * A gzip stream cannot be decompressed from the middle, so each range of a decompressed file is read from the start of the file.
+ * Downloading a large file in chunks costs quadratic CPU that way, clients which download in chunks should accept gzip.
  */
 @Api(tags = {"Bulk Data", "Data"}, authorizations = @Authorization(value = "apiKey"))
 @Path("/v1/Data")
@@ -40,6 +49,7 @@ public class DataResource extends AbstractDataResource {
     private static final Logger logger = LoggerFactory.getLogger(DataResource.class);
     private static final int CHUNK_SIZE = 1024 * 1024; // Return a maximum of 1MB chunks, but we can modify this later if we need to
     private static final String ACCEPTED_RANGE_VALUE = "bytes";
+    private static final String GZIP_ENCODING = "gzip";
 
     private final FileManager manager;
 
@@ -55,10 +65,11 @@ public class DataResource extends AbstractDataResource {
     @ApiOperation(value = "Metadata for downloading output files.", notes = "Retrieve the metadata for a corresponding `GET` request to download ndjson formatted output files from the server.")
     @ApiResponses({
             @ApiResponse(code = HttpStatus.OK_200, message = "File of newline-delimited JSON FHIR objects", responseHeaders = {
-                    @ResponseHeader(name = HttpHeaders.ETAG, description = "SHA256 checksum of file"),
+                    @ResponseHeader(name = HttpHeaders.ETAG, description = "SHA256 checksum of file, suffixed with `--gzip` if gzip encoded"),
                     @ResponseHeader(name = HttpHeaders.CONTENT_LENGTH, description = "size of file (in bytes)"),
                     @ResponseHeader(name = HttpHeaders.LAST_MODIFIED, description = "creation timestamp of file (in miliseconds since Unix epoch)"),
-                    @ResponseHeader(name = HttpHeaders.ACCEPT_RANGES, description = "Accepted HTTP range request (bytes only)")
+                    @ResponseHeader(name = HttpHeaders.ACCEPT_RANGES, description = "Accepted HTTP range request (bytes only)"),
+                    @ResponseHeader(name = HttpHeaders.CONTENT_ENCODING, description = "gzip, if the file is compressed and gzip is accepted")
             }),
             @ApiResponse(code = HttpStatus.NOT_MODIFIED_304, message = "No newer files available"),
             @ApiResponse(code = HttpStatus.UNAUTHORIZED_401, message = "Not authorized to download file"),
@@ -72,6 +83,9 @@ public class DataResource extends AbstractDataResource {
                                    @HeaderParam(HttpHeaders.IF_MODIFIED_SINCE)
                                    @ApiParam(value = "Download file only if provided timestamp (miliseconds since Unix Epoch) is older than file creation timestamp", example = "1575394136")
                                            Optional<String> modifiedHeader,
+                                   @HeaderParam(HttpHeaders.ACCEPT_ENCODING)
+                                   @ApiParam(hidden = true)
+                                           Optional<String> acceptEncoding,
                                    @PathParam("fileID")
                                    @ApiParam(required = true, value = "NDJSON file name", example = "728b270d-d7de-4143-82fe-d3ccd92cebe4-1-coverage.ndjson")
                                            String fileID) {
@@ -81,9 +95,10 @@ public class DataResource extends AbstractDataResource {
             return Response.status(Response.Status.NOT_MODIFIED).build();
         }
 
-        return Response.ok()
-                .header(HttpHeaders.ETAG, filePointer.getChecksum())
-                .header(HttpHeaders.CONTENT_LENGTH, filePointer.getFileSize())
+        final boolean returnCompressed = returnCompressed(filePointer, acceptEncoding);
+        return addEncodingHeaders(Response.ok(), filePointer, returnCompressed)
+                .header(HttpHeaders.ETAG, eTag(filePointer, returnCompressed))
+                .header(HttpHeaders.CONTENT_LENGTH, returnCompressed ? filePointer.getFileSize() : filePointer.getUncompressedSize())
                 .header(HttpHeaders.LAST_MODIFIED, filePointer.getCreationTime().toInstant().toEpochMilli())
                 .header(HttpHeaders.ACCEPT_RANGES, ACCEPTED_RANGE_VALUE)
                 .build();
@@ -96,13 +111,15 @@ public class DataResource extends AbstractDataResource {
     @ExceptionMetered
     @ApiOperation(value = "Download output files.", notes = "Download ndjson formatted output files from the server. " +
             "This endpoint supports returning partial results when the `" + HttpHeaders.RANGE + "` header is provided. " +
+            "Ranges of a compressed file are read from the start of the file, unless gzip is accepted, so chunked downloads should accept gzip. " +
             "<p>This endpoint will return a `" + HttpStatus.NOT_MODIFIED_304 + "` response if the `"
             + HttpHeaders.IF_MODIFIED_SINCE + "` or `" + HttpHeaders.IF_NONE_MATCH + "` headers are provided and match an existing file.")
     @ApiResponses({
             @ApiResponse(code = HttpStatus.OK_200, message = "File of newline-delimited JSON FHIR objects", responseHeaders = {
-                    @ResponseHeader(name = HttpHeaders.ETAG, description = "SHA256 checksum of file"),
+                    @ResponseHeader(name = HttpHeaders.ETAG, description = "SHA256 checksum of file, suffixed with `--gzip` if gzip encoded"),
                     @ResponseHeader(name = HttpHeaders.CONTENT_LENGTH, description = "size of file (in bytes)"),
-                    @ResponseHeader(name = HttpHeaders.LAST_MODIFIED, description = "creation timestamp of file (in miliseconds since Unix epoch)")
+                    @ResponseHeader(name = HttpHeaders.LAST_MODIFIED, description = "creation timestamp of file (in miliseconds since Unix epoch)"),
+                    @ResponseHeader(name = HttpHeaders.CONTENT_ENCODING, description = "gzip, if the file is compressed and gzip is accepted")
             }),
             @ApiResponse(code = HttpStatus.PARTIAL_CONTENT_206, message = "Returning a partial byte range of file", responseHeaders = {
                     @ResponseHeader(name = HttpHeaders.ACCEPT_RANGES, description = "Accepted HTTP range request (bytes only)"),
@@ -110,7 +127,9 @@ public class DataResource extends AbstractDataResource {
             }),
             @ApiResponse(code = HttpStatus.NOT_MODIFIED_304, message = "No newer files available"),
             @ApiResponse(code = HttpStatus.UNAUTHORIZED_401, message = "Not authorized to download file"),
-            @ApiResponse(code = HttpStatus.RANGE_NOT_SATISFIABLE_416, message = "Range request is invalid"),
+            @ApiResponse(code = HttpStatus.RANGE_NOT_SATISFIABLE_416, message = "Range request is invalid or starts past the end of the file", responseHeaders = {
+                    @ResponseHeader(name = HttpHeaders.CONTENT_RANGE, description = "Size of the file, if the range starts past its end (e.g. bytes */{total file size})")
+            }),
             @ApiResponse(code = HttpStatus.INTERNAL_SERVER_ERROR_500, message = "An error occurred", response = OperationOutcome.class)
     })
     public Response downloadExportFile(@ApiParam(hidden = true) @Auth OrganizationPrincipal organizationPrincipal,
@@ -123,6 +142,9 @@ public class DataResource extends AbstractDataResource {
                                        @HeaderParam(HttpHeaders.IF_MODIFIED_SINCE)
                                        @ApiParam(value = "Download file only if provided timestamp (miliseconds since Unix Epoch) is older than file creation timestamp", example = "1575394136")
                                                Optional<String> modifiedHeader,
+                                       @HeaderParam(HttpHeaders.ACCEPT_ENCODING)
+                                       @ApiParam(hidden = true)
+                                               Optional<String> acceptEncoding,
                                        @PathParam("fileID")
                                        @ApiParam(required = true, value = "NDJSON file name", example = "728b270d-d7de-4143-82fe-d3ccd92cebe4-1-coverage.ndjson")
                                                String fileID) {
@@ -135,13 +157,14 @@ public class DataResource extends AbstractDataResource {
         }
 
         final Response response;
+        final boolean returnCompressed = returnCompressed(filePointer, acceptEncoding);
 
         // Process the range request and return a partial stream, but only if they request bytes, ignore everything else
         if (rangeHeader != null) {
-            response = buildRangedRequest(fileID, filePointer.getFile(), rangeHeader);
+            response = buildRangedRequest(fileID, filePointer, rangeHeader, returnCompressed);
         } else {
             // Return a non-ranged streamed response if the requester doesn't actually send the range header, or if we don't understand the range unit
-            response = buildDefaultResponse(fileID, filePointer);
+            response = buildDefaultResponse(fileID, filePointer, returnCompressed);
         }
 
         // Set the cache control headers to make sure the file isn't retained in transit
@@ -154,9 +177,9 @@ public class DataResource extends AbstractDataResource {
                 .build();
     }
 
-    private Response buildDefaultResponse(String fileID, FileManager.FilePointer filePointer) {
+    private Response buildDefaultResponse(String fileID, FileManager.FilePointer filePointer, boolean returnCompressed) {
         final StreamingOutput fileStream = outputStream -> {
-            try (FileInputStream fileInputStream = new FileInputStream(filePointer.getFile())) {
+            try (InputStream fileInputStream = openFile(filePointer, returnCompressed)) {
                 // Use the IOUtils copy method, which internally buffers the files
                 IOUtils.copy(fileInputStream, outputStream);
             } catch (FileNotFoundException e) {
@@ -165,16 +188,15 @@ public class DataResource extends AbstractDataResource {
             outputStream.flush();
         };
 
-        return Response
-                .status(Response.Status.OK)
+        return addEncodingHeaders(Response.status(Response.Status.OK), filePointer, returnCompressed)
                 .entity(fileStream)
-                .header(HttpHeaders.ETAG, filePointer.getChecksum())
-                .header(HttpHeaders.CONTENT_LENGTH, filePointer.getFileSize())
+                .header(HttpHeaders.ETAG, eTag(filePointer, returnCompressed))
+                .header(HttpHeaders.CONTENT_LENGTH, returnCompressed ? filePointer.getFileSize() : filePointer.getUncompressedSize())
                 .header(HttpHeaders.LAST_MODIFIED, filePointer.getCreationTime().toInstant().toEpochMilli())
                 .build();
     }
 
-    private Response buildRangedRequest(String fileID, File file, RangeHeader range) {
+    private Response buildRangedRequest(String fileID, FileManager.FilePointer filePointer, RangeHeader range, boolean returnCompressed) {
         if (!range.getUnit().equals(ACCEPTED_RANGE_VALUE)) {
             throw new WebApplicationException("Only `bytes` are acceptable as ranges", Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
         }
@@ -187,15 +209,27 @@ public class DataResource extends AbstractDataResource {
             throw new WebApplicationException("Range end cannot be before begin", Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
         }
 
+        final long totalLength = !filePointer.isCompressed() || returnCompressed ? filePointer.getFile().length() : filePointer.getUncompressedSize();
+        if (rangeStart >= totalLength) {
+            throw new WebApplicationException("Range cannot begin past the end of the file", Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, String.format("bytes */%d", totalLength))
+                    .build());
+        }
+
         try {
-            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
-            randomAccessFile.seek(rangeStart);
+            // Ranges are of the returned bytes, so skip through the decompressed content when decompressing the file
+            final InputStream inputStream = openFile(filePointer, returnCompressed);
+            try {
+                IOUtils.skipFully(inputStream, rangeStart);
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
 
-            final PartialFileStreamer fileStreamer = new PartialFileStreamer((int) len, randomAccessFile);
+            final PartialFileStreamer fileStreamer = new PartialFileStreamer((int) len, inputStream);
 
-            final String responseRange = String.format("bytes %d-%d/%d", rangeStart, rangeEnd, file.length());
-            return Response
-                    .status(Response.Status.PARTIAL_CONTENT)
+            final String responseRange = String.format("bytes %d-%d/%d", rangeStart, rangeEnd, totalLength);
+            return addEncodingHeaders(Response.status(Response.Status.PARTIAL_CONTENT), filePointer, returnCompressed)
                     .entity(fileStreamer)
                     .header(HttpHeaders.ACCEPT_RANGES, ACCEPTED_RANGE_VALUE)
                     .header(HttpHeaders.CONTENT_RANGE, responseRange)
@@ -207,6 +241,53 @@ public class DataResource extends AbstractDataResource {
         }
     }
 
+    /**
+     * Open the file for streaming, decompressing it if it is compressed and the client does not accept gzip.
+     *
+     * @param filePointer      - the file to open
+     * @param returnCompressed - {@code true} return the compressed bytes of the file
+     * @return - an {@link InputStream} of the bytes to return
+     * @throws IOException - if the file cannot be opened
+     */
+    private static InputStream openFile(FileManager.FilePointer filePointer, boolean returnCompressed) throws IOException {
+        final FileInputStream fileInputStream = new FileInputStream(filePointer.getFile());
+        if (!filePointer.isCompressed() || returnCompressed) {
+            return fileInputStream;
+        }
+        try {
+            return new GZIPInputStream(fileInputStream);
+        } catch (IOException e) {
+            fileInputStream.close();
+            throw e;
+        }
+    }
+
+    private static Response.ResponseBuilder addEncodingHeaders(Response.ResponseBuilder builder, FileManager.FilePointer filePointer, boolean returnCompressed) {
+        if (filePointer.isCompressed()) {
+            // The representation depends on the Accept-Encoding header, so caches have to key on it
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (returnCompressed) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+        }
+        return builder;
+    }
+
+    private static String eTag(FileManager.FilePointer filePointer, boolean returnCompressed) {
+        // The checksum is of the uncompressed content, so the compressed representation needs its own ETag
+        return returnCompressed ? filePointer.getChecksum() + "--" + GZIP_ENCODING : filePointer.getChecksum();
+    }
+
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private static boolean returnCompressed(FileManager.FilePointer filePointer, Optional<String> acceptEncoding) {
+        return filePointer.isCompressed() && acceptEncoding
+                .map(header -> Arrays.stream(header.split(","))
+                        .map(String::trim)
+                        // Ignore any quality value, except for an explicit refusal
+                        .anyMatch(encoding -> encoding.toLowerCase().startsWith(GZIP_ENCODING) && !encoding.replace(" ", "").endsWith(";q=0")))
+                .orElse(false);
+    }
+
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
     private boolean returnCachedValue(FileManager.FilePointer filePointer, Optional<String> checksum, Optional<String> modifiedSince) {
         // If we're provided a file checksum, verify it matches, if so, return a 304
@@ -232,25 +313,28 @@ public class DataResource extends AbstractDataResource {
     private static class PartialFileStreamer implements StreamingOutput {
 
         private int length;
-        private RandomAccessFile raf;
+        private InputStream inputStream;
         final byte[] buf = new byte[4096];
 
-        PartialFileStreamer(int length, RandomAccessFile raf) {
+        PartialFileStreamer(int length, InputStream inputStream) {
             this.length = length;
-            this.raf = raf;
+            this.inputStream = inputStream;
         }
 
         @Override
         public void write(OutputStream outputStream) throws IOException, WebApplicationException {
             try {
                 while (length != 0) {
-                    int read = raf.read(buf, 0, Math.min(buf.length, length));
+                    int read = inputStream.read(buf, 0, Math.min(buf.length, length));
+                    if (read == -1) {
+                        break;
+                    }
                     outputStream.write(buf, 0, read);
                     length -= read;
                 }
                 outputStream.flush();
             } finally {
-                raf.close();
+                inputStream.close();
             }
         }
 
@@ -5,6 +5,7 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Timed;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.api.auth.annotations.PathAuthorizer;
 import gov.cms.dpc.api.resources.AbstractEndpointResource;
 import gov.cms.dpc.fhir.annotations.FHIR;
@@ -28,10 +29,12 @@ import java.util.UUID;
 public class EndpointResource extends AbstractEndpointResource {
 
     private final IGenericClient client;
+    private final ResourceOwnershipCache ownershipCache;
 
     @Inject
-    EndpointResource(IGenericClient client) {
+    EndpointResource(IGenericClient client, ResourceOwnershipCache ownershipCache) {
         this.client = client;
+        this.ownershipCache = ownershipCache;
     }
 
     @POST
@@ -57,6 +60,7 @@ public class EndpointResource extends AbstractEndpointResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.recordOwner(ResourceType.Endpoint, outcome.getId(), organizationPrincipal.getID());
         return FHIRHelpers.handleMethodOutcome(outcome);
     }
 
@@ -142,6 +146,8 @@ public class EndpointResource extends AbstractEndpointResource {
                 .resourceById("Endpoint", endpointID.toString())
                 .execute();
 
+        this.ownershipCache.invalidate(ResourceType.Endpoint, endpointID.toString());
+
         return Response.ok().build();
     }
 }
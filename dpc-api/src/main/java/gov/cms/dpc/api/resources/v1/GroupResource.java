@@ -5,6 +5,7 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Timed;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.api.auth.annotations.PathAuthorizer;
 import gov.cms.dpc.api.resources.AbstractGroupResource;
 import gov.cms.dpc.common.annotations.APIV1;
@@ -29,6 +30,9 @@ import javax.validation.Valid;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -49,12 +53,14 @@ public class GroupResource extends AbstractGroupResource {
     private final IJobQueue queue;
     private final IGenericClient client;
     private final String baseURL;
+    private final ResourceOwnershipCache ownershipCache;
 
     @Inject
-    public GroupResource(IJobQueue queue, IGenericClient client, @APIV1 String baseURL) {
+    public GroupResource(IJobQueue queue, IGenericClient client, @APIV1 String baseURL, ResourceOwnershipCache ownershipCache) {
         this.queue = queue;
         this.client = client;
         this.baseURL = baseURL;
+        this.ownershipCache = ownershipCache;
     }
 
     @POST
@@ -84,6 +90,7 @@ public class GroupResource extends AbstractGroupResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.recordOwner(ResourceType.Group, outcome.getId(), organizationPrincipal.getID());
         return handleMethodOutcome(outcome);
     }
 
@@ -214,6 +221,8 @@ public class GroupResource extends AbstractGroupResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.invalidate(ResourceType.Group, rosterID.toString());
+
         return Response.ok().build();
     }
 
@@ -250,12 +259,13 @@ public class GroupResource extends AbstractGroupResource {
                            @QueryParam("_type") String resourceTypes,
                            @ApiParam(value = "Output format of requested data", allowableValues = FHIR_NDJSON, defaultValue = FHIR_NDJSON)
                            @QueryParam("_outputFormat") String outputFormat,
-                           @ApiParam(value = "Request data that has been updated after the given point. (Not implemented yet)", hidden = true)
+                           @ApiParam(value = "Request data that has been updated after the given point, as an ISO-8601 timestamp with an offset")
                            @QueryParam("_since") String since) {
         logger.debug("Exporting data for provider: {}", rosterID);
 
         // Check the parameters
-        checkExportRequest(outputFormat, since);
+        checkExportRequest(outputFormat);
+        final OffsetDateTime sinceTime = handleSinceQueryParam(since);
 
         // Get the attributed patients
         final List<String> attributedPatients = fetchPatientMBIs(rosterID);
@@ -265,7 +275,7 @@ public class GroupResource extends AbstractGroupResource {
 
         // Handle the _type query parameter
         final var resources = handleTypeQueryParam(resourceTypes);
-        final UUID jobID = this.queue.createJob(orgID, rosterID, attributedPatients, resources);
+        final UUID jobID = this.queue.createJob(orgID, rosterID, attributedPatients, resources, sinceTime);
 
         return Response.status(Response.Status.ACCEPTED)
                 .contentLocation(URI.create(this.baseURL + "/Jobs/" + jobID)).build();
@@ -382,20 +392,37 @@ public class GroupResource extends AbstractGroupResource {
      * return an error response with an {@link OperationOutcome} in the body.
      *
      * @param outputFormat param to check
-     * @param since        param to check
      */
-    private static void checkExportRequest(String outputFormat, String since) {
-        // _since is unsupported
-        if (StringUtils.isNotEmpty(since)) {
-            throw new BadRequestException("'_since' is not supported");
-        }
-
+    private static void checkExportRequest(String outputFormat) {
         // _outputFormat only supports FHIR_NDJSON
         if (StringUtils.isNotEmpty(outputFormat) && !FHIR_NDJSON.equals(outputFormat)) {
             throw new BadRequestException("'_outputFormat' query parameter must be 'application/fhir+ndjson'");
         }
     }
 
+    /**
+     * Parse the _since query param. Only the resources updated since this time are exported.
+     *
+     * @param since - the text from the query param
+     * @return the time to export the updates since, or null to export all the resources
+     */
+    private static OffsetDateTime handleSinceQueryParam(String since) {
+        if (StringUtils.isEmpty(since)) {
+            return null;
+        }
+        final OffsetDateTime sinceTime;
+        try {
+            // A positive offset which was not URL encoded has its '+' decoded into a space
+            sinceTime = OffsetDateTime.parse(since.replace(' ', '+'));
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("'_since' query parameter must be a valid date time with an offset, with any '+' URL encoded as '%2B'");
+        }
+        if (sinceTime.isAfter(OffsetDateTime.now(ZoneOffset.UTC))) {
+            throw new BadRequestException("'_since' query parameter cannot be in the future");
+        }
+        return sinceTime.withOffsetSameInstant(ZoneOffset.UTC);
+    }
+
     /**
      * Convert a single resource type in a query param into a {@link ResourceType}.
      *
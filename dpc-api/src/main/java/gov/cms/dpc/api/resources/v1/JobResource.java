@@ -9,9 +9,8 @@ import gov.cms.dpc.common.models.JobCompletionModel;
 import gov.cms.dpc.fhir.FHIRExtractors;
 import gov.cms.dpc.queue.IJobQueue;
 import gov.cms.dpc.queue.JobStatus;
-import gov.cms.dpc.queue.exceptions.JobQueueFailure;
-import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import gov.cms.dpc.queue.models.JobStatusSummary;
 import io.dropwizard.auth.Auth;
 import io.swagger.annotations.*;
 import org.bouncycastle.util.encoders.Hex;
@@ -25,12 +24,9 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Response;
-import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -69,37 +65,36 @@ public class JobResource extends AbstractJobResource {
     public Response checkJobStatus(@Auth OrganizationPrincipal organizationPrincipal, @PathParam("jobID") String jobID) {
         final UUID jobUUID = UUID.fromString(jobID);
         final UUID orgUUID = FHIRExtractors.getEntityUUID(organizationPrincipal.getOrganization().getId());
-        final List<JobQueueBatch> batches = this.queue.getJobBatches(jobUUID);
+        final Optional<JobStatusSummary> optionalSummary = this.queue.getJobSummary(jobUUID);
 
-        if (batches.isEmpty()) {
+        if (optionalSummary.isEmpty()) {
             return Response.status(HttpStatus.NOT_FOUND_404).entity("Could not find job").build();
         }
 
-        // Validate the batches
-        for (JobQueueBatch batch : batches) {
-            logger.debug("Fetched Batch: {}", batch);
-            if (!batch.getOrgID().equals(orgUUID)) {
-                return Response.status(HttpStatus.UNAUTHORIZED_401).entity("Invalid organization for job").build();
-            }
-            if (!batch.isValid()) {
-                throw new JobQueueFailure(jobUUID, batch.getBatchID(), "Fetched an invalid job model");
-            }
+        // Validate the job
+        final JobStatusSummary summary = optionalSummary.get();
+        logger.debug("Fetched job summary: {}", summary);
+        if (!summary.getOrgID().equals(orgUUID)) {
+            return Response.status(HttpStatus.UNAUTHORIZED_401).entity("Invalid organization for job").build();
         }
 
         Response.ResponseBuilder builder = Response.noContent();
-        Set<JobStatus> jobStatusSet = batches.stream().map(JobQueueBatch::getStatus).collect(Collectors.toSet());
-
-        if (jobStatusSet.contains(JobStatus.FAILED)) {
-            // If any part of the job has failed, report a failed status
-            builder = builder.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
-        } else if (jobStatusSet.contains(JobStatus.RUNNING) || jobStatusSet.contains(JobStatus.QUEUED)) {
-            // The job is still being processed
-            builder = buildJobStatusInProgress(builder, batches, jobStatusSet);
-        } else if (jobStatusSet.size() == 1 && jobStatusSet.contains(JobStatus.COMPLETED)) {
-            // All batches in the job have finished
-            builder = buildJobStatusCompleted(builder, batches);
-        } else {
-            builder = builder.status(HttpStatus.ACCEPTED_202);
+        switch (summary.getStatus()) {
+            case FAILED:
+                // If any part of the job has failed, report a failed status
+                builder = builder.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+                break;
+            case RUNNING:
+            case QUEUED:
+                // The job is still being processed
+                builder = buildJobStatusInProgress(builder, summary);
+                break;
+            case COMPLETED:
+                // All batches in the job have finished
+                builder = buildJobStatusCompleted(builder, summary);
+                break;
+            default:
+                builder = builder.status(HttpStatus.ACCEPTED_202);
         }
 
         return builder.build();
@@ -108,22 +103,16 @@ public class JobResource extends AbstractJobResource {
     /**
      * Builds a job status response for an in progress job. Includes the current progress in the X-Progress header.
      *
-     * @param builder      - The current response builder
-     * @param batches      - The list of batches made up in a job
-     * @param jobStatusSet - The list of all possible statuses in the job
+     * @param builder - The current response builder
+     * @param summary - The {@link JobStatusSummary} of the job
      * @return the response builder
      */
-    private Response.ResponseBuilder buildJobStatusInProgress(Response.ResponseBuilder builder, List<JobQueueBatch> batches, Set<JobStatus> jobStatusSet) {
+    private Response.ResponseBuilder buildJobStatusInProgress(Response.ResponseBuilder builder, JobStatusSummary summary) {
         String progress = "QUEUED: 0.00%";
 
-        if (jobStatusSet.contains(JobStatus.RUNNING)) {
-            AtomicInteger done = new AtomicInteger();
-            AtomicInteger total = new AtomicInteger();
-            batches.forEach(batch -> {
-                batch.getPatientIndex().ifPresent(value -> done.addAndGet(value + 1));
-                total.addAndGet(batch.getPatients().size());
-            });
-            progress = String.format("RUNNING: %.2f%%", total.get() > 0 ? (done.get() * 100.0f) / total.get() : 0f);
+        if (summary.getStatus() == JobStatus.RUNNING) {
+            final int total = summary.getPatientCount();
+            progress = String.format("RUNNING: %.2f%%", total > 0 ? (summary.getPatientsProcessed() * 100.0f) / total : 0f);
         }
 
         return builder.header("X-Progress", progress)
@@ -134,21 +123,19 @@ public class JobResource extends AbstractJobResource {
      * Builds a job status response for a completed job. Includes the list of files created from the job.
      *
      * @param builder - The current response builder
-     * @param batches - The list of batches made up in a job
+     * @param summary - The {@link JobStatusSummary} of the job
      * @return the response builder
      */
-    private Response.ResponseBuilder buildJobStatusCompleted(Response.ResponseBuilder builder, List<JobQueueBatch> batches) {
-        JobQueueBatch firstBatch = batches.get(0);
-
-        final String resourceQueryParam = firstBatch.getResourceTypes().stream()
+    private Response.ResponseBuilder buildJobStatusCompleted(Response.ResponseBuilder builder, JobStatusSummary summary) {
+        final String resourceQueryParam = summary.getResourceTypes().stream()
                 .map(ResourceType::toString)
                 .collect(Collectors.joining(GroupResource.LIST_DELIMITER));
 
         final JobCompletionModel completionModel = new JobCompletionModel(
-                batches.stream().map(JobQueueBatch::getStartTime).map(Optional::get).min(OffsetDateTime::compareTo).orElseThrow(),
-                String.format("%s/Group/%s/$export?_type=%s", baseURL, firstBatch.getProviderID(), resourceQueryParam),
-                formOutputList(batches, false),
-                formOutputList(batches, true));
+                summary.getStartTime().orElseThrow(),
+                String.format("%s/Group/%s/$export?_type=%s", baseURL, summary.getProviderID(), resourceQueryParam),
+                formOutputList(summary.getJobQueueBatchFiles(), false),
+                formOutputList(summary.getJobQueueBatchFiles(), true));
 
         return builder.status(HttpStatus.OK_200).entity(completionModel);
     }
@@ -156,17 +143,12 @@ public class JobResource extends AbstractJobResource {
     /**
      * Form a list of output entries for the output file
      *
-     * @param batchList              - The list of all batches in a job
+     * @param files                  - The list of all files of a job
      * @param forOperationalOutcomes - Only return operational outcomes if true, don't include them otherwise
      * @return the list of OutputEntry
      */
-    private List<JobCompletionModel.OutputEntry> formOutputList(List<JobQueueBatch> batchList, boolean forOperationalOutcomes) {
-        // Assert batches are from the same job
-        assert (batchList.stream().map(JobQueueBatch::getJobID).collect(Collectors.toSet()).size() == 1);
-
-        return batchList.stream()
-                .map(JobQueueBatch::getJobQueueBatchFiles)
-                .flatMap(List::stream)
+    private List<JobCompletionModel.OutputEntry> formOutputList(List<JobQueueBatchFile> files, boolean forOperationalOutcomes) {
+        return files.stream()
                 .map(result -> new JobCompletionModel.OutputEntry(
                         result.getResourceType(),
                         String.format("%s/Data/%s.ndjson", this.baseURL, JobQueueBatchFile.formOutputFileName(result.getBatchID(), result.getResourceType(), result.getSequence())),
@@ -185,7 +167,8 @@ public class JobResource extends AbstractJobResource {
             stringChecksum = Hex.toHexString(byteChecksum);
         }
         String formattedChecksum = String.format("%s:%s", "sha256", stringChecksum);
-        long fileLength = batchFile.getFileLength();
+        // The checksum is of the NDJSON content, so report the length of the content as well
+        long fileLength = batchFile.isCompressed() ? batchFile.getUncompressedLength() : batchFile.getFileLength();
         return List.of(new JobCompletionModel.OutputEntryExtension(JobCompletionModel.CHECKSUM_URL, formattedChecksum),
                 new JobCompletionModel.OutputEntryExtension(JobCompletionModel.FILE_LENGTH_URL, fileLength));
     }
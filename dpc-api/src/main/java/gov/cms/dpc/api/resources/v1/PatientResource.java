@@ -10,6 +10,7 @@ import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Timed;
 import gov.cms.dpc.api.APIHelpers;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.api.auth.annotations.PathAuthorizer;
 import gov.cms.dpc.api.resources.AbstractPatientResource;
 import gov.cms.dpc.fhir.DPCIdentifierSystem;
@@ -44,11 +45,13 @@ public class PatientResource extends AbstractPatientResource {
 
     private final IGenericClient client;
     private final FhirValidator validator;
+    private final ResourceOwnershipCache ownershipCache;
 
     @Inject
-    PatientResource(IGenericClient client, FhirValidator validator) {
+    PatientResource(IGenericClient client, FhirValidator validator, ResourceOwnershipCache ownershipCache) {
         this.client = client;
         this.validator = validator;
+        this.ownershipCache = ownershipCache;
     }
 
     @GET
@@ -106,6 +109,7 @@ public class PatientResource extends AbstractPatientResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.recordOwner(ResourceType.Patient, outcome.getId(), organization.getID());
         return handleMethodOutcome(outcome);
     }
 
@@ -122,7 +126,9 @@ public class PatientResource extends AbstractPatientResource {
         final Bundle patientBundle = (Bundle) params.getParameterFirstRep().getResource();
         final Consumer<Patient> entryHandler = (patient) -> validateAndAddOrg(patient, organization.getOrganization().getId(), validator, PatientProfile.PROFILE_URI);
 
-        return bulkResourceClient(Patient.class, client, entryHandler, patientBundle);
+        final Bundle submitted = bulkResourceClient(Patient.class, client, entryHandler, patientBundle);
+        this.ownershipCache.recordOwners(submitted, organization.getID());
+        return submitted;
     }
 
 
@@ -160,6 +166,8 @@ public class PatientResource extends AbstractPatientResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.invalidate(ResourceType.Patient, patientID.toString());
+
         return Response.ok().build();
     }
 
@@ -1,5 +1,6 @@
 package gov.cms.dpc.api.resources.v1;
 
+import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.ValidationOptions;
@@ -8,6 +9,7 @@ import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Timed;
 import gov.cms.dpc.api.APIHelpers;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.api.auth.annotations.PathAuthorizer;
 import gov.cms.dpc.api.resources.AbstractPractitionerResource;
 import gov.cms.dpc.fhir.annotations.FHIR;
@@ -40,11 +42,13 @@ public class PractitionerResource extends AbstractPractitionerResource {
     private static final Logger logger = LoggerFactory.getLogger(PractitionerResource.class);
     private final IGenericClient client;
     private final FhirValidator validator;
+    private final ResourceOwnershipCache ownershipCache;
 
     @Inject
-    PractitionerResource(IGenericClient client, FhirValidator validator) {
+    PractitionerResource(IGenericClient client, FhirValidator validator, ResourceOwnershipCache ownershipCache) {
         this.client = client;
         this.validator = validator;
+        this.ownershipCache = ownershipCache;
     }
 
     @GET
@@ -122,7 +126,9 @@ public class PractitionerResource extends AbstractPractitionerResource {
                 .resource(provider)
                 .encodedJson();
 
-        return handleMethodOutcome(providerCreate.execute());
+        final MethodOutcome outcome = providerCreate.execute();
+        this.ownershipCache.recordOwner(ResourceType.Practitioner, outcome.getId(), organization.getID());
+        return handleMethodOutcome(outcome);
     }
 
     @POST
@@ -141,7 +147,9 @@ public class PractitionerResource extends AbstractPractitionerResource {
                 validator,
                 PRACTITIONER_PROFILE);
 
-        return bulkResourceClient(Practitioner.class, client, entryHandler, providerBundle);
+        final Bundle submitted = bulkResourceClient(Practitioner.class, client, entryHandler, providerBundle);
+        this.ownershipCache.recordOwners(submitted, organization.getID());
+        return submitted;
     }
 
     @DELETE
@@ -162,6 +170,8 @@ public class PractitionerResource extends AbstractPractitionerResource {
                 .encodedJson()
                 .execute();
 
+        this.ownershipCache.invalidate(ResourceType.Practitioner, providerID.toString());
+
         return Response.ok().build();
     }
 
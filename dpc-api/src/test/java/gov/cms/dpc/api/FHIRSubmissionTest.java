@@ -4,6 +4,7 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.*;
 import gov.cms.dpc.api.auth.DPCAuthCredentials;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.api.auth.staticauth.StaticAuthFilter;
 import gov.cms.dpc.api.auth.staticauth.StaticAuthenticator;
 import gov.cms.dpc.api.resources.v1.GroupResource;
@@ -31,6 +32,8 @@ import org.mockito.Mockito;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.UUID;
 
@@ -63,7 +66,7 @@ class FHIRSubmissionTest {
     private static List<String> testBeneficiaries = List.of("1", "2", "3", "4");
 
     private ResourceExtension groupResource = ResourceExtension.builder()
-            .addResource(new GroupResource(queue, client, TEST_BASE_URL))
+            .addResource(new GroupResource(queue, client, TEST_BASE_URL, mock(ResourceOwnershipCache.class)))
             .addResource(new JobResource(queue, TEST_BASE_URL))
             .setTestContainerFactory(testContainer)
             .addProvider(staticFilter)
@@ -212,6 +215,62 @@ class FHIRSubmissionTest {
         assertAll(() -> assertEquals(resources.size(), JobQueueBatch.validResourceTypes.size()));
     }
 
+    /**
+     * Test with a '_since' query parameter
+     */
+    @Test
+    void testSinceSubmission() {
+        final OffsetDateTime since = OffsetDateTime.parse("2019-04-01T00:00:00-04:00");
+        final WebTarget target = groupResource
+                .target("/v1/Group/1/$export")
+                .queryParam("_since", since.toString());
+        final Response response = target.request()
+                .accept(FHIR_JSON).header(PREFER_HEADER, PREFER_RESPOND_ASYNC)
+                .get();
+        assertEquals(HttpStatus.ACCEPTED_202, response.getStatus(), "Should have 202 status");
+
+        // Should yield a job fetching the updates since the same instant
+        final var job = queue.claimBatch(AGGREGATOR_ID);
+        assertTrue(job.isPresent());
+        assertTrue(job.get().getSince().map(since::isEqual).orElse(false), "Should have the since time");
+    }
+
+    /**
+     * Test with a '_since' query parameter with a positive offset which was not URL encoded, so its '+' is decoded into a space
+     */
+    @Test
+    void testUnencodedSinceSubmission() {
+        final WebTarget target = groupResource
+                .target("/v1/Group/1/$export")
+                .queryParam("_since", "2019-04-01T00:00:00 04:00");
+        final Response response = target.request()
+                .accept(FHIR_JSON).header(PREFER_HEADER, PREFER_RESPOND_ASYNC)
+                .get();
+        assertEquals(HttpStatus.ACCEPTED_202, response.getStatus(), "Should have 202 status");
+
+        final var job = queue.claimBatch(AGGREGATOR_ID);
+        assertTrue(job.isPresent());
+        final OffsetDateTime since = OffsetDateTime.parse("2019-04-01T00:00:00+04:00");
+        assertTrue(job.get().getSince().map(since::isEqual).orElse(false), "Should have the since time, with a positive offset");
+    }
+
+    /**
+     * Negative test with bad '_since' query parameters
+     */
+    @Test
+    void testBadSinceSubmission() {
+        for (final String since : List.of("yesterday", "2019-04-01", OffsetDateTime.now(ZoneOffset.UTC).plusDays(1).toString())) {
+            final WebTarget target = groupResource
+                    .target("/v1/Group/1/$export")
+                    .queryParam("_since", since);
+            final Response response = target.request().get();
+            assertEquals(HttpStatus.BAD_REQUEST_400, response.getStatus(), "Should have 400 status");
+        }
+
+        // Should yield a queue should have no entries
+        assertEquals(0, queue.queueSize());
+    }
+
 
     @SuppressWarnings("unchecked")
     private static void mockClient() {
@@ -4,6 +4,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.IUntypedQuery;
+import com.codahale.metrics.MetricRegistry;
 import gov.cms.dpc.api.APITestHelpers;
 import gov.cms.dpc.api.auth.macaroonauth.MacaroonsAuthenticator;
 import gov.cms.dpc.api.core.Capabilities;
@@ -91,7 +92,7 @@ class AuthHandlerTest {
         Mockito.when(sessionFactory.fetchTokens(Mockito.any())).thenAnswer(answer -> "46ac7ad6-7487-4dd0-baa0-6e2c8cae76a0");
 
 
-        final DPCAuthFactory factory = new DPCAuthFactory(bakery, new MacaroonsAuthenticator(client), sessionFactory);
+        final DPCAuthFactory factory = new DPCAuthFactory(bakery, new MacaroonsAuthenticator(client, new ResourceOwnershipCache(new AuthCacheConfiguration().getResourceOwners(), new MetricRegistry())), sessionFactory, new VerifiedMacaroonCache(new AuthCacheConfiguration().getVerifiedMacaroons(), new MetricRegistry()));
         final DPCAuthDynamicFeature dynamicFeature = new DPCAuthDynamicFeature(factory);
 
         final FhirContext ctx = FhirContext.forDstu3();
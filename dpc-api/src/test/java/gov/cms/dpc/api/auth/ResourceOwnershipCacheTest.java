@@ -0,0 +1,116 @@
+package gov.cms.dpc.api.auth;
+
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.CacheTestFixture;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class ResourceOwnershipCacheTest {
+
+    private static final String RESOURCE_ID = UUID.randomUUID().toString();
+    private static final UUID ORGANIZATION_ID = UUID.randomUUID();
+
+    private final CacheTestFixture<AuthCacheConfiguration.CacheConfiguration> fixture = new CacheTestFixture<>(
+            () -> new AuthCacheConfiguration().getResourceOwners(), AuthCacheConfiguration.CacheConfiguration::setEnabled);
+    private final AtomicInteger searches = new AtomicInteger();
+    private final BooleanSupplier found = () -> {
+        searches.incrementAndGet();
+        return true;
+    };
+    private final BooleanSupplier notFound = () -> {
+        searches.incrementAndGet();
+        return false;
+    };
+
+    @Test
+    void testHitsAndMisses() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        assertTrue(cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found));
+        assertTrue(cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found));
+        assertEquals(1, searches.get(), "Should only search for the owner once");
+
+        assertEquals(1, fixture.getHits(ResourceOwnershipCache.class));
+        assertEquals(1, fixture.getMisses(ResourceOwnershipCache.class));
+    }
+
+    @Test
+    void testOtherOrganization() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found);
+        assertFalse(cache.isOwner(ResourceType.Group, RESOURCE_ID, UUID.randomUUID(), notFound), "Should not authorize another organization");
+        assertFalse(cache.isOwner(ResourceType.Patient, RESOURCE_ID, ORGANIZATION_ID, notFound), "Should not authorize another resource type");
+        assertEquals(3, searches.get(), "Should search for the owner of the other entries");
+    }
+
+    @Test
+    void testNotFoundNotCached() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        assertFalse(cache.isOwner(ResourceType.Patient, RESOURCE_ID, ORGANIZATION_ID, notFound));
+        assertTrue(cache.isOwner(ResourceType.Patient, RESOURCE_ID, ORGANIZATION_ID, found), "Should search again for a resource which was not found");
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void testRecordOwner() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        cache.recordOwner(ResourceType.Practitioner, new IdType("Practitioner", RESOURCE_ID, "1"), ORGANIZATION_ID);
+        cache.recordOwner(ResourceType.Practitioner, null, ORGANIZATION_ID);
+        assertTrue(cache.isOwner(ResourceType.Practitioner, RESOURCE_ID, ORGANIZATION_ID, notFound));
+
+        final Bundle submitted = new Bundle();
+        final String patientID = UUID.randomUUID().toString();
+        submitted.addEntry().setResource(new Patient().setIdElement(new IdType("Patient", patientID)));
+        cache.recordOwners(submitted, ORGANIZATION_ID);
+        assertTrue(cache.isOwner(ResourceType.Patient, patientID, ORGANIZATION_ID, notFound));
+
+        assertEquals(0, searches.get(), "Should not search for the owner of created resources");
+    }
+
+    @Test
+    void testExpiry() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found);
+        fixture.advance(Duration.ofSeconds(61));
+        assertFalse(cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, notFound), "Should search for the owner again once expired");
+    }
+
+    @Test
+    void testInvalidate() {
+        final ResourceOwnershipCache cache = buildCache(true);
+
+        cache.recordOwner(ResourceType.Endpoint, new IdType("Endpoint", RESOURCE_ID), ORGANIZATION_ID);
+        cache.invalidate(ResourceType.Endpoint, RESOURCE_ID);
+        assertFalse(cache.isOwner(ResourceType.Endpoint, RESOURCE_ID, ORGANIZATION_ID, notFound), "Should not authorize a deleted resource");
+    }
+
+    @Test
+    void testDisabled() {
+        final ResourceOwnershipCache cache = buildCache(false);
+
+        cache.recordOwner(ResourceType.Group, new IdType("Group", RESOURCE_ID), ORGANIZATION_ID);
+        cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found);
+        cache.isOwner(ResourceType.Group, RESOURCE_ID, ORGANIZATION_ID, found);
+        assertEquals(2, searches.get(), "Should search for the owner every time");
+    }
+
+    private ResourceOwnershipCache buildCache(boolean enabled) {
+        return new ResourceOwnershipCache(fixture.cacheConfig(enabled), fixture.getRegistry(), fixture.getTicker());
+    }
+}
@@ -0,0 +1,78 @@
+package gov.cms.dpc.api.auth;
+
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.CacheTestFixture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.persistence.NoResultException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class TokenOrganizationCacheTest {
+
+    private static final UUID TOKEN_ID = UUID.randomUUID();
+    private static final UUID ORGANIZATION_ID = UUID.randomUUID();
+
+    private final CacheTestFixture<AuthCacheConfiguration.CacheConfiguration> fixture = new CacheTestFixture<>(
+            () -> new AuthCacheConfiguration().getTokenOrganizations(), AuthCacheConfiguration.CacheConfiguration::setEnabled);
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final Function<UUID, UUID> lookup = tokenID -> {
+        lookups.incrementAndGet();
+        return ORGANIZATION_ID;
+    };
+
+    @Test
+    void testHitsAndMisses() {
+        final TokenOrganizationCache cache = buildCache(true);
+
+        assertEquals(ORGANIZATION_ID, cache.get(TOKEN_ID, lookup));
+        assertEquals(ORGANIZATION_ID, cache.get(TOKEN_ID, lookup));
+        assertEquals(1, lookups.get(), "Should only look up the token once");
+
+        assertEquals(1, fixture.getHits(TokenOrganizationCache.class));
+        assertEquals(1, fixture.getMisses(TokenOrganizationCache.class));
+    }
+
+    @Test
+    void testExpiry() {
+        final TokenOrganizationCache cache = buildCache(true);
+
+        cache.get(TOKEN_ID, lookup);
+        fixture.advance(Duration.ofSeconds(61));
+        cache.get(TOKEN_ID, lookup);
+        assertEquals(2, lookups.get(), "Should look up the token again once expired");
+    }
+
+    @Test
+    void testInvalidate() {
+        final TokenOrganizationCache cache = buildCache(true);
+
+        cache.get(TOKEN_ID, lookup);
+        cache.invalidate(TOKEN_ID);
+        assertThrows(NoResultException.class, () -> cache.get(TOKEN_ID, tokenID -> {
+            throw new NoResultException();
+        }), "Should look up a deleted token again");
+
+        cache.get(TOKEN_ID, lookup);
+        assertEquals(2, lookups.get(), "Should not cache a token which is not found");
+    }
+
+    @Test
+    void testDisabled() {
+        final TokenOrganizationCache cache = buildCache(false);
+
+        cache.get(TOKEN_ID, lookup);
+        cache.get(TOKEN_ID, lookup);
+        assertEquals(2, lookups.get(), "Should look up the token every time");
+    }
+
+    private TokenOrganizationCache buildCache(boolean enabled) {
+        return new TokenOrganizationCache(fixture.cacheConfig(enabled), fixture.getRegistry(), fixture.getTicker());
+    }
+}
@@ -0,0 +1,164 @@
+package gov.cms.dpc.api.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.CacheTestFixture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.WebApplicationException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class VerifiedMacaroonCacheTest {
+
+    private static final String MACAROON = "serialized-macaroon";
+    private static final UUID TOKEN_ID = UUID.randomUUID();
+    private static final UUID ORGANIZATION_ID = UUID.randomUUID();
+
+    private final CacheTestFixture<AuthCacheConfiguration.CacheConfiguration> fixture = new CacheTestFixture<>(
+            () -> new AuthCacheConfiguration().getVerifiedMacaroons(), AuthCacheConfiguration.CacheConfiguration::setEnabled);
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    @Test
+    void testHitsAndMisses() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        assertEquals(ORGANIZATION_ID, cache.get(MACAROON, verifier, verified -> true).getOrganizationID());
+        assertEquals(ORGANIZATION_ID, cache.get(MACAROON, verifier, verified -> true).getOrganizationID());
+        assertEquals(1, verifications.get(), "Should only verify the Macaroon once");
+
+        assertEquals(1, fixture.getHits(VerifiedMacaroonCache.class));
+        assertEquals(1, fixture.getMisses(VerifiedMacaroonCache.class));
+        assertEquals(1, fixture.getRegistry().timer(MetricRegistry.name(VerifiedMacaroonCache.class, "verificationTimer")).getCount());
+    }
+
+    @Test
+    void testExpiry() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        cache.get(MACAROON, verifier, verified -> true);
+        fixture.advance(Duration.ofSeconds(61));
+        cache.get(MACAROON, verifier, verified -> true);
+        assertEquals(2, verifications.get(), "Should verify the Macaroon again once expired");
+    }
+
+    @Test
+    void testTokenExpiry() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+
+        cache.get(MACAROON, verifier, verified -> true);
+        fixture.advance(Duration.ofSeconds(11));
+        cache.get(MACAROON, verifier, verified -> true);
+        assertEquals(2, verifications.get(), "Should not keep the Macaroon past the expiration of its token");
+    }
+
+    @Test
+    void testNotCacheable() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> golden = verifier(null, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+        cache.get(MACAROON, golden, verified -> true);
+        cache.get(MACAROON, golden, verified -> true);
+        assertEquals(2, verifications.get(), "Should not cache a Macaroon which was not issued as a token");
+
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> notExpiring = verifier(TOKEN_ID, null);
+        cache.get(MACAROON, notExpiring, verified -> true);
+        cache.get(MACAROON, notExpiring, verified -> true);
+        assertEquals(4, verifications.get(), "Should not cache a Macaroon which does not expire");
+    }
+
+    @Test
+    void testFailureNotCached() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+
+        assertThrows(WebApplicationException.class, () -> cache.get(MACAROON, () -> {
+            throw new WebApplicationException(401);
+        }, verified -> true));
+
+        cache.get(MACAROON, verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1)), verified -> true);
+        assertEquals(1, verifications.get(), "Should verify the Macaroon again after a failure");
+    }
+
+    @Test
+    void testNoLongerIssued() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        cache.get(MACAROON, verifier, verified -> true);
+        assertThrows(WebApplicationException.class, () -> cache.get(MACAROON, () -> {
+            throw new WebApplicationException(401);
+        }, verified -> false), "Should verify a deleted token again");
+    }
+
+    @Test
+    void testInvalidate() {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        cache.get(MACAROON, verifier, verified -> true);
+        cache.invalidate(MACAROON);
+        cache.get(MACAROON, verifier, verified -> true);
+        assertEquals(2, verifications.get(), "Should verify the Macaroon again once invalidated");
+    }
+
+    @Test
+    void testDisabled() {
+        final VerifiedMacaroonCache cache = buildCache(false);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        cache.get(MACAROON, verifier, verified -> true);
+        cache.get(MACAROON, verifier, verified -> true);
+        assertEquals(2, verifications.get(), "Should verify the Macaroon every time");
+    }
+
+    @Test
+    void testConcurrentRequests() throws Exception {
+        final VerifiedMacaroonCache cache = buildCache(true);
+        final Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier = verifier(TOKEN_ID, OffsetDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+        final int requests = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            cache.get(MACAROON, verifier, verified -> true);
+            final List<Future<UUID>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> cache.get(MACAROON, verifier, verified -> true).getOrganizationID()));
+            }
+            for (final Future<UUID> future : futures) {
+                assertEquals(ORGANIZATION_ID, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, verifications.get(), "Should only verify the Macaroon once");
+        assertEquals(requests, fixture.getHits(VerifiedMacaroonCache.class));
+    }
+
+    private Supplier<VerifiedMacaroonCache.VerifiedMacaroon> verifier(UUID tokenID, OffsetDateTime expires) {
+        return () -> {
+            verifications.incrementAndGet();
+            return new VerifiedMacaroonCache.VerifiedMacaroon(tokenID, ORGANIZATION_ID, expires);
+        };
+    }
+
+    private VerifiedMacaroonCache buildCache(boolean enabled) {
+        return new VerifiedMacaroonCache(fixture.cacheConfig(enabled), fixture.getRegistry(), fixture.getTicker());
+    }
+}
@@ -0,0 +1,91 @@
+package gov.cms.dpc.api.auth.jwt;
+
+import com.codahale.metrics.MetricRegistry;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import gov.cms.dpc.api.AbstractApplicationTest;
+import gov.cms.dpc.api.auth.AuthCacheConfiguration;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link DatabaseJTICache} against the migrated auth database, with each cache standing in for a separate API instance.
+ */
+class DatabaseJTICacheIntegrationTest extends AbstractApplicationTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private SessionFactory sessionFactory;
+
+    private DatabaseJTICacheIntegrationTest() {
+        // Not used
+    }
+
+    @BeforeEach
+    void buildSessionFactory() {
+        final Config authDB = ConfigFactory.load("ci.application.conf").getConfig("dpc.api.authdb");
+        sessionFactory = new Configuration()
+                .setProperty("hibernate.connection.driver_class", authDB.getString("driverClass"))
+                .setProperty("hibernate.connection.url", authDB.getString("url"))
+                .setProperty("hibernate.connection.username", authDB.getString("user"))
+                .setProperty("hibernate.connection.password", authDB.getString("password"))
+                .buildSessionFactory();
+    }
+
+    @AfterEach
+    void closeSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void testReplayWithinWindow() {
+        final DatabaseJTICache first = buildCache();
+        final DatabaseJTICache second = buildCache();
+        final String jti = UUID.randomUUID().toString();
+
+        assertTrue(first.isJTIOk(jti, true), "Should accept a new JTI");
+        assertFalse(second.isJTIOk(jti, true), "Should reject a JTI replayed against another instance");
+        assertFalse(buildCache().isJTIOk(jti, true), "Should keep rejecting the JTI within the replay window");
+    }
+
+    @Test
+    void testReuseAfterExpiry() {
+        final DatabaseJTICache first = buildCache();
+        final String jti = UUID.randomUUID().toString();
+
+        assertTrue(first.isJTIOk(jti, true), "Should accept a new JTI");
+        expire(jti);
+
+        assertTrue(buildCache().isJTIOk(jti, true), "Should accept the JTI once it has expired, even before it is cleaned up");
+        assertFalse(buildCache().isJTIOk(jti, true), "Should reject the JTI again within its new replay window");
+
+        now.addAndGet(DatabaseJTICache.REPLAY_WINDOW.toNanos() + 1);
+        expire(jti);
+        assertTrue(first.isJTIOk(jti, true), "Should accept the JTI on the instance which first saw it, once expired");
+    }
+
+    private DatabaseJTICache buildCache() {
+        return new DatabaseJTICache(sessionFactory, new AuthCacheConfiguration().getJwtIDs(), new MetricRegistry(), now::get);
+    }
+
+    private void expire(String jti) {
+        // Move the expiration into the past, rather than waiting out the replay window
+        try (Session session = sessionFactory.openSession()) {
+            final Transaction tx = session.beginTransaction();
+            final int updated = session.createNativeQuery("UPDATE jwt_ids SET expires = NOW() - INTERVAL '1 second' WHERE jti = :jti")
+                    .setParameter("jti", jti)
+                    .executeUpdate();
+            tx.commit();
+            assertEquals(1, updated, "Should have recorded the JTI");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gov.cms.dpc.api.auth.jwt;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.dpc.api.auth.AuthCacheConfiguration;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+@SuppressWarnings("rawtypes")
+class DatabaseJTICacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final MetricRegistry registry = new MetricRegistry();
+    private final SessionFactory factory = mock(SessionFactory.class);
+    private final Session session = mock(Session.class);
+    private final NativeQuery recordQuery = mock(NativeQuery.class, RETURNS_SELF);
+    private final NativeQuery cleanupQuery = mock(NativeQuery.class, RETURNS_SELF);
+    private DatabaseJTICache cache;
+
+    @BeforeEach
+    void setup() {
+        when(factory.openSession()).thenReturn(session);
+        when(session.beginTransaction()).thenReturn(mock(Transaction.class));
+        doReturn(recordQuery).when(session).createNativeQuery(startsWith("INSERT"));
+        doReturn(cleanupQuery).when(session).createNativeQuery(startsWith("DELETE"));
+        when(recordQuery.executeUpdate()).thenReturn(1);
+
+        cache = new DatabaseJTICache(factory, new AuthCacheConfiguration().getJwtIDs(), registry, now::get);
+    }
+
+    @Test
+    void testLocalReplay() {
+        final String jti = UUID.randomUUID().toString();
+
+        assertTrue(cache.isJTIOk(jti, true), "Should accept a new JTI");
+        assertFalse(cache.isJTIOk(jti, true), "Should reject a replayed JTI");
+        verify(recordQuery, times(1)).executeUpdate();
+        verify(factory, times(1)).openSession();
+        assertEquals(1, registry.meter(MetricRegistry.name(DatabaseJTICache.class, "hitsMeter")).getCount(), "Should count the local replay as a hit");
+    }
+
+    @Test
+    void testSharedReplay() {
+        final String jti = UUID.randomUUID().toString();
+        when(recordQuery.executeUpdate()).thenReturn(0);
+
+        assertFalse(cache.isJTIOk(jti, true), "Should reject a JTI recorded by another instance");
+        assertFalse(cache.isJTIOk(jti, true), "Should keep rejecting the JTI");
+        verify(recordQuery, times(1)).executeUpdate();
+    }
+
+    @Test
+    void testNotPersisted() {
+        final String jti = UUID.randomUUID().toString();
+
+        assertTrue(cache.isJTIOk(jti, false));
+        assertTrue(cache.isJTIOk(jti, false), "Should not remember a JTI which is not persisted");
+        verify(factory, never()).openSession();
+
+        cache.isJTIOk(jti, true);
+        assertFalse(cache.isJTIOk(jti, false), "Should reject a JTI which was persisted");
+        verify(recordQuery, times(1)).executeUpdate();
+    }
+
+    @Test
+    void testLocalExpiry() {
+        final String jti = UUID.randomUUID().toString();
+
+        cache.isJTIOk(jti, true);
+        now.addAndGet(DatabaseJTICache.REPLAY_WINDOW.toNanos() + 1);
+        assertTrue(cache.isJTIOk(jti, true), "Should accept the JTI once the replay window is over");
+        verify(recordQuery, times(2)).executeUpdate();
+    }
+
+    @Test
+    void testCleanupInterval() {
+        cache.isJTIOk(UUID.randomUUID().toString(), true);
+        cache.isJTIOk(UUID.randomUUID().toString(), true);
+        verify(cleanupQuery, times(1)).executeUpdate();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.isJTIOk(UUID.randomUUID().toString(), true);
+        verify(cleanupQuery, times(2)).executeUpdate();
+    }
+
+    @Test
+    void testFailure() {
+        final String jti = UUID.randomUUID().toString();
+        when(recordQuery.executeUpdate()).thenThrow(new IllegalStateException("Database is down"));
+
+        assertThrows(IllegalStateException.class, () -> cache.isJTIOk(jti, true), "Should not accept a JTI which cannot be recorded");
+        verify(session, times(1)).close();
+    }
+}
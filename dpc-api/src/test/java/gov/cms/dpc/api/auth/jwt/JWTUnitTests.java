@@ -2,11 +2,15 @@ package gov.cms.dpc.api.auth.jwt;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.codahale.metrics.MetricRegistry;
 import com.github.nitram509.jmacaroons.MacaroonVersion;
 import com.github.nitram509.jmacaroons.MacaroonsBuilder;
 import gov.cms.dpc.api.APITestHelpers;
+import gov.cms.dpc.api.auth.AuthCacheConfiguration;
 import gov.cms.dpc.api.auth.DPCAuthDynamicFeature;
 import gov.cms.dpc.api.auth.DPCAuthFactory;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
+import gov.cms.dpc.api.auth.VerifiedMacaroonCache;
 import gov.cms.dpc.api.auth.macaroonauth.MacaroonsAuthenticator;
 import gov.cms.dpc.api.entities.PublicKeyEntity;
 import gov.cms.dpc.api.jdbi.PublicKeyDAO;
@@ -734,7 +738,7 @@ class JWTUnitTests {
 
         final TokenPolicy tokenPolicy = new TokenPolicy();
 
-        final DPCAuthFactory factory = new DPCAuthFactory(bakery, new MacaroonsAuthenticator(client), tokenDAO);
+        final DPCAuthFactory factory = new DPCAuthFactory(bakery, new MacaroonsAuthenticator(client, new ResourceOwnershipCache(new AuthCacheConfiguration().getResourceOwners(), new MetricRegistry())), tokenDAO, new VerifiedMacaroonCache(new AuthCacheConfiguration().getVerifiedMacaroons(), new MetricRegistry()));
         final DPCAuthDynamicFeature dynamicFeature = new DPCAuthDynamicFeature(factory);
 
         final TokenResource tokenResource = new TokenResource(tokenDAO, bakery, tokenPolicy, resolver, jtiCache, "localhost:3002/v1");
@@ -6,6 +6,7 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
 import gov.cms.dpc.api.APITestHelpers;
 import gov.cms.dpc.api.auth.OrganizationPrincipal;
+import gov.cms.dpc.api.auth.ResourceOwnershipCache;
 import gov.cms.dpc.fhir.FHIRExtractors;
 import gov.cms.dpc.queue.IJobQueue;
 import gov.cms.dpc.testing.BufferedLoggerHandler;
@@ -44,7 +45,7 @@ public class AttestationUnitTests {
         // Do all the things
         final IJobQueue mockQueue = Mockito.mock(IJobQueue.class);
         final IGenericClient mockClient = Mockito.mock(IGenericClient.class);
-        groupResource = new GroupResource(mockQueue, mockClient, "http://local.test");
+        groupResource = new GroupResource(mockQueue, mockClient, "http://local.test", Mockito.mock(ResourceOwnershipCache.class));
     }
 
     @BeforeEach
@@ -41,6 +41,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -170,6 +172,79 @@ class DataResourceTest {
 
         assertEquals(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), response.getStatus());
         assertEquals("{\"code\":416,\"message\":\"Range end cannot be before begin\"}", response.readEntity(String.class), "Should have correct status code");
+
+        // Request a range which starts past the end of the file
+        response = RESOURCE.target("/v1/Data/test.ndjson")
+                .request()
+                .header(org.apache.http.HttpHeaders.RANGE, String.format("bytes=%d-", length))
+                .get();
+
+        final Response outOfBounds = response;
+        assertAll(() -> assertEquals(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), outOfBounds.getStatus(), "Should have correct status code"),
+                () -> assertEquals(String.format("bytes */%d", length), outOfBounds.getHeaderString(org.apache.http.HttpHeaders.CONTENT_RANGE), "Should have the file size"),
+                () -> assertEquals("{\"code\":416,\"message\":\"Range cannot begin past the end of the file\"}", outOfBounds.readEntity(String.class), "Should have correct error message"));
+    }
+
+    @Test
+    void testCompressedFile() throws IOException {
+        final File tempPath = FileUtils.getTempDirectory();
+        final File file = File.createTempFile("test", ".ndjson", tempPath);
+        final String content = buildRandomString(64 * 1024);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(file))) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        Mockito.when(manager.getFile(Mockito.any(), Mockito.anyString())).thenReturn(new FileManager.FilePointer("checksum", file.length(), content.length(), true, UUID.randomUUID(), OffsetDateTime.now(ZoneOffset.UTC), file));
+
+        // Return the compressed file, when gzip is accepted
+        Response response = RESOURCE.target("/v1/Data/test.ndjson")
+                .request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                .get();
+
+        final Response compressedResponse = response;
+        final String compressed = IOUtils.toString(new GZIPInputStream(response.readEntity(InputStream.class)), StandardCharsets.UTF_8);
+        assertAll(() -> assertEquals(HttpStatus.OK_200, compressedResponse.getStatus(), "Should have ok status"),
+                () -> assertEquals("gzip", compressedResponse.getHeaderString(HttpHeaders.CONTENT_ENCODING), "Should be gzip encoded"),
+                () -> assertEquals("checksum--gzip", compressedResponse.getHeaderString(HttpHeaders.ETAG), "Should have the ETag of the gzip encoding"),
+                () -> assertEquals(HttpHeaders.ACCEPT_ENCODING, compressedResponse.getHeaderString(HttpHeaders.VARY), "Should vary on the accepted encoding"),
+                () -> assertEquals(file.length(), Long.parseLong(compressedResponse.getHeaderString(HttpHeaders.CONTENT_LENGTH)), "Should have compressed length"),
+                () -> assertEquals(content, compressed, "Should decompress to the content"));
+
+        // Decompress the file, when gzip is not accepted
+        response = RESOURCE.target("/v1/Data/test.ndjson")
+                .request()
+                .get();
+
+        final Response plainResponse = response;
+        final String plain = plainResponse.readEntity(String.class);
+        assertAll(() -> assertEquals(HttpStatus.OK_200, plainResponse.getStatus(), "Should have ok status"),
+                () -> assertNull(plainResponse.getHeaderString(HttpHeaders.CONTENT_ENCODING), "Should not be encoded"),
+                () -> assertEquals("checksum", plainResponse.getHeaderString(HttpHeaders.ETAG), "Should have the ETag of the content"),
+                () -> assertEquals(HttpHeaders.ACCEPT_ENCODING, plainResponse.getHeaderString(HttpHeaders.VARY), "Should vary on the accepted encoding"),
+                () -> assertEquals(content.length(), Long.parseLong(plainResponse.getHeaderString(HttpHeaders.CONTENT_LENGTH)), "Should have uncompressed length"),
+                () -> assertEquals(content, plain, "Should have the content"));
+
+        // Ranges are of the decompressed content, when gzip is not accepted
+        response = RESOURCE.target("/v1/Data/test.ndjson")
+                .request()
+                .header(org.apache.http.HttpHeaders.RANGE, "bytes=100-1124")
+                .get();
+
+        final Response rangeResponse = response;
+        final String range = rangeResponse.readEntity(String.class);
+        assertAll(() -> assertEquals(HttpStatus.PARTIAL_CONTENT_206, rangeResponse.getStatus(), "Should have partial status"),
+                () -> assertEquals(String.format("bytes 100-1124/%d", content.length()), rangeResponse.getHeaderString(org.apache.http.HttpHeaders.CONTENT_RANGE), "Should have content range"),
+                () -> assertEquals(content.substring(100, 1124), range, "Should have the range of the content"));
+
+        // Ranges past the end of the decompressed content are not satisfiable
+        response = RESOURCE.target("/v1/Data/test.ndjson")
+                .request()
+                .header(org.apache.http.HttpHeaders.RANGE, String.format("bytes=%d-", content.length() + 100))
+                .get();
+
+        final Response outOfBounds = response;
+        assertAll(() -> assertEquals(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), outOfBounds.getStatus(), "Should have correct status code"),
+                () -> assertEquals(String.format("bytes */%d", content.length()), outOfBounds.getHeaderString(org.apache.http.HttpHeaders.CONTENT_RANGE), "Should have the size of the content"));
     }
 
     @Test
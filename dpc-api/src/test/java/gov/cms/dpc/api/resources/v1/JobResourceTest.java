@@ -232,4 +232,20 @@ public class JobResourceTest {
                 () -> assertEquals(JobCompletionModel.FILE_LENGTH_URL, extension.get(1).getUrl()),
                 () -> assertEquals(7202L, extension.get(1).getValueDecimal()));
     }
+
+    /**
+     * Test building extension for a compressed file, which reports the uncompressed length.
+     */
+    @Test
+    public void testBuildExtensionCompressed() {
+        final var resource = new JobResource(null, "");
+        final var file = new JobQueueBatchFile(UUID.randomUUID(), UUID.fromString("f1e518f5-4977-47c6-971b-7eeaf1b433e8"), ResourceType.Patient, 0, 11);
+        file.setChecksum(Hex.decode("9d251cea787379c603af13f90c26a9b2a4fbb1e029793ae0f688c5631cdb6a1b"));
+        file.setCompressed(true);
+        file.setFileLength(1024L);
+        file.setUncompressedLength(7202L);
+        List<JobCompletionModel.OutputEntryExtension> extension = resource.buildExtension(file);
+        assertAll(() -> assertEquals(JobCompletionModel.FILE_LENGTH_URL, extension.get(1).getUrl()),
+                () -> assertEquals(7202L, extension.get(1).getValueDecimal()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package gov.cms.dpc.bluebutton.stub;
+
+import ca.mestevens.java.configuration.TypesafeConfiguration;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class BlueButtonStubConfiguration extends TypesafeConfiguration {
+
+    @Valid
+    @NotNull
+    @JsonProperty("latency")
+    private LatencyConfiguration latency = new LatencyConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("errors")
+    private ErrorConfiguration errors = new ErrorConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("throttling")
+    private ThrottlingConfiguration throttling = new ThrottlingConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("synthetic")
+    private SyntheticConfiguration synthetic = new SyntheticConfiguration();
+
+    // The number of resources in a page of results, 0 to use the _count requested by the client
+    @Min(0)
+    @Max(1000)
+    private int pageSize = 0;
+
+    public LatencyConfiguration getLatency() {
+        return latency;
+    }
+
+    public ErrorConfiguration getErrors() {
+        return errors;
+    }
+
+    public ThrottlingConfiguration getThrottling() {
+        return throttling;
+    }
+
+    public SyntheticConfiguration getSynthetic() {
+        return synthetic;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public enum LatencyDistribution {
+        /**
+         * Every request takes the median
+         */
+        FIXED,
+        /**
+         * Requests take between the min and the max, evenly distributed
+         */
+        UNIFORM,
+        /**
+         * Requests are centered on the median with a long tail, the way real services usually are
+         */
+        LOG_NORMAL
+    }
+
+    /**
+     * Latency added to each request, before the response is sent.
+     */
+    public static class LatencyConfiguration {
+
+        @NotNull
+        private LatencyDistribution distribution = LatencyDistribution.FIXED;
+        @Min(0)
+        private int min = 0; // ms
+        @Min(0)
+        private int median = 0; // ms
+        @Min(0)
+        private int max = 30000; // ms, no request takes longer than this
+        @DecimalMin("0.0")
+        private double sigma = 0.5; // Spread of the log normal distribution
+        @Min(0)
+        private int perResource = 0; // ms added for each resource in the response
+
+        LatencyConfiguration() {
+            // Jackson required
+        }
+
+        public LatencyDistribution getDistribution() {
+            return distribution;
+        }
+
+        public void setDistribution(LatencyDistribution distribution) {
+            this.distribution = distribution;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public void setMin(int min) {
+            this.min = min;
+        }
+
+        public int getMedian() {
+            return median;
+        }
+
+        public void setMedian(int median) {
+            this.median = median;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public void setMax(int max) {
+            this.max = max;
+        }
+
+        public double getSigma() {
+            return sigma;
+        }
+
+        public void setSigma(double sigma) {
+            this.sigma = sigma;
+        }
+
+        public int getPerResource() {
+            return perResource;
+        }
+
+        public void setPerResource(int perResource) {
+            this.perResource = perResource;
+        }
+    }
+
+    /**
+     * Errors returned instead of the requested resources.
+     */
+    public static class ErrorConfiguration {
+
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double rate = 0.0; // Fraction of the requests that fail
+        @Min(400)
+        @Max(599)
+        private int status = 500;
+
+        ErrorConfiguration() {
+            // Jackson required
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public void setStatus(int status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * Limits on the requests the stub accepts, over which it answers like an overloaded BlueButton.
+     */
+    public static class ThrottlingConfiguration {
+
+        @Min(0)
+        private int requestsPerSecond = 0; // Over this, requests get a 429, 0 for no limit
+        @Min(0)
+        private int maxConcurrentRequests = 0; // Over this, requests get a 503, 0 for no limit
+
+        ThrottlingConfiguration() {
+            // Jackson required
+        }
+
+        public int getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(int requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+    }
+
+    /**
+     * Synthetic patients, generated from one of the test patients.
+     * Any patient ID starting with the prefix exists, so exports can be scaled up to any number of patients.
+     */
+    public static class SyntheticConfiguration {
+
+        @NotEmpty
+        private String prefix = "-1999";
+        @NotEmpty
+        private String templatePatient = "20140000008325";
+        @Min(0)
+        private int eobsPerPatient = 100;
+        @Min(0)
+        private int coveragePerPatient = 3;
+
+        SyntheticConfiguration() {
+            // Jackson required
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getTemplatePatient() {
+            return templatePatient;
+        }
+
+        public void setTemplatePatient(String templatePatient) {
+            this.templatePatient = templatePatient;
+        }
+
+        public int getEobsPerPatient() {
+            return eobsPerPatient;
+        }
+
+        public void setEobsPerPatient(int eobsPerPatient) {
+            this.eobsPerPatient = eobsPerPatient;
+        }
+
+        public int getCoveragePerPatient() {
+            return coveragePerPatient;
+        }
+
+        public void setCoveragePerPatient(int coveragePerPatient) {
+            this.coveragePerPatient = coveragePerPatient;
+        }
+    }
+}
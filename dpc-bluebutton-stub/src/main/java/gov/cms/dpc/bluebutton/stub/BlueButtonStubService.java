@@ -0,0 +1,39 @@
+package gov.cms.dpc.bluebutton.stub;
+
+import ca.mestevens.java.configuration.bundle.TypesafeConfigurationBundle;
+import ca.uhn.fhir.context.FhirContext;
+import gov.cms.dpc.bluebutton.stub.resources.StubFHIRResource;
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+
+/**
+ * Stand-in for the BlueButton FHIR server, for load and soak testing the BlueButton clients and the aggregation engine on a single machine.
+ * <p>
+ * Serves the BlueButton test data, and synthetic patients generated from it, with configurable latency, errors, throttling and page sizes.
+ * Point the bbclient serverBaseUrl of the aggregation service at the /v1/fhir/ path of this server.
+ */
+public class BlueButtonStubService extends Application<BlueButtonStubConfiguration> {
+
+    public static void main(final String[] args) throws Exception {
+        new BlueButtonStubService().run(args);
+    }
+
+    @Override
+    public String getName() {
+        return "DPC BlueButton Stub";
+    }
+
+    @Override
+    public void initialize(Bootstrap<BlueButtonStubConfiguration> bootstrap) {
+        bootstrap.addBundle(new TypesafeConfigurationBundle("dpc.bbstub"));
+    }
+
+    @Override
+    public void run(BlueButtonStubConfiguration configuration, Environment environment) {
+        final FhirContext context = FhirContext.forDstu3();
+        final StubData data = new StubData(context, configuration.getSynthetic());
+        final StubBehaviour behaviour = new StubBehaviour(configuration);
+        environment.jersey().register(new StubFHIRResource(context, data, behaviour, configuration.getPageSize()));
+    }
+}
@@ -0,0 +1,85 @@
+package gov.cms.dpc.bluebutton.stub;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The injectable behaviours of the stub: latency, errors and throttling.
+ */
+public class StubBehaviour {
+
+    private final BlueButtonStubConfiguration.LatencyConfiguration latency;
+    private final BlueButtonStubConfiguration.ErrorConfiguration errors;
+    private final RateLimiter rateLimiter;
+    private final Semaphore concurrentRequests;
+
+    public StubBehaviour(BlueButtonStubConfiguration configuration) {
+        this.latency = configuration.getLatency();
+        this.errors = configuration.getErrors();
+        final BlueButtonStubConfiguration.ThrottlingConfiguration throttling = configuration.getThrottling();
+        this.rateLimiter = throttling.getRequestsPerSecond() > 0 ? RateLimiter.create(throttling.getRequestsPerSecond()) : null;
+        this.concurrentRequests = throttling.getMaxConcurrentRequests() > 0 ? new Semaphore(throttling.getMaxConcurrentRequests()) : null;
+    }
+
+    /**
+     * Admit a request, if it is within the throttling limits. An admitted request must be completed with {@link #complete()}.
+     *
+     * @return the status to reject the request with, empty if the request is admitted
+     */
+    public Optional<Integer> admit() {
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            return Optional.of(429);
+        }
+        if (concurrentRequests != null && !concurrentRequests.tryAcquire()) {
+            return Optional.of(503);
+        }
+        return Optional.empty();
+    }
+
+    public void complete() {
+        if (concurrentRequests != null) {
+            concurrentRequests.release();
+        }
+    }
+
+    /**
+     * Whether this request should fail
+     *
+     * @return the status to fail the request with, empty if the request succeeds
+     */
+    public Optional<Integer> injectError() {
+        if (errors.getRate() > 0 && ThreadLocalRandom.current().nextDouble() < errors.getRate()) {
+            return Optional.of(errors.getStatus());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Wait as long as the request should take.
+     *
+     * @param resourceCount - the number of resources in the response
+     * @throws InterruptedException - if the server is stopped while waiting
+     */
+    public void delay(int resourceCount) throws InterruptedException {
+        final long delay = Math.min(sampleLatency(ThreadLocalRandom.current()), latency.getMax()) + (long) latency.getPerResource() * resourceCount;
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    long sampleLatency(Random random) {
+        switch (latency.getDistribution()) {
+            case UNIFORM:
+                return latency.getMin() + (long) (random.nextDouble() * Math.max(latency.getMax() - latency.getMin(), 0));
+            case LOG_NORMAL:
+                return Math.max(latency.getMin(), Math.round(latency.getMedian() * Math.exp(latency.getSigma() * random.nextGaussian())));
+            case FIXED:
+            default:
+                return latency.getMedian();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package gov.cms.dpc.bluebutton.stub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.dstu3.model.*;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The resources served by the stub.
+ * <p>
+ * The test patients are the ones in {@code bb-test-data}, the same as the MockBlueButtonClient.
+ * Their pages of EOBs are flattened into a single list, so that the stub can page them with any page size.
+ * <p>
+ * Synthetic patients are copies of a template test patient, with their own ID and the configured number of EOBs and Coverages.
+ */
+public class StubData {
+
+    static final List<String> TEST_PATIENT_IDS = List.of("20140000008325", "20140000009893");
+    private static final String TEST_DATA_PATH = "bb-test-data/";
+    private static final int EOB_PAGE_STEP = 10;
+
+    private final BlueButtonStubConfiguration.SyntheticConfiguration synthetic;
+    private final CapabilityStatement capabilityStatement;
+    private final Map<String, Patient> patients;
+    private final Map<String, List<ExplanationOfBenefit>> eobs;
+    private final Map<String, List<Coverage>> coverage;
+
+    public StubData(FhirContext context, BlueButtonStubConfiguration.SyntheticConfiguration synthetic) {
+        this.synthetic = synthetic;
+        final IParser parser = context.newXmlParser();
+        this.capabilityStatement = load(parser, CapabilityStatement.class, TEST_DATA_PATH + "meta.xml").orElseThrow();
+        this.patients = TEST_PATIENT_IDS.stream()
+                .collect(Collectors.toMap(Function.identity(), id -> load(parser, Patient.class, TEST_DATA_PATH + "patient/" + id + ".xml").orElseThrow()));
+        this.eobs = TEST_PATIENT_IDS.stream()
+                .collect(Collectors.toMap(Function.identity(), id -> loadEOBs(parser, id)));
+        this.coverage = TEST_PATIENT_IDS.stream()
+                .collect(Collectors.toMap(Function.identity(), id -> extract(Coverage.class, load(parser, Bundle.class, TEST_DATA_PATH + "coverage/" + id + ".xml").orElseThrow())));
+
+        if (!patients.containsKey(synthetic.getTemplatePatient())) {
+            throw new IllegalArgumentException(String.format("Template patient %s is not a test patient", synthetic.getTemplatePatient()));
+        }
+    }
+
+    public CapabilityStatement getCapabilityStatement() {
+        return capabilityStatement;
+    }
+
+    /**
+     * Get a patient
+     *
+     * @param patientID - the ID of the patient
+     * @return the {@link Patient}, empty if no such patient exists
+     */
+    public Optional<Patient> getPatient(String patientID) {
+        if (isSynthetic(patientID)) {
+            final Patient patient = patients.get(synthetic.getTemplatePatient()).copy();
+            patient.setId(patientID);
+            return Optional.of(patient);
+        }
+        return Optional.ofNullable(patients.get(patientID)).map(Patient::copy);
+    }
+
+    /**
+     * Get the patient for an MBI hash. As the hashes of the test patients are not known, every hash is the template patient.
+     *
+     * @return the template {@link Patient}
+     */
+    public Patient getPatientByMbiHash() {
+        return patients.get(synthetic.getTemplatePatient()).copy();
+    }
+
+    /**
+     * Get all the EOBs of a patient
+     *
+     * @param patientID - the ID of the patient
+     * @return the {@link ExplanationOfBenefit}s, empty if no such patient exists
+     */
+    public Optional<List<ExplanationOfBenefit>> getEOBs(String patientID) {
+        if (isSynthetic(patientID)) {
+            return Optional.of(replicate(eobs.get(synthetic.getTemplatePatient()), synthetic.getEobsPerPatient(), patientID, (eob, reference) -> eob.setPatient(reference)));
+        }
+        return Optional.ofNullable(eobs.get(patientID));
+    }
+
+    /**
+     * Get all the Coverages of a patient
+     *
+     * @param patientID - the ID of the patient
+     * @return the {@link Coverage}s, empty if no such patient exists
+     */
+    public Optional<List<Coverage>> getCoverage(String patientID) {
+        if (isSynthetic(patientID)) {
+            return Optional.of(replicate(coverage.get(synthetic.getTemplatePatient()), synthetic.getCoveragePerPatient(), patientID, (cov, reference) -> cov.setBeneficiary(reference)));
+        }
+        return Optional.ofNullable(coverage.get(patientID));
+    }
+
+    private boolean isSynthetic(String patientID) {
+        return patientID.startsWith(synthetic.getPrefix());
+    }
+
+    /**
+     * Make copies of the template resources for a synthetic patient, cycling through the templates until there are enough of them.
+     */
+    private static <T extends Resource> List<T> replicate(List<T> templates, int count, String patientID, ReferenceSetter<T> setter) {
+        if (templates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<T> copies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked") final T copy = (T) templates.get(i % templates.size()).copy();
+            copy.setId(String.format("%s-%s-%d", copy.getIdElement().getIdPart(), patientID, i));
+            setter.set(copy, new Reference("Patient/" + patientID));
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Load all the pages of EOBs of a test patient. The first page has the patient ID as its name, the next pages are suffixed with their start index.
+     */
+    private static List<ExplanationOfBenefit> loadEOBs(IParser parser, String patientID) {
+        final List<ExplanationOfBenefit> all = new ArrayList<>();
+        Optional<Bundle> page = load(parser, Bundle.class, TEST_DATA_PATH + "eob/" + patientID + ".xml");
+        int startIndex = 0;
+        while (page.isPresent()) {
+            all.addAll(extract(ExplanationOfBenefit.class, page.get()));
+            startIndex += EOB_PAGE_STEP;
+            page = load(parser, Bundle.class, TEST_DATA_PATH + "eob/" + patientID + "_" + startIndex + ".xml");
+        }
+        return all;
+    }
+
+    private static <T extends Resource> List<T> extract(Class<T> resourceClass, Bundle bundle) {
+        return bundle.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .map(resourceClass::cast)
+                .collect(Collectors.toList());
+    }
+
+    private static <T extends IBaseResource> Optional<T> load(IParser parser, Class<T> resourceClass, String path) {
+        try (InputStream stream = StubData.class.getClassLoader().getResourceAsStream(path)) {
+            if (stream == null) {
+                return Optional.empty();
+            }
+            return Optional.of(parser.parseResource(resourceClass, stream));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load test data " + path, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReferenceSetter<T> {
+        void set(T resource, Reference patient);
+    }
+}
@@ -0,0 +1,209 @@
+package gov.cms.dpc.bluebutton.stub.resources;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import gov.cms.dpc.bluebutton.stub.StubBehaviour;
+import gov.cms.dpc.bluebutton.stub.StubData;
+import org.hl7.fhir.dstu3.model.*;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The subset of the BlueButton FHIR API used by the BlueButton clients.
+ * <p>
+ * Search results are paged by the stub, with the page size requested by the client or the configured one.
+ * Every request goes through the {@link StubBehaviour}, which may throttle it, delay it or fail it.
+ */
+@Path("/v1/fhir")
+public class StubFHIRResource {
+
+    private static final String FHIR_JSON = "application/fhir+json;charset=utf-8";
+    private static final String FHIR_XML = "application/fhir+xml;charset=utf-8";
+    private static final String PATIENT_PREFIX = "Patient/";
+    private static final int DEFAULT_COUNT = 10;
+
+    private final FhirContext context;
+    private final StubData data;
+    private final StubBehaviour behaviour;
+    private final int pageSize;
+
+    public StubFHIRResource(FhirContext context, StubData data, StubBehaviour behaviour, int pageSize) {
+        this.context = context;
+        this.data = data;
+        this.behaviour = behaviour;
+        this.pageSize = pageSize;
+    }
+
+    @GET
+    @Path("/metadata")
+    public Response metadata(@HeaderParam(HttpHeaders.ACCEPT) String accept, @QueryParam("_format") String format) {
+        return serve(accept, format, () -> Optional.of(data.getCapabilityStatement()));
+    }
+
+    @GET
+    @Path("/Patient/{patientID}")
+    public Response readPatient(@HeaderParam(HttpHeaders.ACCEPT) String accept, @QueryParam("_format") String format,
+                                @PathParam("patientID") String patientID) {
+        return serve(accept, format, () -> data.getPatient(patientID));
+    }
+
+    @GET
+    @Path("/Patient")
+    public Response searchPatient(@HeaderParam(HttpHeaders.ACCEPT) String accept, @QueryParam("_format") String format,
+                                  @QueryParam("identifier") String identifier, @QueryParam("_id") String ids,
+                                  @QueryParam("_count") Integer count, @QueryParam("startIndex") @DefaultValue("0") int startIndex,
+                                  @Context UriInfo uriInfo) {
+        return serve(accept, format, () -> {
+            if (ids != null) {
+                return Optional.of(page(collect(ids, id -> data.getPatient(id).map(List::of)), uriInfo, count, startIndex));
+            }
+            final List<Patient> patients = identifier == null ? List.of() : List.of(data.getPatientByMbiHash());
+            return Optional.of(page(patients, uriInfo, null, 0));
+        });
+    }
+
+    @GET
+    @Path("/ExplanationOfBenefit")
+    public Response searchEOBs(@HeaderParam(HttpHeaders.ACCEPT) String accept, @QueryParam("_format") String format,
+                               @QueryParam("patient") String patient, @QueryParam("_count") Integer count,
+                               @QueryParam("startIndex") @DefaultValue("0") int startIndex, @Context UriInfo uriInfo) {
+        return serve(accept, format, () -> Optional.of(page(collect(patient, data::getEOBs), uriInfo, count, startIndex)));
+    }
+
+    @GET
+    @Path("/Coverage")
+    public Response searchCoverage(@HeaderParam(HttpHeaders.ACCEPT) String accept, @QueryParam("_format") String format,
+                                   @QueryParam("beneficiary") String beneficiary, @QueryParam("_count") Integer count,
+                                   @QueryParam("startIndex") @DefaultValue("0") int startIndex, @Context UriInfo uriInfo) {
+        return serve(accept, format, () -> Optional.of(page(collect(beneficiary, data::getCoverage), uriInfo, count, startIndex)));
+    }
+
+    /**
+     * Serve a request, with the configured behaviours
+     *
+     * @param accept  - the Accept header of the request
+     * @param format  - the _format parameter of the request
+     * @param handler - produces the resource to respond with, empty if it does not exist
+     * @return the {@link Response}
+     */
+    private Response serve(String accept, String format, Supplier<Optional<? extends Resource>> handler) {
+        final boolean json = isJson(accept, format);
+        final Optional<Integer> rejected = behaviour.admit();
+        if (rejected.isPresent()) {
+            return error(json, rejected.get(), "Too many requests")
+                    .header("Retry-After", 1)
+                    .build();
+        }
+        try {
+            final Optional<? extends Resource> resource = handler.get();
+            behaviour.delay(resource.map(StubFHIRResource::countResources).orElse(0));
+
+            final Optional<Integer> injected = behaviour.injectError();
+            if (injected.isPresent()) {
+                return error(json, injected.get(), "Injected error").build();
+            }
+            if (resource.isEmpty()) {
+                return error(json, Response.Status.NOT_FOUND.getStatusCode(), "Resource not found").build();
+            }
+            return Response.ok(parser(json).encodeResourceToString(resource.get()), json ? FHIR_JSON : FHIR_XML).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(json, Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), "Server is stopping").build();
+        } finally {
+            behaviour.complete();
+        }
+    }
+
+    /**
+     * Form a page of search results
+     *
+     * @param resources  - all the results
+     * @param uriInfo    - of the request, to link the next page
+     * @param count      - page size requested by the client, if any
+     * @param startIndex - index of the first result of the page
+     * @return a searchset {@link Bundle}, linked to the next page if there is one
+     */
+    private Bundle page(List<? extends Resource> resources, UriInfo uriInfo, Integer count, int startIndex) {
+        final int size = pageSize > 0 ? pageSize : (count == null || count <= 0 ? DEFAULT_COUNT : count);
+        final int from = Math.min(Math.max(startIndex, 0), resources.size());
+        final int to = Math.min(from + size, resources.size());
+
+        final Bundle bundle = new Bundle()
+                .setType(Bundle.BundleType.SEARCHSET)
+                .setTotal(resources.size());
+        bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl(uriInfo.getRequestUri().toString());
+        resources.subList(from, to).forEach(resource -> bundle.addEntry().setResource(resource));
+        if (to < resources.size()) {
+            final String next = uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("startIndex", to)
+                    .replaceQueryParam("_count", size)
+                    .build()
+                    .toString();
+            bundle.addLink().setRelation(Bundle.LINK_NEXT).setUrl(next);
+        }
+        return bundle;
+    }
+
+    private Response.ResponseBuilder error(boolean json, int status, String message) {
+        final OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.EXCEPTION)
+                .setDiagnostics(message);
+        return Response.status(status)
+                .entity(parser(json).encodeResourceToString(outcome))
+                .type(json ? FHIR_JSON : FHIR_XML);
+    }
+
+    private IParser parser(boolean json) {
+        // Parsers are not thread-safe, and are cheap to create from the shared context
+        return json ? context.newJsonParser() : context.newXmlParser();
+    }
+
+    private static boolean isJson(String accept, String format) {
+        if (format != null) {
+            return format.toLowerCase().contains("json");
+        }
+        // Like BlueButton, answer in JSON unless only XML is accepted
+        return accept == null || accept.toLowerCase().contains("json") || !accept.toLowerCase().contains("xml");
+    }
+
+    private static int countResources(Resource resource) {
+        return resource instanceof Bundle ? ((Bundle) resource).getEntry().size() : 1;
+    }
+
+    /**
+     * Collect the resources of the patients of a search parameter, which may have several comma separated values like BlueButton's.
+     *
+     * @param patientIDs - the value of the search parameter
+     * @param lookup     - gets the resources of a patient, empty if no such patient exists
+     * @return the resources of all the patients
+     */
+    private static <T extends Resource> List<T> collect(String patientIDs, Function<String, Optional<List<T>>> lookup) {
+        if (patientIDs == null) {
+            return List.of();
+        }
+        return Arrays.stream(patientIDs.split(","))
+                .map(StubFHIRResource::stripPrefix)
+                .map(lookup)
+                .flatMap(resources -> resources.orElse(List.of()).stream())
+                .collect(Collectors.toList());
+    }
+
+    private static String stripPrefix(String patientID) {
+        if (patientID == null) {
+            return "";
+        }
+        return patientID.startsWith(PATIENT_PREFIX) ? patientID.substring(PATIENT_PREFIX.length()) : patientID;
+    }
+}
@@ -0,0 +1,102 @@
+package gov.cms.dpc.bluebutton.stub;
+
+import ca.uhn.fhir.context.FhirContext;
+import gov.cms.dpc.bluebutton.stub.resources.StubFHIRResource;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.dropwizard.testing.junit5.ResourceExtension;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.core.Response;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+@ExtendWith(BufferedLoggerHandler.class)
+class StubFHIRResourceTest {
+
+    private static final FhirContext context = FhirContext.forDstu3();
+    private static final String TEST_PATIENT_ID = StubData.TEST_PATIENT_IDS.get(0);
+    private static final String SYNTHETIC_PATIENT_ID = "-19990000000042";
+
+    private static final ResourceExtension RESOURCE = buildResource(new BlueButtonStubConfiguration());
+    private static final ResourceExtension FAILING_RESOURCE = buildFailingResource();
+
+    @Test
+    void testReadPatient() {
+        final Response response = RESOURCE.target("/v1/fhir/Patient/" + TEST_PATIENT_ID).request().get();
+        assertEquals(200, response.getStatus());
+        final Patient patient = context.newJsonParser().parseResource(Patient.class, response.readEntity(String.class));
+        assertEquals(TEST_PATIENT_ID, patient.getIdElement().getIdPart(), "Should have the test patient");
+
+        assertEquals(404, RESOURCE.target("/v1/fhir/Patient/31337").request().get().getStatus(), "Should not find an unknown patient");
+    }
+
+    @Test
+    void testEOBPaging() {
+        final Bundle first = searchEOBs(RESOURCE.target("/v1/fhir/ExplanationOfBenefit")
+                .queryParam("patient", TEST_PATIENT_ID)
+                .queryParam("_count", 20)
+                .getUri());
+        assertAll(() -> assertEquals(32, first.getTotal(), "Should have all the pages of the test data"),
+                () -> assertEquals(20, first.getEntry().size(), "Should have the requested page size"),
+                () -> assertNotNull(first.getLink(Bundle.LINK_NEXT), "Should link the next page"));
+
+        final Bundle last = searchEOBs(URI.create(first.getLink(Bundle.LINK_NEXT).getUrl()));
+        assertAll(() -> assertEquals(12, last.getEntry().size(), "Should have the rest of the EOBs"),
+                () -> assertNull(last.getLink(Bundle.LINK_NEXT), "Should be the last page"));
+    }
+
+    @Test
+    void testSyntheticPatient() {
+        final Bundle bundle = searchEOBs(RESOURCE.target("/v1/fhir/ExplanationOfBenefit")
+                .queryParam("patient", SYNTHETIC_PATIENT_ID)
+                .queryParam("_count", 10)
+                .getUri());
+        assertEquals(100, bundle.getTotal(), "Should have the configured number of EOBs");
+        final ExplanationOfBenefit eob = (ExplanationOfBenefit) bundle.getEntryFirstRep().getResource();
+        assertEquals("Patient/" + SYNTHETIC_PATIENT_ID, eob.getPatient().getReference(), "Should belong to the synthetic patient");
+
+        assertEquals(200, RESOURCE.target("/v1/fhir/Patient/" + SYNTHETIC_PATIENT_ID).request().get().getStatus(), "Should have the synthetic patient");
+    }
+
+    @Test
+    void testMultiplePatients() {
+        final Bundle bundle = searchEOBs(RESOURCE.target("/v1/fhir/ExplanationOfBenefit")
+                .queryParam("patient", TEST_PATIENT_ID + "," + SYNTHETIC_PATIENT_ID + ",31337")
+                .queryParam("_count", 10)
+                .getUri());
+        assertEquals(132, bundle.getTotal(), "Should have the EOBs of both known patients");
+    }
+
+    @Test
+    void testInjectedErrors() {
+        final Response response = FAILING_RESOURCE.target("/v1/fhir/Patient/" + TEST_PATIENT_ID).request().get();
+        assertEquals(503, response.getStatus(), "Should fail every request");
+    }
+
+    private static Bundle searchEOBs(URI uri) {
+        final Response response = RESOURCE.client().target(uri).request("application/fhir+json").get();
+        assertEquals(200, response.getStatus());
+        return context.newJsonParser().parseResource(Bundle.class, response.readEntity(String.class));
+    }
+
+    private static ResourceExtension buildFailingResource() {
+        final BlueButtonStubConfiguration configuration = new BlueButtonStubConfiguration();
+        configuration.getErrors().setRate(1.0);
+        configuration.getErrors().setStatus(503);
+        return buildResource(configuration);
+    }
+
+    private static ResourceExtension buildResource(BlueButtonStubConfiguration configuration) {
+        final StubData data = new StubData(context, configuration.getSynthetic());
+        return ResourceExtension.builder()
+                .addResource(new StubFHIRResource(context, data, new StubBehaviour(configuration), configuration.getPageSize()))
+                .build();
+    }
+}
@@ -3,33 +3,55 @@ package gov.cms.dpc.bluebutton;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Binder;
 import com.google.inject.Provides;
 import com.hubspot.dropwizard.guicier.DropwizardAwareModule;
+import gov.cms.dpc.bluebutton.client.AdaptiveConcurrencyLimit;
+import gov.cms.dpc.bluebutton.client.BlueButtonAsyncClient;
+import gov.cms.dpc.bluebutton.client.BlueButtonAsyncClientImpl;
+import gov.cms.dpc.bluebutton.client.BlueButtonCalls;
 import gov.cms.dpc.bluebutton.client.BlueButtonClient;
 import gov.cms.dpc.bluebutton.client.BlueButtonClientImpl;
+import gov.cms.dpc.bluebutton.client.BlueButtonClientManager;
+import gov.cms.dpc.bluebutton.client.BlueButtonResponseCache;
+import gov.cms.dpc.bluebutton.client.ResponseSizeRecorder;
 import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
 import gov.cms.dpc.bluebutton.config.BlueButtonBundleConfiguration;
 import gov.cms.dpc.bluebutton.exceptions.BlueButtonClientSetupException;
 import gov.cms.dpc.bluebutton.health.BlueButtonHealthCheck;
+import gov.cms.dpc.common.utils.MetricMaker;
 import io.dropwizard.Configuration;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Singleton;
 import javax.net.ssl.SSLContext;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.util.MissingResourceException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Guice module for building and injecting the {@link BlueButtonClient}.
@@ -58,12 +80,82 @@ public class BlueButtonClientModule<T extends Configuration & BlueButtonBundleCo
         }
 
         binder.bind(BlueButtonHealthCheck.class);
+        binder.bind(BlueButtonClientManager.class);
 
     }
 
     @Provides
-    public BlueButtonClient provideBlueButtonClient(IGenericClient fhirRestClient, MetricRegistry registry) {
-        return new BlueButtonClientImpl(fhirRestClient, this.bbClientConfiguration, registry);
+    @Singleton
+    public BlueButtonClient provideBlueButtonClient(IGenericClient fhirRestClient, MetricRegistry registry, BlueButtonCalls calls) {
+        return new BlueButtonClientImpl(fhirRestClient, this.bbClientConfiguration, registry, calls);
+    }
+
+    @Provides
+    @Singleton
+    public BlueButtonAsyncClient provideBlueButtonAsyncClient(FhirContext fhirContext, KeyStore keyStore, BlueButtonCalls calls) {
+        final SSLContext sslContext = buildSSLContext(keyStore, this.bbClientConfiguration.getKeystore().getDefaultPassword().toCharArray());
+        // Responses are handled by a few threads, no thread is held while waiting on Blue Button
+        final java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .executor(Executors.newFixedThreadPool(this.bbClientConfiguration.getConnectionPool().getAsyncThreads(),
+                        new ThreadFactoryBuilder().setNameFormat("bb-async-client-%d").setDaemon(true).build()));
+        final Integer connectionTimeout = this.bbClientConfiguration.getTimeouts().getConnectionTimeout();
+        if (connectionTimeout != null) {
+            builder.connectTimeout(Duration.ofMillis(connectionTimeout));
+        }
+        return new BlueButtonAsyncClientImpl(builder.build(), fhirContext, this.bbClientConfiguration, calls);
+    }
+
+    /**
+     * The calls shared by the {@link BlueButtonClient} and the {@link BlueButtonAsyncClient}, so both clients are held to the same limits
+     *
+     * @param fhirContext      - {@link FhirContext} for the response cache
+     * @param registry         - {@link MetricRegistry} for the call metrics
+     * @param circuitBreaker   - {@link CircuitBreaker} in front of Blue Button
+     * @param concurrencyLimit - {@link AdaptiveConcurrencyLimit} of the calls to Blue Button
+     * @return {@link BlueButtonCalls}
+     */
+    @Provides
+    @Singleton
+    public BlueButtonCalls provideBlueButtonCalls(FhirContext fhirContext, MetricRegistry registry, CircuitBreaker circuitBreaker, AdaptiveConcurrencyLimit concurrencyLimit) {
+        final BlueButtonResponseCache responseCache = new BlueButtonResponseCache(this.bbClientConfiguration.getResponseCache(), fhirContext, registry);
+        return new BlueButtonCalls(this.bbClientConfiguration, responseCache, registry, circuitBreaker, concurrencyLimit);
+    }
+
+    @Provides
+    @Singleton
+    public CircuitBreaker provideCircuitBreaker(MetricRegistry registry) {
+        final BBClientConfiguration.CircuitBreakerConfiguration breakerConfig = this.bbClientConfiguration.getCircuitBreaker();
+        final CircuitBreaker circuitBreaker = CircuitBreaker.of("bb-client", CircuitBreakerConfig.custom()
+                .failureRateThreshold(breakerConfig.getFailureRateThreshold())
+                .slowCallRateThreshold(breakerConfig.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(Duration.ofMillis(breakerConfig.getSlowCallDuration()))
+                .slidingWindowSize(breakerConfig.getSlidingWindowSize())
+                .minimumNumberOfCalls(breakerConfig.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(Duration.ofMillis(breakerConfig.getWaitDurationInOpenState()))
+                .permittedNumberOfCallsInHalfOpenState(breakerConfig.getPermittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(BlueButtonCalls::isFailure)
+                .build());
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> logger.warn("BlueButton circuit breaker {}", event.getStateTransition()));
+
+        final var metricMaker = new MetricMaker(registry, BlueButtonClientModule.class);
+        metricMaker.registerCachedGauge("circuitBreakerState", () -> circuitBreaker.getState().getOrder());
+        metricMaker.registerCachedGauge("circuitBreakerFailureRate", () -> circuitBreaker.getMetrics().getFailureRate());
+        metricMaker.registerCachedGauge("circuitBreakerSlowCallRate", () -> circuitBreaker.getMetrics().getSlowCallRate());
+        metricMaker.registerCachedGauge("circuitBreakerNotPermittedCalls", () -> circuitBreaker.getMetrics().getNumberOfNotPermittedCalls());
+        return circuitBreaker;
+    }
+
+    @Provides
+    @Singleton
+    public AdaptiveConcurrencyLimit provideConcurrencyLimit(MetricRegistry registry) {
+        final AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(this.bbClientConfiguration.getConcurrencyLimit());
+        final var metricMaker = new MetricMaker(registry, BlueButtonClientModule.class);
+        metricMaker.registerCachedGauge("concurrencyLimit", concurrencyLimit::getLimit);
+        metricMaker.registerCachedGauge("concurrentCalls", concurrencyLimit::getInFlight);
+        return concurrencyLimit;
     }
 
     @Provides
@@ -89,8 +181,9 @@ public class BlueButtonClientModule<T extends Configuration & BlueButtonBundleCo
     }
 
     @Provides
-    public HttpClient provideHttpClient(KeyStore keyStore) {
-        return buildMutualTlsClient(keyStore, this.bbClientConfiguration.getKeystore().getDefaultPassword().toCharArray());
+    @Singleton
+    public HttpClient provideHttpClient(KeyStore keyStore, MetricRegistry registry) {
+        return buildMutualTlsClient(keyStore, this.bbClientConfiguration.getKeystore().getDefaultPassword().toCharArray(), registry);
     }
 
     /**
@@ -129,14 +222,58 @@ public class BlueButtonClientModule<T extends Configuration & BlueButtonBundleCo
      *
      * @param keyStore     {@link KeyStore} containing, at a minimum, the client tls certificate and private key
      * @param keyStorePass password for keystore (default: "changeit")
+     * @param registry     {@link MetricRegistry} for the connection pool metrics
      * @return {@link HttpClient} compatible with HAPI FHIR TLS client
      */
-    private HttpClient buildMutualTlsClient(KeyStore keyStore, char[] keyStorePass) {
-        final SSLContext sslContext;
+    private HttpClient buildMutualTlsClient(KeyStore keyStore, char[] keyStorePass, MetricRegistry registry) {
+        final SSLContext sslContext = buildSSLContext(keyStore, keyStorePass);
+
+        // Configure the socket timeout for the connection, incl. ssl tunneling
+        final BBClientConfiguration.TimeoutConfiguration timeouts = this.bbClientConfiguration.getTimeouts();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeouts.getConnectionTimeout())
+                .setConnectionRequestTimeout(timeouts.getRequestTimeout())
+                .setSocketTimeout(timeouts.getSocketTimeout())
+                .build();
+
+        final BBClientConfiguration.ConnectionPoolConfiguration poolConfig = this.bbClientConfiguration.getConnectionPool();
+        final PoolingHttpClientConnectionManager connectionManager = buildConnectionManager(sslContext, poolConfig);
+        registerPoolMetrics(connectionManager, registry);
 
+        final HttpClientBuilder builder = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                // The response sizes are counted on either side of the decompression
+                .addInterceptorFirst(ResponseSizeRecorder.compressedInterceptor())
+                .addInterceptorLast(ResponseSizeRecorder.decompressedInterceptor());
+        if (!this.bbClientConfiguration.isCompressResponses()) {
+            // Otherwise the client sends Accept-Encoding: gzip,deflate and decompresses the responses as they are read
+            builder.disableContentCompression();
+        }
+        if (poolConfig.getIdleTimeout() > 0) {
+            builder.evictIdleConnections(poolConfig.getIdleTimeout(), TimeUnit.MILLISECONDS);
+        }
+        if (poolConfig.isReuseTlsSessions()) {
+            // With a client certificate, connections are tagged with the TLS principal and are only handed back to requests with the same user token.
+            // Requests don't carry a token, so every request would open a new connection and do a full handshake.
+            // There is a single client identity, so the connections can be shared.
+            builder.disableConnectionState();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Helper function to build a {@link SSLContext} capable of authenticating with the Blue Button server using a client TLS certificate
+     *
+     * @param keyStore     {@link KeyStore} containing, at a minimum, the client tls certificate and private key
+     * @param keyStorePass password for keystore (default: "changeit")
+     * @return {@link SSLContext} with the client certificate
+     */
+    private static SSLContext buildSSLContext(KeyStore keyStore, char[] keyStorePass) {
         try {
             // BlueButton FHIR servers have a self-signed cert and require a client cert
-            sslContext = SSLContexts.custom()
+            return SSLContexts.custom()
                     .loadKeyMaterial(keyStore, keyStorePass)
                     .loadTrustMaterial(keyStore, new TrustSelfSignedStrategy())
                     .build();
@@ -145,18 +282,33 @@ public class BlueButtonClientModule<T extends Configuration & BlueButtonBundleCo
             logger.error(ex.getMessage());
             throw new BlueButtonClientSetupException(ex.getMessage(), ex);
         }
+    }
 
-        // Configure the socket timeout for the connection, incl. ssl tunneling
-        final BBClientConfiguration.TimeoutConfiguration timeouts = this.bbClientConfiguration.getTimeouts();
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(timeouts.getConnectionTimeout())
-                .setConnectionRequestTimeout(timeouts.getRequestTimeout())
-                .setSocketTimeout(timeouts.getSocketTimeout())
+    /**
+     * Helper function to build the pool of connections to the Blue Button server
+     *
+     * @param sslContext {@link SSLContext} with the client certificate
+     * @param poolConfig {@link BBClientConfiguration.ConnectionPoolConfiguration} to size the pool
+     * @return {@link PoolingHttpClientConnectionManager} for the client
+     */
+    private static PoolingHttpClientConnectionManager buildConnectionManager(SSLContext sslContext, BBClientConfiguration.ConnectionPoolConfiguration poolConfig) {
+        final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext))
                 .build();
 
-        return HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .setSSLContext(sslContext)
-                .build();
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(poolConfig.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(poolConfig.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(poolConfig.getValidateAfterInactivity());
+        return connectionManager;
+    }
+
+    private static void registerPoolMetrics(PoolingHttpClientConnectionManager connectionManager, MetricRegistry registry) {
+        final var metricMaker = new MetricMaker(registry, BlueButtonClientModule.class);
+        metricMaker.registerCachedGauge("leasedConnections", () -> connectionManager.getTotalStats().getLeased());
+        metricMaker.registerCachedGauge("pendingConnections", () -> connectionManager.getTotalStats().getPending());
+        metricMaker.registerCachedGauge("availableConnections", () -> connectionManager.getTotalStats().getAvailable());
+        metricMaker.registerCachedGauge("maxConnections", () -> connectionManager.getTotalStats().getMax());
     }
 }
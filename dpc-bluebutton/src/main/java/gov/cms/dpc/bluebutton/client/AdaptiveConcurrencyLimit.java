@@ -0,0 +1,147 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.bluebutton.exceptions.ConcurrencyLimitExceededException;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency based limit on the number of concurrent calls to BlueButton (additive increase, multiplicative decrease).
+ * <p>
+ * Each fast call grows the limit by {@code 1 / limit}, so the limit grows by about one for each round of calls at the limit.
+ * A call slower than the latency threshold, or one that BlueButton rejected as overloaded, shrinks the limit by the backoff ratio.
+ * The limit only shrinks once per round trip: the calls which were already in flight when it shrank ran under the old limit,
+ * so their slow responses do not shrink it again. Otherwise a burst of N slow calls would shrink the limit N times.
+ * Callers wait for a slot when the limit is reached, so the load on BlueButton follows how fast it answers rather than how many threads we have.
+ * Blocking callers wait on the limit itself, non-blocking callers are queued and handed a slot as one is released.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final long permitTimeoutNanos;
+    private final LongSupplier clock;
+
+    private double limit;
+    private int inFlight;
+    private boolean backedOff;
+    private long lastBackoff;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    public AdaptiveConcurrencyLimit(BBClientConfiguration.ConcurrencyLimitConfiguration config) {
+        this(config, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(BBClientConfiguration.ConcurrencyLimitConfiguration config, LongSupplier clock) {
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = Math.max(config.getMaxLimit(), minLimit);
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getLatencyThreshold());
+        this.backoffRatio = config.getBackoffRatio() / 100.0;
+        this.permitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getPermitTimeout());
+        this.limit = Math.min(Math.max(config.getInitialLimit(), minLimit), maxLimit);
+        this.clock = clock;
+    }
+
+    /**
+     * Wait for a slot within the limit. Every acquired slot must be given back with {@link #release(long, boolean)}.
+     *
+     * @throws ConcurrencyLimitExceededException if no slot is available within the permit timeout
+     */
+    public synchronized void acquire() {
+        final long deadline = System.nanoTime() + permitTimeoutNanos;
+        while (inFlight >= getLimit()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new ConcurrencyLimitExceededException(String.format("No slot for a BlueButton call within %d ms, limit is %d", TimeUnit.NANOSECONDS.toMillis(permitTimeoutNanos), getLimit()));
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrencyLimitExceededException("Interrupted waiting for a slot for a BlueButton call");
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Get a slot within the limit without blocking. Every acquired slot must be given back with {@link #release(long, boolean)}.
+     *
+     * @return a future completed once a slot is acquired, or with a {@link ConcurrencyLimitExceededException} if none is available within the permit timeout
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        final CompletableFuture<Void> slot = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < getLimit()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            waiters.add(slot);
+        }
+        CompletableFuture.delayedExecutor(permitTimeoutNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (this) {
+                // Already handed a slot
+                if (!waiters.remove(slot)) {
+                    return;
+                }
+            }
+            slot.completeExceptionally(new ConcurrencyLimitExceededException(String.format("No slot for a BlueButton call within %d ms, limit is %d", TimeUnit.NANOSECONDS.toMillis(permitTimeoutNanos), getLimit())));
+        });
+        return slot;
+    }
+
+    /**
+     * Give back a slot, and adjust the limit to the latency of the call.
+     *
+     * @param latencyNanos - how long the call took
+     * @param overloaded   - {@code true} BlueButton rejected the call as overloaded
+     */
+    public void release(long latencyNanos, boolean overloaded) {
+        final CompletableFuture<Void> next;
+        synchronized (this) {
+            next = releaseSlot(latencyNanos, overloaded);
+        }
+        // Outside of the lock, as completing the slot starts the waiting call
+        if (next != null) {
+            next.complete(null);
+        }
+    }
+
+    private CompletableFuture<Void> releaseSlot(long latencyNanos, boolean overloaded) {
+        inFlight--;
+        if (overloaded || latencyNanos > latencyThresholdNanos) {
+            final long now = clock.getAsLong();
+            final long start = now - latencyNanos;
+            // Calls started before the last backoff already count towards it
+            if (!backedOff || start - lastBackoff >= 0) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                backedOff = true;
+                lastBackoff = now;
+            }
+        } else if (inFlight + 1 >= getLimit() / 2) {
+            // Only grow while the limit is actually in use, otherwise an idle client would grow it up to the max
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+        if (waiters.isEmpty() || inFlight >= getLimit()) {
+            return null;
+        }
+        // The slot goes straight to the next non-blocking caller
+        inFlight++;
+        return waiters.poll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
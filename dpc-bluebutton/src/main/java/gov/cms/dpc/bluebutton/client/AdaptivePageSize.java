@@ -0,0 +1,159 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import org.hl7.fhir.dstu3.model.ResourceType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the number of resources to ask for in each page of a BlueButton search.
+ * <p>
+ * For each resource type, it keeps moving averages of the latency and size per resource of the pages fetched so far,
+ * and of the total number of resources of the searches of a single patient.
+ * The budget of a page is the largest count expected to stay within both the target latency and the target size, within the configured bounds.
+ * The latency per resource includes the fixed cost of a request, so the budget errs on the small side after small pages.
+ * <p>
+ * A first page asks for the typical total of a patient, with some headroom, so that most patients are fetched in a single page
+ * without light patients asking for far more than they have. A next page asks for the rest of the search, up to the budget.
+ * Until a resource type has been observed, or when disabled, pages ask for the configured resources count.
+ */
+public class AdaptivePageSize {
+
+    // Weight of the latest observation in the moving averages
+    private static final double SMOOTHING = 0.1;
+    private static final double TOTAL_HEADROOM = 1.25;
+    private static final long MB = 1024 * 1024;
+
+    private final BBClientConfiguration.PageSizeConfiguration config;
+    private final int defaultCount;
+    private final Map<ResourceType, Observations> observations = new ConcurrentHashMap<>();
+
+    public AdaptivePageSize(BBClientConfiguration.PageSizeConfiguration config, int defaultCount) {
+        this.config = config;
+        this.defaultCount = defaultCount;
+    }
+
+    /**
+     * The count of the first page of a search
+     *
+     * @param resourceType - the type of the resources searched for
+     * @param patients     - the number of patients searched for
+     * @return the count to ask for
+     */
+    public int firstPageCount(ResourceType resourceType, int patients) {
+        if (!config.isEnabled()) {
+            return defaultCount;
+        }
+        final Observations observed = observations.get(resourceType);
+        if (observed == null) {
+            return defaultCount;
+        }
+        final double total = observed.getTotal();
+        final int budget = observed.getBudget();
+        if (Double.isNaN(total)) {
+            return budget;
+        }
+        return clamp((int) Math.ceil(total * patients * TOTAL_HEADROOM), budget);
+    }
+
+    /**
+     * The count of a next page of a search
+     *
+     * @param resourceType - the type of the resources searched for
+     * @param remaining    - the number of resources of the search not fetched yet
+     * @return the count to ask for
+     */
+    public int nextPageCount(ResourceType resourceType, int remaining) {
+        if (!config.isEnabled()) {
+            return defaultCount;
+        }
+        final Observations observed = observations.get(resourceType);
+        return clamp(remaining, observed == null ? defaultCount : observed.getBudget());
+    }
+
+    /**
+     * Whether the counts are adapted at all
+     *
+     * @return {@code true} the counts are adapted
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Record a page fetched from BlueButton
+     *
+     * @param resourceType - the type of the resources of the page
+     * @param resources    - the number of resources of the page
+     * @param latencyNanos - the duration of the request
+     * @param bytes        - the decompressed size of the page, 0 if unknown
+     */
+    public void recordPage(ResourceType resourceType, int resources, long latencyNanos, long bytes) {
+        if (resources > 0) {
+            observations.computeIfAbsent(resourceType, type -> new Observations()).recordPage(resources, latencyNanos, bytes);
+        }
+    }
+
+    /**
+     * Record the total number of resources of a patient
+     *
+     * @param resourceType - the type of the resources
+     * @param total        - the total of the search of a single patient
+     */
+    public void recordTotal(ResourceType resourceType, int total) {
+        observations.computeIfAbsent(resourceType, type -> new Observations()).recordTotal(total);
+    }
+
+    /**
+     * The current budget of a page, for the metrics
+     *
+     * @param resourceType - the type of the resources
+     * @return the largest count a page may ask for
+     */
+    public int getBudget(ResourceType resourceType) {
+        final Observations observed = observations.get(resourceType);
+        return observed == null ? defaultCount : observed.getBudget();
+    }
+
+    private int clamp(int count, int budget) {
+        return Math.max(config.getMinCount(), Math.min(count, budget));
+    }
+
+    private class Observations {
+        private double nanosPerResource = Double.NaN;
+        private double bytesPerResource = Double.NaN;
+        private double total = Double.NaN;
+
+        synchronized void recordPage(int resources, long latencyNanos, long bytes) {
+            nanosPerResource = average(nanosPerResource, (double) latencyNanos / resources);
+            if (bytes > 0) {
+                bytesPerResource = average(bytesPerResource, (double) bytes / resources);
+            }
+        }
+
+        synchronized void recordTotal(int count) {
+            total = average(total, count);
+        }
+
+        synchronized double getTotal() {
+            return total;
+        }
+
+        synchronized int getBudget() {
+            if (Double.isNaN(nanosPerResource)) {
+                return Math.max(config.getMinCount(), Math.min(defaultCount, config.getMaxCount()));
+            }
+            double budget = TimeUnit.MILLISECONDS.toNanos(config.getTargetLatency()) / nanosPerResource;
+            if (!Double.isNaN(bytesPerResource)) {
+                budget = Math.min(budget, config.getTargetSize() * MB / bytesPerResource);
+            }
+            return (int) Math.max(config.getMinCount(), Math.min(budget, config.getMaxCount()));
+        }
+
+        private double average(double current, double observed) {
+            return Double.isNaN(current) ? observed : current + SMOOTHING * (observed - current);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package gov.cms.dpc.bluebutton.client;
+
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.hl7.fhir.dstu3.model.Patient;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of the {@link BlueButtonClient}.
+ * <p>
+ * Requests return right away, and the returned futures are completed when Blue Button responds.
+ * No thread is held while a request is in flight. Errors complete the futures exceptionally,
+ * with the same exceptions as the {@link BlueButtonClient} (e.g. {@link ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException}).
+ */
+public interface BlueButtonAsyncClient {
+
+    CompletableFuture<Patient> requestPatientFromServer(String patientID);
+
+    CompletableFuture<Bundle> requestPatientFromServerByMbiHash(String mbiHash);
+
+    CompletableFuture<Bundle> requestEOBFromServer(String patientID);
+
+    CompletableFuture<Bundle> requestCoverageFromServer(String patientID);
+
+    CompletableFuture<Bundle> requestEOBFromServer(String patientID, OffsetDateTime since);
+
+    CompletableFuture<Bundle> requestCoverageFromServer(String patientID, OffsetDateTime since);
+
+    CompletableFuture<Bundle> requestPatientsFromServer(List<String> patientIDs);
+
+    CompletableFuture<Bundle> requestEOBFromServer(List<String> patientIDs, OffsetDateTime since);
+
+    CompletableFuture<Bundle> requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since);
+
+    CompletableFuture<Bundle> requestNextBundleFromServer(Bundle bundle);
+
+    CompletableFuture<CapabilityStatement> requestCapabilityStatement();
+}
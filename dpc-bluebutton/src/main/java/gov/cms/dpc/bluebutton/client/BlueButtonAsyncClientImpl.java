@@ -0,0 +1,287 @@
+package gov.cms.dpc.bluebutton.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.fhir.DPCIdentifierSystem;
+import org.apache.http.client.utils.URIBuilder;
+import org.hl7.fhir.dstu3.model.*;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Non-blocking {@link BlueButtonAsyncClient}, backed by the JDK {@link HttpClient}.
+ * <p>
+ * The requests are the ones made by the {@link BlueButtonClientImpl}, and go through the same {@link BlueButtonCalls}:
+ * they share its circuit breaker, rate limiter, concurrency limit, response cache and adaptive page size, and are reported under the same metrics.
+ * Waiting for a rate limiter permit or a concurrency slot does not block either.
+ */
+public class BlueButtonAsyncClientImpl implements BlueButtonAsyncClient {
+
+    private static final String ACCEPT_FHIR = EncodingEnum.JSON.getResourceContentTypeNonLegacy();
+
+    private static final Logger logger = LoggerFactory.getLogger(BlueButtonAsyncClientImpl.class);
+
+    private final HttpClient client;
+    private final FhirContext fhirContext;
+    private final BBClientConfiguration config;
+    private final BlueButtonCalls calls;
+    private final String serverBaseUrl;
+
+    private static String formBeneficiaryID(String fromPatientID) {
+        return "Patient/" + fromPatientID;
+    }
+
+    public BlueButtonAsyncClientImpl(HttpClient client, FhirContext fhirContext, BBClientConfiguration config, BlueButtonCalls calls) {
+        this.client = client;
+        this.fhirContext = fhirContext;
+        this.config = config;
+        this.calls = calls;
+        this.serverBaseUrl = config.getServerBaseUrl().endsWith("/") ? config.getServerBaseUrl() : config.getServerBaseUrl() + "/";
+    }
+
+    @Override
+    public CompletableFuture<Patient> requestPatientFromServer(String patientID) {
+        return calls.getResponseCache().getAsync(ResourceType.Patient, patientID, Patient.class, () -> {
+            logger.debug("Attempting to fetch patient ID {} from baseURL: {}", patientID, serverBaseUrl);
+            return request(BlueButtonCalls.REQUEST_PATIENT_METRIC, resolve("Patient/" + patientID), Patient.class);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestPatientFromServerByMbiHash(String mbiHash) {
+        // The hash identifies the patient as well as the MBI does, so it is not logged
+        logger.debug("Attempting to fetch patient by MBI hash from baseURL: {}", serverBaseUrl);
+        final URIBuilder uri = resolve("Patient")
+                .addParameter("identifier", DPCIdentifierSystem.MBI_HASH.getSystem() + "|" + mbiHash);
+        return request(BlueButtonCalls.REQUEST_PATIENT_METRIC, uri, Bundle.class);
+    }
+
+    /**
+     * Queries Blue Button server for Explanations of Benefit associated with a given patient.
+     * See {@link BlueButtonClientImpl#requestEOBFromServer(String)} for the handling of missing patients.
+     *
+     * @param patientID The requested patient's ID
+     * @return future {@link Bundle} Containing a number (possibly 0) of {@link ExplanationOfBenefit} objects
+     */
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(String patientID) {
+        return requestEOBFromServer(patientID, null);
+    }
+
+    /**
+     * Queries Blue Button server for Coverage associated with a given patient.
+     * See {@link BlueButtonClientImpl#requestCoverageFromServer(String)} for the handling of missing patients.
+     *
+     * @param patientID The requested patient's ID
+     * @return future {@link Bundle} Containing a number (possibly 0) of {@link Coverage} objects
+     */
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(String patientID) {
+        return calls.getResponseCache().getAsync(ResourceType.Coverage, patientID, Bundle.class, () -> requestCoverageFromServer(patientID, null));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(String patientID, OffsetDateTime since) {
+        logger.debug("Attempting to fetch EOBs for patient ID {} from baseURL: {}", patientID, serverBaseUrl);
+        final URIBuilder uri = resolve("ExplanationOfBenefit")
+                .addParameter("patient", patientID)
+                .addParameter("excludeSAMHSA", "true");
+        return fetchBundle(BlueButtonCalls.REQUEST_EOB_METRIC, ResourceType.ExplanationOfBenefit, uri, patientID, since);
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(String patientID, OffsetDateTime since) {
+        logger.debug("Attempting to fetch Coverage for patient ID {} from baseURL: {}", patientID, serverBaseUrl);
+        final URIBuilder uri = resolve("Coverage")
+                .addParameter("beneficiary", formBeneficiaryID(patientID));
+        return fetchBundle(BlueButtonCalls.REQUEST_COVERAGE_METRIC, ResourceType.Coverage, uri, patientID, since);
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestPatientsFromServer(List<String> patientIDs) {
+        logger.debug("Attempting to fetch {} patients from baseURL: {}", patientIDs.size(), serverBaseUrl);
+        final URIBuilder uri = resolve("Patient")
+                .addParameter("_id", String.join(",", patientIDs));
+        return searchBundle(BlueButtonCalls.REQUEST_PATIENT_METRIC, uri, null, calls.getPageSize().firstPageCount(ResourceType.Patient, patientIDs.size()));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(List<String> patientIDs, OffsetDateTime since) {
+        logger.debug("Attempting to fetch EOBs for {} patients from baseURL: {}", patientIDs.size(), serverBaseUrl);
+        final URIBuilder uri = resolve("ExplanationOfBenefit")
+                .addParameter("patient", String.join(",", patientIDs))
+                .addParameter("excludeSAMHSA", "true");
+        return searchBundle(BlueButtonCalls.REQUEST_EOB_METRIC, uri, since, calls.getPageSize().firstPageCount(ResourceType.ExplanationOfBenefit, patientIDs.size()));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since) {
+        logger.debug("Attempting to fetch Coverage for {} patients from baseURL: {}", patientIDs.size(), serverBaseUrl);
+        final URIBuilder uri = resolve("Coverage")
+                .addParameter("beneficiary", patientIDs.stream().map(BlueButtonAsyncClientImpl::formBeneficiaryID).collect(Collectors.joining(",")));
+        return searchBundle(BlueButtonCalls.REQUEST_COVERAGE_METRIC, uri, since, calls.getPageSize().firstPageCount(ResourceType.Coverage, patientIDs.size()));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestNextBundleFromServer(Bundle bundle) {
+        return calls.instrumentAsyncCall(BlueButtonCalls.REQUEST_NEXT_METRIC, sizes -> {
+            final var nextURL = calls.resizeNextPage(bundle);
+            logger.debug("Attempting to fetch next bundle from url: {}", nextURL);
+            return send(URI.create(nextURL), Bundle.class, sizes);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CapabilityStatement> requestCapabilityStatement() {
+        return request(BlueButtonCalls.REQUEST_CAPABILITIES_METRIC, resolve("metadata"), CapabilityStatement.class);
+    }
+
+    /**
+     * Read the first page of the resources of a single patient. See {@link BlueButtonCalls#checkPatientBundle(ResourceType, Bundle, String, OffsetDateTime)}.
+     *
+     * @param metricName   - The name of the method
+     * @param resourceType - the type of the resources
+     * @param uri          - the search, without the paging and last updated parameters
+     * @param patientID    - id of patient
+     * @param since        - the lower bound of the last updated time of the resources, null for all the resources
+     * @return future FHIR Bundle resource
+     */
+    private CompletableFuture<Bundle> fetchBundle(String metricName, ResourceType resourceType, URIBuilder uri, String patientID, OffsetDateTime since) {
+        addSearchParameters(uri, since, calls.getPageSize().firstPageCount(resourceType, 1));
+        return calls.instrumentAsyncCall(metricName, sizes -> send(build(uri), Bundle.class, sizes)
+                .thenApply(bundle -> calls.checkPatientBundle(resourceType, bundle, patientID, since)));
+    }
+
+    /**
+     * Search for a FHIR Bundle from BlueButton.
+     *
+     * @param metricName - The name of the method
+     * @param uri        - the search, without the paging and last updated parameters
+     * @param since      - the lower bound of the last updated time of the resources, null for all the resources
+     * @param count      - the number of resources to ask for
+     * @return future FHIR Bundle resource, which may have no entries
+     */
+    private CompletableFuture<Bundle> searchBundle(String metricName, URIBuilder uri, OffsetDateTime since, int count) {
+        addSearchParameters(uri, since, count);
+        return request(metricName, uri, Bundle.class);
+    }
+
+    private void addSearchParameters(URIBuilder uri, OffsetDateTime since, int count) {
+        if (since != null) {
+            // Same parameter value as the HAPI client sends for the last updated range
+            uri.addParameter("_lastUpdated", new DateRangeParam(Date.from(since.toInstant()), null).getLowerBound().getValueAsQueryToken(fhirContext));
+        }
+        uri.addParameter("_count", String.valueOf(count));
+    }
+
+    private <T extends IBaseResource> CompletableFuture<T> request(String metricName, URIBuilder uri, Class<T> resourceClass) {
+        return calls.instrumentAsyncCall(metricName, sizes -> send(build(uri), resourceClass, sizes));
+    }
+
+    /**
+     * Send a request to Blue Button, and parse its response.
+     * Responses are asked for compressed when the client is configured to, and decompressed here, as the HAPI client does.
+     *
+     * @param uri           - The {@link URI} to request
+     * @param resourceClass - The FHIR resource returned by the request
+     * @param sizes         - records the size of the response
+     * @param <T>           - the type returned by the request
+     * @return future of the returned resource
+     */
+    private <T extends IBaseResource> CompletableFuture<T> send(URI uri, Class<T> resourceClass, ResponseSizeRecorder.Sizes sizes) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .header("Accept", ACCEPT_FHIR)
+                .GET();
+        if (config.isCompressResponses()) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        if (config.getTimeouts().getSocketTimeout() != null) {
+            request.timeout(Duration.ofMillis(config.getTimeouts().getSocketTimeout()));
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> parseResponse(response, resourceClass, sizes));
+    }
+
+    /**
+     * Parse a Blue Button response, in the encoding it was returned with.
+     * Error statuses are turned into the matching {@link BaseServerResponseException}, as the blocking client does.
+     *
+     * @param response      - the {@link HttpResponse} to parse
+     * @param resourceClass - the FHIR resource expected
+     * @param sizes         - records the size of the response
+     * @param <T>           - the type of the FHIR resource
+     * @return the parsed resource
+     */
+    private <T extends IBaseResource> T parseResponse(HttpResponse<byte[]> response, Class<T> resourceClass, ResponseSizeRecorder.Sizes sizes) {
+        final byte[] body = decompress(response);
+        sizes.addCompressed(response.body().length);
+        sizes.addDecompressed(body.length);
+        if (response.statusCode() >= 300) {
+            throw BaseServerResponseException.newInstance(response.statusCode(),
+                    String.format("Blue Button returned HTTP %d for %s", response.statusCode(), response.uri()));
+        }
+        final String content = new String(body, StandardCharsets.UTF_8);
+        EncodingEnum encoding = response.headers().firstValue("Content-Type")
+                .map(EncodingEnum::forContentType)
+                .orElse(null);
+        if (encoding == null) {
+            encoding = EncodingEnum.detectEncodingNoDefault(content);
+        }
+        if (encoding == null) {
+            encoding = EncodingEnum.JSON;
+        }
+        // Parsers are not thread-safe, and are cheap to create from the shared context
+        return encoding.newParser(fhirContext).parseResource(resourceClass, content);
+    }
+
+    private static byte[] decompress(HttpResponse<byte[]> response) {
+        final boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzipped) {
+            return response.body();
+        }
+        try (final GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to decompress the response of " + response.uri(), e);
+        }
+    }
+
+    private URIBuilder resolve(String path) {
+        try {
+            return new URIBuilder(serverBaseUrl + path);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid Blue Button URL: " + serverBaseUrl + path, e);
+        }
+    }
+
+    private static URI build(URIBuilder uri) {
+        try {
+            return uri.build();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid Blue Button URL", e);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package gov.cms.dpc.bluebutton.client;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.common.utils.MetricMaker;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The calls to Blue Button, shared by the {@link BlueButtonClientImpl} and the {@link BlueButtonAsyncClientImpl}.
+ * <p>
+ * Both clients go through the same circuit breaker, rate limiter and concurrency limit, so the request budget holds whichever client makes the calls.
+ * They also share the response cache, the adaptive page size, and the request metrics, which are registered under the {@link BlueButtonClientImpl} names.
+ */
+public class BlueButtonCalls {
+
+    static final String REQUEST_PATIENT_METRIC = "requestPatient";
+    static final String REQUEST_EOB_METRIC = "requestEOB";
+    static final String REQUEST_COVERAGE_METRIC = "requestCoverage";
+    static final String REQUEST_NEXT_METRIC = "requestNextBundle";
+    static final String REQUEST_CAPABILITIES_METRIC = "requestCapabilities";
+    private static final List<String> REQUEST_METRICS = List.of(REQUEST_PATIENT_METRIC, REQUEST_EOB_METRIC, REQUEST_COVERAGE_METRIC, REQUEST_NEXT_METRIC, REQUEST_CAPABILITIES_METRIC);
+    private static final String COMPRESSED_BYTES_SUFFIX = "CompressedBytes";
+    private static final String DECOMPRESSED_BYTES_SUFFIX = "DecompressedBytes";
+
+    private static final List<ResourceType> PAGED_RESOURCE_TYPES = List.of(ResourceType.ExplanationOfBenefit, ResourceType.Coverage);
+    private static final List<String> PAGE_COUNT_PARAMS = List.of("_count", "count");
+    private static final String START_INDEX_PARAM = "startIndex";
+
+    // Statuses BlueButton answers with when it is overloaded
+    private static final Set<Integer> OVERLOADED_STATUSES = Set.of(429, 503);
+
+    private static final Logger logger = LoggerFactory.getLogger(BlueButtonCalls.class);
+
+    private final Map<String, Timer> timers;
+    private final Map<String, Meter> exceptionMeters;
+    private final Map<String, Meter> byteMeters;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final BlueButtonResponseCache responseCache;
+    private final AdaptivePageSize pageSize;
+
+    public BlueButtonCalls(BBClientConfiguration config, BlueButtonResponseCache responseCache, MetricRegistry metricRegistry, CircuitBreaker circuitBreaker, AdaptiveConcurrencyLimit concurrencyLimit) {
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimit = concurrencyLimit;
+        this.responseCache = responseCache;
+        final var metricMaker = new MetricMaker(metricRegistry, BlueButtonClientImpl.class);
+        this.exceptionMeters = metricMaker.registerMeters(REQUEST_METRICS);
+        this.timers = metricMaker.registerTimers(REQUEST_METRICS);
+        this.byteMeters = metricMaker.registerMeters(REQUEST_METRICS.stream()
+                .flatMap(name -> Stream.of(name + COMPRESSED_BYTES_SUFFIX, name + DECOMPRESSED_BYTES_SUFFIX))
+                .collect(Collectors.toList()));
+
+        // A single limiter is shared by every thread using the clients, so the upstream request budget holds regardless of our concurrency
+        final BBClientConfiguration.RateLimitConfiguration rateLimit = config.getRateLimit();
+        this.rateLimiter = RateLimiter.of("bb-client", RateLimiterConfig.custom()
+                .limitForPeriod(rateLimit.getRequestsPerSecond())
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofMillis(rateLimit.getPermitTimeout()))
+                .build());
+        metricMaker.registerCachedGauge("rateLimitAvailablePermits", () -> rateLimiter.getMetrics().getAvailablePermissions());
+        metricMaker.registerCachedGauge("rateLimitWaitingThreads", () -> rateLimiter.getMetrics().getNumberOfWaitingThreads());
+        this.pageSize = new AdaptivePageSize(config.getPageSize(), config.getResourcesCount());
+        for (final ResourceType resourceType : PAGED_RESOURCE_TYPES) {
+            metricMaker.registerCachedGauge(MetricRegistry.name("pageSizeBudget", resourceType.name()), () -> pageSize.getBudget(resourceType));
+            metricMaker.registerCachedGauge(MetricRegistry.name("firstPageCount", resourceType.name()), () -> pageSize.firstPageCount(resourceType, 1));
+        }
+    }
+
+    public BlueButtonResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public AdaptivePageSize getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Instrument a call to Blue Button.
+     * The call is rejected straight away when the circuit breaker is open. Otherwise it waits for a permit from the rate limiter,
+     * then for a slot within the concurrency limit, before making the call. The waits are not included in the call timer.
+     * The outcome and latency of the call are recorded by both the circuit breaker and the concurrency limit.
+     * The bytes received, before and after decompression, are recorded for each type of call.
+     *
+     * @param metricName - The name of the method
+     * @param supplier - the call as lambda to instrumented
+     * @param <T> - the type returned by the call
+     * @return the value returned by the supplier (i.e. call)
+     * @throws CallNotPermittedException if the circuit breaker is open
+     * @throws RequestNotPermitted if a permit is not available within the configured timeout
+     * @throws gov.cms.dpc.bluebutton.exceptions.ConcurrencyLimitExceededException if a slot is not available within the configured timeout
+     */
+    public <T> T instrumentCall(String metricName, Supplier<T> supplier) {
+        circuitBreaker.acquirePermission();
+        try {
+            RateLimiter.waitForPermission(rateLimiter);
+            concurrencyLimit.acquire();
+        } catch (RuntimeException ex) {
+            // Blue Button was not called, so there is nothing for the breaker to record
+            circuitBreaker.releasePermission();
+            throw ex;
+        }
+        final var timerContext = timers.get(metricName).time();
+        ResponseSizeRecorder.start();
+        final long start = System.nanoTime();
+        try {
+            final T result = supplier.get();
+            recordSuccess(result, System.nanoTime() - start, ResponseSizeRecorder.current());
+            return result;
+        } catch(Exception ex) {
+            recordError(metricName, ex, System.nanoTime() - start);
+            throw ex;
+        } finally {
+            timerContext.stop();
+            recordBytes(metricName, ResponseSizeRecorder.stop());
+        }
+    }
+
+    /**
+     * Instrument a non-blocking call to Blue Button, see {@link #instrumentCall(String, Supplier)}.
+     * Neither wait holds a thread: the call is scheduled once the rate limiter permit is available, then once a slot is free.
+     * The call counts the bytes it receives in the given {@link ResponseSizeRecorder.Sizes}.
+     *
+     * @param metricName - The name of the method
+     * @param call - makes the call, and completes the returned future with its result
+     * @param <T> - the type returned by the call
+     * @return future of the value returned by the call, completed with the same exceptions as {@link #instrumentCall(String, Supplier)} throws
+     */
+    public <T> CompletableFuture<T> instrumentAsyncCall(String metricName, Function<ResponseSizeRecorder.Sizes, CompletableFuture<T>> call) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(CallNotPermittedException.createCallNotPermittedException(circuitBreaker));
+        }
+        final long permitWait = rateLimiter.reservePermission();
+        if (permitWait < 0) {
+            circuitBreaker.releasePermission();
+            return CompletableFuture.failedFuture(RequestNotPermitted.createRequestNotPermitted(rateLimiter));
+        }
+        final CompletableFuture<Void> permit = permitWait == 0 ?
+                CompletableFuture.completedFuture(null) :
+                CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(permitWait, TimeUnit.NANOSECONDS));
+
+        return permit
+                .thenCompose(ignored -> concurrencyLimit.acquireAsync())
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        circuitBreaker.releasePermission();
+                    }
+                })
+                .thenCompose(ignored -> {
+                    final var timerContext = timers.get(metricName).time();
+                    final ResponseSizeRecorder.Sizes sizes = new ResponseSizeRecorder.Sizes();
+                    final long start = System.nanoTime();
+                    CompletableFuture<T> result;
+                    try {
+                        result = call.apply(sizes);
+                    } catch (RuntimeException ex) {
+                        result = CompletableFuture.failedFuture(ex);
+                    }
+                    return result.whenComplete((value, ex) -> {
+                        if (ex == null) {
+                            recordSuccess(value, System.nanoTime() - start, sizes);
+                        } else {
+                            recordError(metricName, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex, System.nanoTime() - start);
+                        }
+                        timerContext.stop();
+                        recordBytes(metricName, sizes);
+                    });
+                });
+    }
+
+    /**
+     * Check the first page of the resources of a single patient, and record its total for the adaptive page size.
+     *
+     * @param resourceType - the type of the resources
+     * @param bundle - the first page
+     * @param patientID - id of patient
+     * @param since - the lower bound of the last updated time of the resources, null for all the resources
+     * @return the bundle
+     * @throws ResourceNotFoundException if the patient does not exist
+     */
+    public Bundle checkPatientBundle(ResourceType resourceType, Bundle bundle, String patientID, OffsetDateTime since) {
+        if (since != null) {
+            // A patient without updates has no entries either, and the total is not the typical total of a patient
+            return bundle;
+        }
+
+        // Case where patientID does not exist at all
+        if(!bundle.hasEntry()) {
+            throw new ResourceNotFoundException("No patient found with ID: " + patientID);
+        }
+        if (bundle.hasTotal()) {
+            pageSize.recordTotal(resourceType, bundle.getTotal());
+        }
+        return bundle;
+    }
+
+    /**
+     * Form the URL of the next page of a bundle, asking for the rest of the search up to the adaptive page size.
+     * The next link is used as is when the page size is not adapted, or when it does not have the expected paging parameters.
+     *
+     * @param bundle - the bundle to fetch the next page of
+     * @return the URL of the next page
+     */
+    public String resizeNextPage(Bundle bundle) {
+        final String nextURL = bundle.getLink(Bundle.LINK_NEXT).getUrl();
+        if (!pageSize.isEnabled() || !bundle.hasTotal() || !bundle.hasEntry()) {
+            return nextURL;
+        }
+        try {
+            final URIBuilder builder = new URIBuilder(nextURL);
+            final Optional<String> startIndex = getQueryParam(builder, START_INDEX_PARAM);
+            final Optional<String> countParam = PAGE_COUNT_PARAMS.stream().filter(name -> getQueryParam(builder, name).isPresent()).findFirst();
+            if (startIndex.isEmpty() || countParam.isEmpty()) {
+                return nextURL;
+            }
+            final ResourceType resourceType = bundle.getEntryFirstRep().getResource().getResourceType();
+            final int remaining = bundle.getTotal() - Integer.parseInt(startIndex.get());
+            return builder.setParameter(countParam.get(), String.valueOf(pageSize.nextPageCount(resourceType, remaining)))
+                    .build()
+                    .toString();
+        } catch (URISyntaxException | NumberFormatException e) {
+            logger.warn("Unable to resize the next page {}", nextURL, e);
+            return nextURL;
+        }
+    }
+
+    private static Optional<String> getQueryParam(URIBuilder builder, String name) {
+        return builder.getQueryParams().stream()
+                .filter(pair -> pair.getName().equals(name))
+                .map(NameValuePair::getValue)
+                .findFirst();
+    }
+
+    private void recordSuccess(Object result, long duration, ResponseSizeRecorder.Sizes sizes) {
+        recordPage(result, duration, sizes.getDecompressed());
+        circuitBreaker.onSuccess(duration, TimeUnit.NANOSECONDS);
+        concurrencyLimit.release(duration, false);
+    }
+
+    private void recordError(String metricName, Throwable ex, long duration) {
+        circuitBreaker.onError(duration, TimeUnit.NANOSECONDS, ex);
+        concurrencyLimit.release(duration, isOverloaded(ex));
+        exceptionMeters.get(metricName).mark();
+    }
+
+    private void recordBytes(String metricName, ResponseSizeRecorder.Sizes sizes) {
+        byteMeters.get(metricName + COMPRESSED_BYTES_SUFFIX).mark(sizes.getCompressed());
+        byteMeters.get(metricName + DECOMPRESSED_BYTES_SUFFIX).mark(sizes.getDecompressed());
+    }
+
+    /**
+     * Record the latency and size of a page, for the adaptive page size
+     *
+     * @param result   - the result of a call
+     * @param duration - the duration of the call, in nanoseconds
+     * @param bytes    - the decompressed size of the responses of the call
+     */
+    private void recordPage(Object result, long duration, long bytes) {
+        if (!(result instanceof Bundle) || !((Bundle) result).hasEntry()) {
+            return;
+        }
+        final Bundle bundle = (Bundle) result;
+        pageSize.recordPage(bundle.getEntryFirstRep().getResource().getResourceType(), bundle.getEntry().size(), duration, bytes);
+    }
+
+    /**
+     * Whether an error of a call is one that the circuit breaker should count as a failure.
+     * Client errors, such as a patient not found, are the expected answer to some calls and do not mean Blue Button is degraded.
+     *
+     * @param ex - the error of the call
+     * @return {@code true} the error is a failure of Blue Button
+     */
+    public static boolean isFailure(Throwable ex) {
+        if (ex instanceof BaseServerResponseException) {
+            final int status = ((BaseServerResponseException) ex).getStatusCode();
+            return status >= 500 || OVERLOADED_STATUSES.contains(status);
+        }
+        return true;
+    }
+
+    private static boolean isOverloaded(Throwable ex) {
+        return ex instanceof BaseServerResponseException && OVERLOADED_STATUSES.contains(((BaseServerResponseException) ex).getStatusCode());
+    }
+}
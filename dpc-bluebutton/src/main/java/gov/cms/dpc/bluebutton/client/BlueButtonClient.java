@@ -7,6 +7,8 @@ import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
 
 import java.security.GeneralSecurityException;
+import java.time.OffsetDateTime;
+import java.util.List;
 
 
 public interface BlueButtonClient {
@@ -19,6 +21,53 @@ public interface BlueButtonClient {
 
     Bundle requestCoverageFromServer(String patientID) throws ResourceNotFoundException;
 
+    /**
+     * Search for the Explanations of Benefit of a patient which were updated since a point in time, with a lastUpdated filter.
+     * A patient without any updated resources has an empty result.
+     *
+     * @param patientID - the ID of the patient
+     * @param since     - the lower bound of the last updated time of the resources, null to search for all the resources
+     * @return the first page of the EOBs found
+     */
+    Bundle requestEOBFromServer(String patientID, OffsetDateTime since);
+
+    /**
+     * Search for the Coverage of a patient which was updated since a point in time, see {@link #requestEOBFromServer(String, OffsetDateTime)}.
+     *
+     * @param patientID - the ID of the patient
+     * @param since     - the lower bound of the last updated time of the resources, null to search for all the resources
+     * @return the first page of the Coverage found
+     */
+    Bundle requestCoverageFromServer(String patientID, OffsetDateTime since);
+
+    /**
+     * Search for several patients in a single request.
+     * Patients which do not exist are missing from the result, rather than failing the request.
+     *
+     * @param patientIDs - the IDs of the patients
+     * @return the first page of the {@link Patient}s found
+     */
+    Bundle requestPatientsFromServer(List<String> patientIDs);
+
+    /**
+     * Search for the Explanations of Benefit of several patients in a single request, with a multi-valued patient parameter.
+     * The pages of the result mix the resources of the patients, and patients without any resources are missing from it.
+     *
+     * @param patientIDs - the IDs of the patients
+     * @param since      - the lower bound of the last updated time of the resources, null to search for all the resources
+     * @return the first page of the EOBs found
+     */
+    Bundle requestEOBFromServer(List<String> patientIDs, OffsetDateTime since);
+
+    /**
+     * Search for the Coverage of several patients in a single request, see {@link #requestEOBFromServer(List, OffsetDateTime)}.
+     *
+     * @param patientIDs - the IDs of the patients
+     * @param since      - the lower bound of the last updated time of the resources, null to search for all the resources
+     * @return the first page of the Coverage found
+     */
+    Bundle requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since);
+
     Bundle requestNextBundleFromServer(Bundle bundle) throws ResourceNotFoundException;
 
     CapabilityStatement requestCapabilityStatement() throws ResourceNotFoundException;
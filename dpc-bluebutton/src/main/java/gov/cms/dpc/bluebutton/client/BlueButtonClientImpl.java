@@ -5,12 +5,10 @@ import ca.uhn.fhir.rest.gclient.ICriterion;
 import ca.uhn.fhir.rest.gclient.IParam;
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
-import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
 import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
-import gov.cms.dpc.common.utils.MetricMaker;
 import gov.cms.dpc.fhir.DPCIdentifierSystem;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.util.encoders.Hex;
@@ -26,39 +24,31 @@ import javax.crypto.spec.PBEKeySpec;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.KeySpec;
+import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 
-public class BlueButtonClientImpl implements BlueButtonClient {
-
-    private static final String REQUEST_PATIENT_METRIC = "requestPatient";
-    private static final String REQUEST_EOB_METRIC = "requestEOB";
-    private static final String REQUEST_COVERAGE_METRIC = "requestCoverage";
-    private static final String REQUEST_NEXT_METRIC = "requestNextBundle";
-    private static final String REQUEST_CAPABILITIES_METRIC = "requestCapabilities";
-    private static final List<String> REQUEST_METRICS = List.of(REQUEST_PATIENT_METRIC, REQUEST_EOB_METRIC, REQUEST_COVERAGE_METRIC, REQUEST_NEXT_METRIC, REQUEST_CAPABILITIES_METRIC);
+public class BlueButtonClientImpl implements BlueButtonClient, AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(BlueButtonClientImpl.class);
 
     private IGenericClient client;
     private BBClientConfiguration config;
-    private Map<String, Timer> timers;
-    private Map<String, Meter> exceptionMeters;
+    private BlueButtonCalls calls;
     private SecretKeyFactory secretKeyFactory = null;
     private byte[] bfdHashPepper;
     private int bfdHashIter;
+    private MbiHashCache mbiHashCache;
 
     private static String formBeneficiaryID(String fromPatientID) {
         return "Patient/" + fromPatientID;
     }
 
-    public BlueButtonClientImpl(IGenericClient client, BBClientConfiguration config, MetricRegistry metricRegistry) {
+    public BlueButtonClientImpl(IGenericClient client, BBClientConfiguration config, MetricRegistry metricRegistry, BlueButtonCalls calls) {
         this.client = client;
         this.config = config;
-        final var metricMaker = new MetricMaker(metricRegistry, BlueButtonClientImpl.class);
-        this.exceptionMeters = metricMaker.registerMeters(REQUEST_METRICS);
-        this.timers = metricMaker.registerTimers(REQUEST_METRICS);
+        this.calls = calls;
 
         String alg = "PBKDF2WithHmacSHA256";
         try {
@@ -66,6 +56,7 @@ public class BlueButtonClientImpl implements BlueButtonClient {
             bfdHashIter = config.getBfdHashIter();
             if (config.getBfdHashPepper() != null) {
                 bfdHashPepper = Hex.decode(config.getBfdHashPepper());
+                mbiHashCache = new MbiHashCache(config.getMbiHashCache(), bfdHashPepper, metricRegistry);
             }
         } catch (NoSuchAlgorithmException e) {
             logger.error("Secret key factory could not be created due to invalid algorithm: {}", alg);
@@ -81,12 +72,14 @@ public class BlueButtonClientImpl implements BlueButtonClient {
      */
     @Override
     public Patient requestPatientFromServer(String patientID) throws ResourceNotFoundException {
-        logger.debug("Attempting to fetch patient ID {} from baseURL: {}", patientID, client.getServerBase());
-        return instrumentCall(REQUEST_PATIENT_METRIC, () -> client
-                .read()
-                .resource(Patient.class)
-                .withId(patientID)
-                .execute());
+        return calls.getResponseCache().get(ResourceType.Patient, patientID, Patient.class, () -> {
+            logger.debug("Attempting to fetch patient ID {} from baseURL: {}", patientID, client.getServerBase());
+            return calls.instrumentCall(BlueButtonCalls.REQUEST_PATIENT_METRIC, () -> client
+                    .read()
+                    .resource(Patient.class)
+                    .withId(patientID)
+                    .execute());
+        });
     }
 
     /**
@@ -97,8 +90,9 @@ public class BlueButtonClientImpl implements BlueButtonClient {
      */
     @Override
     public Bundle requestPatientFromServerByMbiHash(String mbiHash) throws ResourceNotFoundException {
-        logger.debug("Attempting to fetch patient with MBI hash {} from baseURL: {}", mbiHash, client.getServerBase());
-        return instrumentCall(REQUEST_PATIENT_METRIC, () -> client
+        // The hash identifies the patient as well as the MBI does, so it is not logged
+        logger.debug("Attempting to fetch patient by MBI hash from baseURL: {}", client.getServerBase());
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_PATIENT_METRIC, () -> client
                 .search()
                 .forResource(Patient.class)
                 .where(Patient.IDENTIFIER.exactly().systemAndIdentifier(DPCIdentifierSystem.MBI_HASH.getSystem(), mbiHash))
@@ -125,16 +119,22 @@ public class BlueButtonClientImpl implements BlueButtonClient {
      */
     @Override
     public Bundle requestEOBFromServer(String patientID) {
+        return requestEOBFromServer(patientID, null);
+    }
+
+    @Override
+    public Bundle requestEOBFromServer(String patientID, OffsetDateTime since) {
         logger.debug("Attempting to fetch EOBs for patient ID {} from baseURL: {}", patientID, client.getServerBase());
 
         List<ICriterion<? extends IParam>> criteria = new ArrayList<ICriterion<? extends IParam>>();
         criteria.add(ExplanationOfBenefit.PATIENT.hasId(patientID));
         criteria.add(new TokenClientParam("excludeSAMHSA").exactly().code("true"));
 
-        return instrumentCall(REQUEST_EOB_METRIC, () ->
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_EOB_METRIC, () ->
                 fetchBundle(ExplanationOfBenefit.class,
                         criteria,
-                        patientID));
+                        patientID,
+                        since));
     }
 
     /**
@@ -156,30 +156,70 @@ public class BlueButtonClientImpl implements BlueButtonClient {
      */
     @Override
     public Bundle requestCoverageFromServer(String patientID) throws ResourceNotFoundException {
+        return calls.getResponseCache().get(ResourceType.Coverage, patientID, Bundle.class, () -> requestCoverageFromServer(patientID, null));
+    }
+
+    @Override
+    public Bundle requestCoverageFromServer(String patientID, OffsetDateTime since) {
         logger.debug("Attempting to fetch Coverage for patient ID {} from baseURL: {}", patientID, client.getServerBase());
 
         List<ICriterion<? extends IParam>> criteria = new ArrayList<ICriterion<? extends IParam>>();
         criteria.add(Coverage.BENEFICIARY.hasId(formBeneficiaryID(patientID)));
 
-        return instrumentCall(REQUEST_COVERAGE_METRIC, () ->
-                fetchBundle(Coverage.class, criteria, patientID));
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_COVERAGE_METRIC, () ->
+                fetchBundle(Coverage.class, criteria, patientID, since));
+    }
+
+    @Override
+    public Bundle requestPatientsFromServer(List<String> patientIDs) {
+        logger.debug("Attempting to fetch {} patients from baseURL: {}", patientIDs.size(), client.getServerBase());
+
+        List<ICriterion<? extends IParam>> criteria = new ArrayList<ICriterion<? extends IParam>>();
+        criteria.add(new TokenClientParam("_id").exactly().codes(patientIDs));
+
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_PATIENT_METRIC, () ->
+                searchBundle(Patient.class, criteria, null, calls.getPageSize().firstPageCount(ResourceType.Patient, patientIDs.size())));
+    }
+
+    @Override
+    public Bundle requestEOBFromServer(List<String> patientIDs, OffsetDateTime since) {
+        logger.debug("Attempting to fetch EOBs for {} patients from baseURL: {}", patientIDs.size(), client.getServerBase());
+
+        List<ICriterion<? extends IParam>> criteria = new ArrayList<ICriterion<? extends IParam>>();
+        criteria.add(ExplanationOfBenefit.PATIENT.hasAnyOfIds(patientIDs));
+        criteria.add(new TokenClientParam("excludeSAMHSA").exactly().code("true"));
+
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_EOB_METRIC, () ->
+                searchBundle(ExplanationOfBenefit.class, criteria, since, calls.getPageSize().firstPageCount(ResourceType.ExplanationOfBenefit, patientIDs.size())));
+    }
+
+    @Override
+    public Bundle requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since) {
+        logger.debug("Attempting to fetch Coverage for {} patients from baseURL: {}", patientIDs.size(), client.getServerBase());
+
+        List<ICriterion<? extends IParam>> criteria = new ArrayList<ICriterion<? extends IParam>>();
+        criteria.add(Coverage.BENEFICIARY.hasAnyOfIds(patientIDs.stream().map(BlueButtonClientImpl::formBeneficiaryID).collect(Collectors.toList())));
+
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_COVERAGE_METRIC, () ->
+                searchBundle(Coverage.class, criteria, since, calls.getPageSize().firstPageCount(ResourceType.Coverage, patientIDs.size())));
     }
 
     @Override
     public Bundle requestNextBundleFromServer(Bundle bundle) throws ResourceNotFoundException {
-        return instrumentCall(REQUEST_NEXT_METRIC, () -> {
-            var nextURL = bundle.getLink(Bundle.LINK_NEXT).getUrl();
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_NEXT_METRIC, () -> {
+            var nextURL = calls.resizeNextPage(bundle);
             logger.debug("Attempting to fetch next bundle from url: {}", nextURL);
             return client
                     .loadPage()
-                    .next(bundle)
+                    .byUrl(nextURL)
+                    .andReturnBundle(Bundle.class)
                     .execute();
         });
     }
 
     @Override
     public CapabilityStatement requestCapabilityStatement() throws ResourceNotFoundException {
-        return instrumentCall(REQUEST_CAPABILITIES_METRIC, () -> client
+        return calls.instrumentCall(BlueButtonCalls.REQUEST_CAPABILITIES_METRIC, () -> client
                         .capabilities()
                         .ofType(CapabilityStatement.class)
                         .execute());
@@ -196,22 +236,59 @@ public class BlueButtonClientImpl implements BlueButtonClient {
             throw new GeneralSecurityException("Secret key factory is null");
         }
 
+        if (mbiHashCache == null) {
+            return computeMbiHash(mbi);
+        }
+        return mbiHashCache.get(mbi, this::computeMbiHash);
+    }
+
+    /**
+     * Write the MBI hashes which are not yet in the store
+     */
+    @Override
+    public void close() {
+        if (mbiHashCache != null) {
+            mbiHashCache.close();
+        }
+    }
+
+    private String computeMbiHash(String mbi) throws GeneralSecurityException {
         KeySpec keySpec = new PBEKeySpec(mbi.toCharArray(), bfdHashPepper, bfdHashIter, 256);
         SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
         return Hex.toHexString(secretKey.getEncoded());
     }
 
     /**
-     * Read a FHIR Bundle from BlueButton. Limits the returned size by resourcesPerRequest.
+     * Read a FHIR Bundle from BlueButton. Limits the returned size by the adaptive page size.
      *
      * @param resourceClass - FHIR Resource class
      * @param criteria - For the resource class the correct criteria that match the patientID
      * @param patientID - id of patient
+     * @param since - the lower bound of the last updated time of the resources, null for all the resources
      * @return FHIR Bundle resource
      */
     private <T extends IBaseResource> Bundle fetchBundle(Class<T> resourceClass,
                                                          List<ICriterion<? extends IParam>> criteria,
-                                                         String patientID) {
+                                                         String patientID,
+                                                         OffsetDateTime since) {
+        final ResourceType resourceType = ResourceType.fromCode(resourceClass.getSimpleName());
+        final Bundle bundle = searchBundle(resourceClass, criteria, since, calls.getPageSize().firstPageCount(resourceType, 1));
+        return calls.checkPatientBundle(resourceType, bundle, patientID, since);
+    }
+
+    /**
+     * Search for a FHIR Bundle from BlueButton.
+     *
+     * @param resourceClass - FHIR Resource class
+     * @param criteria - the criteria of the search
+     * @param since - the lower bound of the last updated time of the resources, null for all the resources
+     * @param count - the number of resources to ask for
+     * @return FHIR Bundle resource, which may have no entries
+     */
+    private <T extends IBaseResource> Bundle searchBundle(Class<T> resourceClass,
+                                                          List<ICriterion<? extends IParam>> criteria,
+                                                          OffsetDateTime since,
+                                                          int count) {
         IQuery<IBaseBundle> query = client.search()
                 .forResource(resourceClass)
                 .where(criteria.remove(0));
@@ -219,36 +296,12 @@ public class BlueButtonClientImpl implements BlueButtonClient {
         for (ICriterion<? extends IParam> criterion : criteria) {
             query = query.and(criterion);
         }
+        if (since != null) {
+            query = query.lastUpdated(new DateRangeParam(Date.from(since.toInstant()), null));
+        }
 
-        final Bundle bundle = query.count(config.getResourcesCount())
+        return query.count(count)
                 .returnBundle(Bundle.class)
                 .execute();
-
-        // Case where patientID does not exist at all
-        if(!bundle.hasEntry()) {
-            throw new ResourceNotFoundException("No patient found with ID: " + patientID);
-        }
-        return bundle;
-    }
-
-    /**
-     * Instrument a call to Blue Button.
-     *
-     * @param metricName - The name of the method
-     * @param supplier - the call as lambda to instrumented
-     * @param <T> - the type returned by the call
-     * @return the value returned by the supplier (i.e. call)
-     */
-    private <T> T instrumentCall(String metricName, Supplier<T> supplier) {
-        final var timerContext = timers.get(metricName).time();
-        try {
-            return supplier.get();
-        } catch(Exception ex) {
-            final var exceptionMeter = exceptionMeters.get(metricName);
-            exceptionMeter.mark();
-            throw ex;
-        } finally {
-            timerContext.stop();
-        }
     }
 }
@@ -22,7 +22,10 @@ public class BlueButtonClientManager implements Managed {
 
     @Override
     public void stop() throws Exception {
-        // Not used
+        // Releases what the client holds, such as the MBI hashes not yet written to their store
+        if (client instanceof AutoCloseable) {
+            ((AutoCloseable) client).close();
+        }
     }
 
     public BlueButtonClient getClient() {
@@ -0,0 +1,124 @@
+package gov.cms.dpc.bluebutton.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.common.cache.MeteredCache;
+import gov.cms.dpc.common.utils.MetricMaker;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Short lived cache of the resources returned by BlueButton, keyed by resource type and beneficiary.
+ * <p>
+ * Resources are held as serialized JSON, which is much smaller than the parsed resources, and a fresh copy is parsed on every hit,
+ * so callers can modify what they get. The cache is bounded by the total size of the serialized resources,
+ * and entries expire once they are older than the freshness window, however often they are read.
+ * <p>
+ * Bundles are only cached when they are complete, a bundle linking to a next page is always fetched, so that the pages of a search are consistent.
+ */
+public class BlueButtonResponseCache {
+
+    private static final int MB = 1024 * 1024;
+
+    private final FhirContext context;
+    private final MeteredCache<String, byte[]> cache;
+
+    /**
+     * Create a cache. Returns the fetched resources unchanged when the cache is disabled.
+     *
+     * @param config   - the {@link BBClientConfiguration.ResponseCacheConfiguration}
+     * @param context  - the {@link FhirContext} to serialize resources with
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     */
+    public BlueButtonResponseCache(BBClientConfiguration.ResponseCacheConfiguration config, FhirContext context, MetricRegistry registry) {
+        this(config, context, registry, Ticker.systemTicker());
+    }
+
+    BlueButtonResponseCache(BBClientConfiguration.ResponseCacheConfiguration config, FhirContext context, MetricRegistry registry, Ticker ticker) {
+        this.context = context;
+        this.cache = new MeteredCache<>(config.isEnabled(), () -> Caffeine.newBuilder()
+                .maximumWeight((long) config.getMaximumSize() * MB)
+                .weigher((String key, byte[] value) -> value.length)
+                .expireAfterWrite(Duration.ofSeconds(config.getFreshness()))
+                .ticker(ticker)
+                .build(), registry, BlueButtonResponseCache.class);
+        new MetricMaker(registry, BlueButtonResponseCache.class).registerCachedGauge("weight", cache::weightedSize);
+    }
+
+    /**
+     * Get a resource of a beneficiary, from the cache if there is a fresh copy
+     *
+     * @param resourceType  - the type of the resource, as part of the key
+     * @param patientID     - the ID of the beneficiary
+     * @param resourceClass - the class of the resource
+     * @param fetcher       - fetches the resource from BlueButton on a miss
+     * @param <T>           - the type of the resource
+     * @return the resource
+     */
+    public <T extends IBaseResource> T get(ResourceType resourceType, String patientID, Class<T> resourceClass, Supplier<T> fetcher) {
+        // Skip serializing the resource when it will not be cached
+        if (!cache.isEnabled()) {
+            return fetcher.get();
+        }
+        final String key = resourceType.name() + "/" + patientID;
+        final T cached = getCached(key, resourceClass);
+        if (cached != null) {
+            return cached;
+        }
+        final T resource = fetcher.get();
+        put(key, resource);
+        return resource;
+    }
+
+    /**
+     * Get a resource of a beneficiary without blocking, from the cache if there is a fresh copy. See {@link #get(ResourceType, String, Class, Supplier)}.
+     *
+     * @param resourceType  - the type of the resource, as part of the key
+     * @param patientID     - the ID of the beneficiary
+     * @param resourceClass - the class of the resource
+     * @param fetcher       - fetches the resource from BlueButton on a miss
+     * @param <T>           - the type of the resource
+     * @return future of the resource
+     */
+    public <T extends IBaseResource> CompletableFuture<T> getAsync(ResourceType resourceType, String patientID, Class<T> resourceClass, Supplier<CompletableFuture<T>> fetcher) {
+        if (!cache.isEnabled()) {
+            return fetcher.get();
+        }
+        final String key = resourceType.name() + "/" + patientID;
+        final T cached = getCached(key, resourceClass);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetcher.get().thenApply(resource -> {
+            put(key, resource);
+            return resource;
+        });
+    }
+
+    private <T extends IBaseResource> T getCached(String key, Class<T> resourceClass) {
+        final byte[] cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        return context.newJsonParser().parseResource(resourceClass, new String(cached, StandardCharsets.UTF_8));
+    }
+
+    private void put(String key, IBaseResource resource) {
+        if (isCacheable(resource)) {
+            cache.put(key, context.newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean isCacheable(IBaseResource resource) {
+        return !(resource instanceof Bundle) || ((Bundle) resource).getLink(Bundle.LINK_NEXT) == null;
+    }
+}
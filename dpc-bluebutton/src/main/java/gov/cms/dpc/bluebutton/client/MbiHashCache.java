@@ -0,0 +1,267 @@
+package gov.cms.dpc.bluebutton.client;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.common.cache.MeteredCache;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time limited cache of the MBI hashes computed by {@link BlueButtonClientImpl#hashMbi(String)}.
+ * <p>
+ * The PBKDF2 hash of an MBI is expensive to compute by design, and the same MBIs are looked up again and again.
+ * Entries are keyed by a HMAC-SHA256 of the MBI (with the same pepper), so that neither the cache nor its store hold an MBI.
+ * <p>
+ * When a store path is configured, the hashes are also appended to that file and loaded back on startup, so the cache survives restarts.
+ * New hashes are written by a background thread every flush interval, and on {@link #close()}, so the lookups never wait on the file.
+ * The store is rewritten with only the entries of the cache on startup, and whenever it grows past {@link #COMPACTION_RATIO} times the cache size,
+ * so evicted and expired entries do not pile up in it. Neither the MBIs nor their hashes are ever logged.
+ */
+public class MbiHashCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MbiHashCache.class);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    // Each compaction rewrites at most the cache size, so appending stays amortized constant time
+    static final int COMPACTION_RATIO = 2;
+
+    /**
+     * Computes the hash of an MBI on a cache miss
+     */
+    @FunctionalInterface
+    public interface HashFunction {
+        String hash(String mbi) throws GeneralSecurityException;
+    }
+
+    private final MeteredCache<String, CachedHash> cache;
+    private final SecretKeySpec keySpec;
+    private final long expireAfterMillis;
+    private final Path storePath;
+    private final long maxStoredEntries;
+    private final Queue<Map.Entry<String, CachedHash>> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+    private BufferedWriter storeWriter;
+    private long storedEntries;
+
+    public MbiHashCache(BBClientConfiguration.MbiHashCacheConfiguration config, byte[] pepper, MetricRegistry metricRegistry) {
+        this.keySpec = new SecretKeySpec(pepper, HMAC_ALGORITHM);
+        this.expireAfterMillis = Duration.ofMinutes(config.getExpireAfter()).toMillis();
+        this.cache = new MeteredCache<>(config.getMaximumSize() > 0, () -> Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfter(new CreationTimeExpiry())
+                .build(), metricRegistry, MbiHashCache.class);
+
+        // Nothing would be loaded back into a disabled cache, so there is no point in storing its hashes
+        this.storePath = config.getStorePath() == null || !cache.isEnabled() ? null : Paths.get(config.getStorePath());
+        this.maxStoredEntries = (long) COMPACTION_RATIO * config.getMaximumSize();
+        if (this.storePath == null) {
+            this.flusher = null;
+            return;
+        }
+        openStore();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "mbi-hash-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, config.getFlushInterval(), config.getFlushInterval(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get the hash of the given MBI, computing it on a miss
+     *
+     * @param mbi          - the MBI to hash
+     * @param hashFunction - the {@link HashFunction} to compute the hash with
+     * @return - the hash of the MBI
+     * @throws GeneralSecurityException - if the hash cannot be computed
+     */
+    public String get(String mbi, HashFunction hashFunction) throws GeneralSecurityException {
+        final String key = cacheKey(mbi);
+        final CachedHash cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.hash;
+        }
+        // Concurrent misses of the same MBI may compute it twice, which is harmless
+        final CachedHash computed = new CachedHash(hashFunction.hash(mbi), System.currentTimeMillis());
+        cache.put(key, computed);
+        if (storePath != null) {
+            pending.add(Map.entry(key, computed));
+        }
+        return computed.hash;
+    }
+
+    /**
+     * Write the hashes computed since the last flush to the store, compacting it if it has grown too large
+     */
+    synchronized void flush() {
+        if (storeWriter == null) {
+            pending.clear();
+            return;
+        }
+        try {
+            Map.Entry<String, CachedHash> entry;
+            while ((entry = pending.poll()) != null) {
+                writeEntry(storeWriter, entry.getKey(), entry.getValue());
+                storedEntries++;
+            }
+            storeWriter.flush();
+            if (storedEntries > maxStoredEntries) {
+                compactStore();
+            }
+        } catch (IOException e) {
+            logger.error("Cannot write to the MBI hash store at {}, hashes will only be cached in memory", storePath, e);
+            closeStore();
+        }
+    }
+
+    /**
+     * Stop the background writes, and write the remaining hashes to the store
+     */
+    @Override
+    public void close() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        synchronized (this) {
+            flush();
+            closeStore();
+        }
+    }
+
+    private String cacheKey(String mbi) throws GeneralSecurityException {
+        // Mac instances are not thread safe, and are cheap compared to the PBKDF2 hash
+        final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(keySpec);
+        return Hex.toHexString(mac.doFinal(mbi.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Load the unexpired entries of the store, then compact it and keep it open for appending.
+     * The store is disabled if it cannot be read or written, the cache still works in memory.
+     */
+    private synchronized void openStore() {
+        final long now = System.currentTimeMillis();
+        try {
+            if (Files.exists(storePath)) {
+                for (String line : Files.readAllLines(storePath, StandardCharsets.UTF_8)) {
+                    final String[] fields = line.split(" ");
+                    if (fields.length != 3) {
+                        continue;
+                    }
+                    final CachedHash entry = new CachedHash(fields[1], Long.parseLong(fields[2]));
+                    if (entry.createdAt + expireAfterMillis > now) {
+                        cache.put(fields[0], entry);
+                    }
+                }
+            }
+
+            compactStore();
+            logger.info("Loaded {} MBI hashes from {}", storedEntries, storePath);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Cannot use the MBI hash store at {}, hashes will only be cached in memory", storePath, e);
+            closeStore();
+        }
+    }
+
+    /**
+     * Rewrite the store with only the entries of the cache, which drops the evicted and expired ones, and reopen it for appending.
+     * The pending hashes are already in the cache, so they are written as well. Must be called while holding the lock.
+     *
+     * @throws IOException - if the store cannot be rewritten
+     */
+    private void compactStore() throws IOException {
+        if (storeWriter != null) {
+            storeWriter.close();
+            storeWriter = null;
+        }
+        final Path compacted = Files.createTempFile(storePath.toAbsolutePath().getParent(), "mbi-hash", ".tmp");
+        long written = 0;
+        pending.clear();
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CachedHash> entry : cache.asMap().entrySet()) {
+                writeEntry(writer, entry.getKey(), entry.getValue());
+                written++;
+            }
+        }
+        restrictPermissions(compacted);
+        Files.move(compacted, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.storeWriter = Files.newBufferedWriter(storePath, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        this.storedEntries = written;
+        logger.debug("Compacted the MBI hash store to {} entries", written);
+    }
+
+    private void closeStore() {
+        if (storeWriter != null) {
+            try {
+                storeWriter.close();
+            } catch (IOException e) {
+                logger.debug("Cannot close the MBI hash store", e);
+            }
+        }
+        storeWriter = null;
+    }
+
+    private static void writeEntry(BufferedWriter writer, String key, CachedHash entry) throws IOException {
+        writer.write(key + " " + entry.hash + " " + entry.createdAt);
+        writer.newLine();
+    }
+
+    private static void restrictPermissions(Path path) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, keep the default permissions
+        }
+    }
+
+    private static class CachedHash {
+        private final String hash;
+        private final long createdAt;
+
+        private CachedHash(String hash, long createdAt) {
+            this.hash = hash;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Expire entries relative to when their hash was computed, including those loaded from the store
+     */
+    private class CreationTimeExpiry implements Expiry<String, CachedHash> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedHash value, long currentTime) {
+            final long remaining = value.createdAt + expireAfterMillis - System.currentTimeMillis();
+            return Duration.ofMillis(Math.max(remaining, 0)).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedHash value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedHash value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package gov.cms.dpc.bluebutton.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.hl7.fhir.dstu3.model.Patient;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Async variant of the {@link MockBlueButtonClient}. Returns futures completed with the same test data.
+ */
+public class MockBlueButtonAsyncClient implements BlueButtonAsyncClient {
+
+    private final MockBlueButtonClient client;
+
+    public MockBlueButtonAsyncClient(FhirContext fhirContext) {
+        this.client = new MockBlueButtonClient(fhirContext);
+    }
+
+    @Override
+    public CompletableFuture<Patient> requestPatientFromServer(String patientID) {
+        return complete(() -> client.requestPatientFromServer(patientID));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestPatientFromServerByMbiHash(String mbiHash) {
+        return complete(() -> client.requestPatientFromServerByMbiHash(mbiHash));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(String patientID) {
+        return complete(() -> client.requestEOBFromServer(patientID));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(String patientID) {
+        return complete(() -> client.requestCoverageFromServer(patientID));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(String patientID, OffsetDateTime since) {
+        return complete(() -> client.requestEOBFromServer(patientID, since));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(String patientID, OffsetDateTime since) {
+        return complete(() -> client.requestCoverageFromServer(patientID, since));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestPatientsFromServer(List<String> patientIDs) {
+        return complete(() -> client.requestPatientsFromServer(patientIDs));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestEOBFromServer(List<String> patientIDs, OffsetDateTime since) {
+        return complete(() -> client.requestEOBFromServer(patientIDs, since));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since) {
+        return complete(() -> client.requestCoverageFromServer(patientIDs, since));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> requestNextBundleFromServer(Bundle bundle) {
+        return complete(() -> client.requestNextBundleFromServer(bundle));
+    }
+
+    @Override
+    public CompletableFuture<CapabilityStatement> requestCapabilityStatement() {
+        return complete(client::requestCapabilityStatement);
+    }
+
+    /**
+     * Complete a future with the result of a call, or its exception
+     *
+     * @param supplier - the call to the mock client
+     * @param <T>      - the type returned by the call
+     * @return the completed future
+     */
+    private static <T> CompletableFuture<T> complete(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+}
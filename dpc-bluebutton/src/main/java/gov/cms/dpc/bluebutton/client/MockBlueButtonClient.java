@@ -16,7 +16,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
+import java.time.OffsetDateTime;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class MockBlueButtonClient implements BlueButtonClient {
 
@@ -57,6 +60,59 @@ public class MockBlueButtonClient implements BlueButtonClient {
         return loadBundle(SAMPLE_COVERAGE_PATH_PREFIX, patientID);
     }
 
+    @Override
+    public Bundle requestEOBFromServer(String patientID, OffsetDateTime since) {
+        if (since == null) {
+            return requestEOBFromServer(patientID);
+        }
+        final Bundle bundle = requestEOBFromServer(List.of(patientID), since);
+        return bundle.setTotal(bundle.getEntry().size());
+    }
+
+    @Override
+    public Bundle requestCoverageFromServer(String patientID, OffsetDateTime since) {
+        if (since == null) {
+            return requestCoverageFromServer(patientID);
+        }
+        final Bundle bundle = requestCoverageFromServer(List.of(patientID), since);
+        return bundle.setTotal(bundle.getEntry().size());
+    }
+
+    @Override
+    public Bundle requestPatientsFromServer(List<String> patientIDs) {
+        final Bundle bundle = new Bundle();
+        patientIDs.stream()
+                .filter(TEST_PATIENT_IDS::contains)
+                .forEach(patientID -> bundle.addEntry().setResource(requestPatientFromServer(patientID)));
+        return bundle;
+    }
+
+    @Override
+    public Bundle requestEOBFromServer(List<String> patientIDs, OffsetDateTime since) {
+        // All the pages of each patient are combined, so the result is a single page
+        final Bundle bundle = new Bundle();
+        patientIDs.stream()
+                .filter(TEST_PATIENT_IDS::contains)
+                .forEach(patientID -> {
+                    Bundle page = requestEOBFromServer(patientID);
+                    bundle.getEntry().addAll(entriesSince(page, since));
+                    while (page.getLink(Bundle.LINK_NEXT) != null) {
+                        page = requestNextBundleFromServer(page);
+                        bundle.getEntry().addAll(entriesSince(page, since));
+                    }
+                });
+        return bundle;
+    }
+
+    @Override
+    public Bundle requestCoverageFromServer(List<String> patientIDs, OffsetDateTime since) {
+        final Bundle bundle = new Bundle();
+        patientIDs.stream()
+                .filter(TEST_PATIENT_IDS::contains)
+                .forEach(patientID -> bundle.getEntry().addAll(entriesSince(requestCoverageFromServer(patientID), since)));
+        return bundle;
+    }
+
     @Override
     public Bundle requestNextBundleFromServer(Bundle bundle) throws ResourceNotFoundException {
         // This is code is very specific to the bb-test-data directory and its contents
@@ -85,6 +141,28 @@ public class MockBlueButtonClient implements BlueButtonClient {
         return "";
     }
 
+    /**
+     * Filter the entries of a bundle like a lastUpdated search parameter would. The sample resources do not have a last updated time of their own,
+     * so they are considered updated when their bundle was.
+     *
+     * @param bundle - the bundle to filter
+     * @param since - the lower bound of the last updated time, null to keep all the entries
+     * @return the entries updated since the given time
+     */
+    private static List<Bundle.BundleEntryComponent> entriesSince(Bundle bundle, OffsetDateTime since) {
+        if (since == null) {
+            return bundle.getEntry();
+        }
+        final Date bundleUpdated = bundle.getMeta().getLastUpdated();
+        return bundle.getEntry().stream()
+                .filter(entry -> {
+                    final Date updated = entry.getResource().getMeta().getLastUpdated();
+                    final Date lastUpdated = updated == null ? bundleUpdated : updated;
+                    return lastUpdated == null || !lastUpdated.toInstant().isBefore(since.toInstant());
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Read a Bundle FHIR Resource from jar's Bundle resource file.
      *
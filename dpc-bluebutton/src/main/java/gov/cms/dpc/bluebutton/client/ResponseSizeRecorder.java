@@ -0,0 +1,163 @@
+package gov.cms.dpc.bluebutton.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Records the size of the responses from Blue Button, as received on the wire (compressed when Blue Button compresses them) and once decompressed.
+ * <p>
+ * The bytes are counted as the response body is read. The HAPI client reads the body on the thread making the call,
+ * so the sizes are accumulated for the current thread, between {@link #start()} and {@link #stop()}.
+ */
+public class ResponseSizeRecorder {
+
+    private static final ThreadLocal<Sizes> sizes = ThreadLocal.withInitial(Sizes::new);
+
+    private ResponseSizeRecorder() {
+        // Not used
+    }
+
+    /**
+     * Interceptor counting the bytes received on the wire. It has to run before the response is decompressed.
+     *
+     * @return the {@link HttpResponseInterceptor}
+     */
+    public static HttpResponseInterceptor compressedInterceptor() {
+        return (response, context) -> wrapEntity(response, sizes.get()::addCompressed);
+    }
+
+    /**
+     * Interceptor counting the bytes of the decompressed response. It has to run after the response is decompressed.
+     *
+     * @return the {@link HttpResponseInterceptor}
+     */
+    public static HttpResponseInterceptor decompressedInterceptor() {
+        return (response, context) -> wrapEntity(response, sizes.get()::addDecompressed);
+    }
+
+    /**
+     * Start recording the responses of a call on the current thread
+     */
+    public static void start() {
+        sizes.get().reset();
+    }
+
+    /**
+     * The sizes of the responses received on the current thread since {@link #start()}, without stopping
+     *
+     * @return the sizes so far
+     */
+    public static Sizes current() {
+        final Sizes current = sizes.get();
+        return new Sizes(current.getCompressed(), current.getDecompressed());
+    }
+
+    /**
+     * Stop recording the responses of a call on the current thread
+     *
+     * @return the sizes of the responses received since {@link #start()}
+     */
+    public static Sizes stop() {
+        final Sizes recorded = current();
+        sizes.get().reset();
+        return recorded;
+    }
+
+    private static void wrapEntity(HttpResponse response, LongConsumer counter) {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+        response.setEntity(new HttpEntityWrapper(entity) {
+            @Override
+            public InputStream getContent() throws IOException {
+                return new CountingInputStream(super.getContent(), counter);
+            }
+        });
+    }
+
+    /**
+     * The number of bytes of the responses of a call
+     */
+    public static class Sizes {
+        private long compressed;
+        private long decompressed;
+
+        Sizes() {
+            this(0, 0);
+        }
+
+        Sizes(long compressed, long decompressed) {
+            this.compressed = compressed;
+            this.decompressed = decompressed;
+        }
+
+        public long getCompressed() {
+            return compressed;
+        }
+
+        public long getDecompressed() {
+            return decompressed;
+        }
+
+        void addCompressed(long count) {
+            compressed += count;
+        }
+
+        void addDecompressed(long count) {
+            decompressed += count;
+        }
+
+        void reset() {
+            compressed = 0;
+            decompressed = 0;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer counter;
+
+        CountingInputStream(InputStream in, LongConsumer counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count > 0) {
+                counter.accept(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long count = super.skip(n);
+            counter.accept(count);
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // Reset would count the bytes twice
+            return false;
+        }
+    }
+}
@@ -26,11 +26,49 @@ public class BBClientConfiguration {
     @Max(1000)
     private int resourcesCount = 100;
 
+    // Ask for gzip or deflate compressed responses, which are decompressed as they are parsed
+    private boolean compressResponses = true;
+
     @Valid
     @NotNull
     @JsonProperty("keyStore")
     private KeystoreConfiguration keystore = new KeystoreConfiguration();
 
+    @Valid
+    @NotNull
+    @JsonProperty("rateLimit")
+    private RateLimitConfiguration rateLimit = new RateLimitConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("connectionPool")
+    private ConnectionPoolConfiguration connectionPool = new ConnectionPoolConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("circuitBreaker")
+    private CircuitBreakerConfiguration circuitBreaker = new CircuitBreakerConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("concurrencyLimit")
+    private ConcurrencyLimitConfiguration concurrencyLimit = new ConcurrencyLimitConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("pageSize")
+    private PageSizeConfiguration pageSize = new PageSizeConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("responseCache")
+    private ResponseCacheConfiguration responseCache = new ResponseCacheConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty("mbiHashCache")
+    private MbiHashCacheConfiguration mbiHashCache = new MbiHashCacheConfiguration();
+
     @NotEmpty
     private String bfdHashPepper;
 
@@ -43,10 +81,46 @@ public class BBClientConfiguration {
 
     public int getResourcesCount() { return resourcesCount; }
 
+    public boolean isCompressResponses() {
+        return compressResponses;
+    }
+
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
     public KeystoreConfiguration getKeystore() {
         return keystore;
     }
 
+    public RateLimitConfiguration getRateLimit() {
+        return rateLimit;
+    }
+
+    public ConnectionPoolConfiguration getConnectionPool() {
+        return connectionPool;
+    }
+
+    public CircuitBreakerConfiguration getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public ConcurrencyLimitConfiguration getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public PageSizeConfiguration getPageSize() {
+        return pageSize;
+    }
+
+    public ResponseCacheConfiguration getResponseCache() {
+        return responseCache;
+    }
+
+    public MbiHashCacheConfiguration getMbiHashCache() {
+        return mbiHashCache;
+    }
+
     public BBClientConfiguration() {
         // Not used
     }
@@ -106,6 +180,419 @@ public class BBClientConfiguration {
         }
     }
 
+    /**
+     * Request budget for all calls made to BlueButton by a single client, regardless of how many threads are making requests.
+     */
+    public static class RateLimitConfiguration {
+
+        @Min(1)
+        private int requestsPerSecond = 100;
+        @Min(0)
+        private int permitTimeout = 30000; // ms
+
+        RateLimitConfiguration() {
+            // Jackson required
+        }
+
+        public int getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(int requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public int getPermitTimeout() {
+            return permitTimeout;
+        }
+
+        public void setPermitTimeout(int permitTimeout) {
+            this.permitTimeout = permitTimeout;
+        }
+    }
+
+    /**
+     * Pool of connections to BlueButton, shared by all the threads of a client.
+     * BlueButton is a single route, so the per route limit is the number of concurrent requests the client can make.
+     */
+    public static class ConnectionPoolConfiguration {
+
+        @Min(1)
+        private int maxConnections = 100;
+        @Min(1)
+        private int maxConnectionsPerRoute = 100;
+        @Min(-1)
+        private int validateAfterInactivity = 2000; // ms, -1 to disable
+        @Min(0)
+        private int idleTimeout = 30000; // ms, 0 to keep idle connections
+        private boolean reuseTlsSessions = true;
+        @Min(1)
+        private int asyncThreads = 4; // Threads handling the responses of the async client
+
+        ConnectionPoolConfiguration() {
+            // Jackson required
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConnectionsPerRoute() {
+            return maxConnectionsPerRoute;
+        }
+
+        public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        }
+
+        public int getValidateAfterInactivity() {
+            return validateAfterInactivity;
+        }
+
+        public void setValidateAfterInactivity(int validateAfterInactivity) {
+            this.validateAfterInactivity = validateAfterInactivity;
+        }
+
+        public int getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(int idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public boolean isReuseTlsSessions() {
+            return reuseTlsSessions;
+        }
+
+        public void setReuseTlsSessions(boolean reuseTlsSessions) {
+            this.reuseTlsSessions = reuseTlsSessions;
+        }
+
+        public int getAsyncThreads() {
+            return asyncThreads;
+        }
+
+        public void setAsyncThreads(int asyncThreads) {
+            this.asyncThreads = asyncThreads;
+        }
+    }
+
+    /**
+     * Circuit breaker around the calls to BlueButton.
+     * The breaker opens when too many calls fail or are slow, and calls are rejected until BlueButton has had time to recover.
+     */
+    public static class CircuitBreakerConfiguration {
+
+        @Min(1)
+        @Max(100)
+        private int failureRateThreshold = 50; // % of failed calls to open the breaker
+        @Min(1)
+        @Max(100)
+        private int slowCallRateThreshold = 80; // % of slow calls to open the breaker
+        @Min(1)
+        private int slowCallDuration = 10000; // ms for a call to be slow
+        @Min(1)
+        private int slidingWindowSize = 100; // Number of calls the rates are computed over
+        @Min(1)
+        private int minimumNumberOfCalls = 20; // Number of calls before the rates are computed
+        @Min(1)
+        private int waitDurationInOpenState = 30000; // ms to reject calls before trying BlueButton again
+        @Min(1)
+        private int permittedCallsInHalfOpenState = 10; // Number of trial calls to decide whether to close the breaker
+
+        CircuitBreakerConfiguration() {
+            // Jackson required
+        }
+
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public int getSlowCallDuration() {
+            return slowCallDuration;
+        }
+
+        public void setSlowCallDuration(int slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public void setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+        }
+
+        public int getMinimumNumberOfCalls() {
+            return minimumNumberOfCalls;
+        }
+
+        public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+        }
+
+        public int getWaitDurationInOpenState() {
+            return waitDurationInOpenState;
+        }
+
+        public void setWaitDurationInOpenState(int waitDurationInOpenState) {
+            this.waitDurationInOpenState = waitDurationInOpenState;
+        }
+
+        public int getPermittedCallsInHalfOpenState() {
+            return permittedCallsInHalfOpenState;
+        }
+
+        public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        }
+    }
+
+    /**
+     * Adaptive limit on the number of concurrent calls to BlueButton, shared by all the threads of a client.
+     * The limit grows while calls are fast, and backs off when they get slow or BlueButton reports it is overloaded.
+     */
+    public static class ConcurrencyLimitConfiguration {
+
+        @Min(1)
+        private int initialLimit = 20;
+        @Min(1)
+        private int minLimit = 1;
+        @Min(1)
+        private int maxLimit = 100;
+        @Min(1)
+        private int latencyThreshold = 2000; // ms above which a call backs the limit off
+        @Min(1)
+        @Max(99)
+        private int backoffRatio = 90; // % of the limit kept when backing off
+        @Min(0)
+        private int permitTimeout = 30000; // ms to wait for a slot before failing a request
+
+        ConcurrencyLimitConfiguration() {
+            // Jackson required
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getLatencyThreshold() {
+            return latencyThreshold;
+        }
+
+        public void setLatencyThreshold(int latencyThreshold) {
+            this.latencyThreshold = latencyThreshold;
+        }
+
+        public int getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(int backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public int getPermitTimeout() {
+            return permitTimeout;
+        }
+
+        public void setPermitTimeout(int permitTimeout) {
+            this.permitTimeout = permitTimeout;
+        }
+    }
+
+    /**
+     * Bounds of the number of resources asked for in each page of a search, when it is adapted to the pages fetched so far.
+     * When disabled, every page asks for {@link #getResourcesCount()} resources.
+     */
+    public static class PageSizeConfiguration {
+
+        private boolean enabled = false;
+        @Min(1)
+        private int minCount = 10;
+        @Min(1)
+        @Max(1000)
+        private int maxCount = 500;
+        @Min(1)
+        private int targetLatency = 2000; // ms a page should take
+        @Min(1)
+        private int targetSize = 4; // MB a page should weigh, once decompressed
+
+        PageSizeConfiguration() {
+            // Jackson required
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMinCount() {
+            return minCount;
+        }
+
+        public void setMinCount(int minCount) {
+            this.minCount = minCount;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        public void setMaxCount(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        public int getTargetLatency() {
+            return targetLatency;
+        }
+
+        public void setTargetLatency(int targetLatency) {
+            this.targetLatency = targetLatency;
+        }
+
+        public int getTargetSize() {
+            return targetSize;
+        }
+
+        public void setTargetSize(int targetSize) {
+            this.targetSize = targetSize;
+        }
+    }
+
+    /**
+     * Cache of the Patient and Coverage resources returned by BlueButton, for repeated exports of the same beneficiaries.
+     * Resources are never served from the cache once they are older than the freshness window.
+     */
+    public static class ResponseCacheConfiguration {
+
+        private boolean enabled = false;
+        @Min(1)
+        private int maximumSize = 64; // MB of serialized resources
+        @Min(1)
+        private int freshness = 300; // seconds a resource is served from the cache
+
+        ResponseCacheConfiguration() {
+            // Jackson required
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public int getFreshness() {
+            return freshness;
+        }
+
+        public void setFreshness(int freshness) {
+            this.freshness = freshness;
+        }
+    }
+
+    /**
+     * Cache of the MBI hashes, which are expensive to compute by design.
+     * The store keeps the hashes across restarts. It is keyed by a HMAC of the MBI, so it does not contain any MBI.
+     */
+    public static class MbiHashCacheConfiguration {
+
+        @Min(0)
+        private int maximumSize = 100000; // 0 to disable the cache
+        @Min(1)
+        private int expireAfter = 1440; // minutes
+        private String storePath; // File to persist the hashes to, none when not set
+        @Min(1)
+        private int flushInterval = 10; // seconds between writes of the new hashes to the store
+
+        MbiHashCacheConfiguration() {
+            // Jackson required
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public int getExpireAfter() {
+            return expireAfter;
+        }
+
+        public void setExpireAfter(int expireAfter) {
+            this.expireAfter = expireAfter;
+        }
+
+        public String getStorePath() {
+            return storePath;
+        }
+
+        public void setStorePath(String storePath) {
+            this.storePath = storePath;
+        }
+
+        public int getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(int flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+    }
+
     public static class KeystoreConfiguration {
 
         @NotEmpty
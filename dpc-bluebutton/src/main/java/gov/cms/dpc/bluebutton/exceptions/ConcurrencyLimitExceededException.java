@@ -0,0 +1,13 @@
+package gov.cms.dpc.bluebutton.exceptions;
+
+/**
+ * Thrown when a call to Blue Button cannot get a slot within the concurrency limit in time.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public static final long serialVersionUID = 42L;
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
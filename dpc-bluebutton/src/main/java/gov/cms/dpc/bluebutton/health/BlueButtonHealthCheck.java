@@ -1,7 +1,9 @@
 package gov.cms.dpc.bluebutton.health;
 
 import com.codahale.metrics.health.HealthCheck;
+import gov.cms.dpc.bluebutton.client.AdaptiveConcurrencyLimit;
 import gov.cms.dpc.bluebutton.client.BlueButtonClient;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
 import org.hl7.fhir.dstu3.model.Enumerations;
 
@@ -11,30 +13,48 @@ import javax.inject.Singleton;
 /**
  * {@link HealthCheck} class that verifies whether or not the Blue Button endpoint is accessible.
  * This simply makes a request to the /metadata endpoint and verifies that the returned {@link CapabilityStatement} has an {@link org.hl7.fhir.dstu3.model.Enumerations.PublicationStatus#ACTIVE} status.
+ * <p>
+ * While the {@link CircuitBreaker} is open, Blue Button is reported as unhealthy without making a request.
+ * The state of the breaker and of the {@link AdaptiveConcurrencyLimit} are included in the details of the result.
  */
 @Singleton
 public class BlueButtonHealthCheck extends HealthCheck {
 
     static final String INVALID_MESSAGE = "BlueButton endpoint returned invalid FHIR Metadata";
+    static final String CIRCUIT_OPEN_MESSAGE = "BlueButton circuit breaker is open";
     private final BlueButtonClient client;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
 
     @Inject
-    public BlueButtonHealthCheck(BlueButtonClient client) {
+    public BlueButtonHealthCheck(BlueButtonClient client, CircuitBreaker circuitBreaker, AdaptiveConcurrencyLimit concurrencyLimit) {
         this.client = client;
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimit = concurrencyLimit;
     }
 
     @Override
     protected Result check() {
+        final CircuitBreaker.State state = circuitBreaker.getState();
+        final ResultBuilder result = Result.builder()
+                .withDetail("circuitBreaker", state.toString())
+                .withDetail("failureRate", circuitBreaker.getMetrics().getFailureRate())
+                .withDetail("concurrencyLimit", concurrencyLimit.getLimit())
+                .withDetail("concurrentCalls", concurrencyLimit.getInFlight());
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) {
+            return result.unhealthy().withMessage(CIRCUIT_OPEN_MESSAGE).build();
+        }
+
         // We can do the simplest sanity check on the capabilities statement, is it active or not?
         try {
             final CapabilityStatement capabilityStatement = client.requestCapabilityStatement();
 
             if (capabilityStatement.getStatus() == Enumerations.PublicationStatus.ACTIVE) {
-                return Result.healthy();
+                return result.healthy().build();
             }
-            return Result.unhealthy(INVALID_MESSAGE);
+            return result.unhealthy().withMessage(INVALID_MESSAGE).build();
         } catch (Exception e) {
-            return Result.unhealthy(e.getMessage());
+            return result.unhealthy().withMessage(e.getMessage()).build();
         }
     }
 }
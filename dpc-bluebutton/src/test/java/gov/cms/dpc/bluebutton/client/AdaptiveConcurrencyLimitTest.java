@@ -0,0 +1,130 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.bluebutton.exceptions.ConcurrencyLimitExceededException;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void testLimitAdapts() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(limitConfig(4));
+
+        // Fast calls at the limit grow it
+        for (int i = 0; i < 40; i++) {
+            acquire(limit, 4);
+            release(limit, 4, FAST, false);
+        }
+        assertTrue(limit.getLimit() > 4, "Should grow with fast calls");
+        assertTrue(limit.getLimit() <= 10, "Should not grow past the max");
+
+        // Slow and overloaded calls shrink it
+        final int grown = limit.getLimit();
+        limit.acquire();
+        limit.release(SLOW, false);
+        limit.acquire();
+        limit.release(FAST, true);
+        assertTrue(limit.getLimit() < grown, "Should back off");
+        assertEquals(0, limit.getInFlight(), "Should have released all the slots");
+    }
+
+    @Test
+    void testBackoffOncePerRoundTrip() {
+        final AtomicLong now = new AtomicLong(SLOW);
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(limitConfig(10), now::get);
+
+        // A burst of slow calls, all in flight together, only backs off once
+        acquire(limit, 10);
+        now.addAndGet(SLOW);
+        release(limit, 10, SLOW, false);
+        assertEquals(9, limit.getLimit(), "Should only back off once for the calls in flight together");
+
+        // Overloaded calls started before the backoff do not back off again either
+        acquire(limit, 2);
+        now.addAndGet(FAST);
+        release(limit, 2, 2 * FAST, true);
+        assertEquals(9, limit.getLimit(), "Should not back off again for calls started before the backoff");
+
+        // A slow call started after the backoff does
+        limit.acquire();
+        now.addAndGet(SLOW);
+        limit.release(SLOW, false);
+        assertEquals(8, limit.getLimit(), "Should back off again on the next round trip");
+        assertEquals(0, limit.getInFlight(), "Should have released all the slots");
+    }
+
+    @Test
+    void testFirstBackoff() {
+        final AtomicLong now = new AtomicLong();
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(limitConfig(10), now::get);
+
+        // A slow call which started well after the limit was created
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        limit.acquire();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        limit.release(TimeUnit.SECONDS.toNanos(2), false);
+        assertEquals(9, limit.getLimit(), "Should back off on the first slow call");
+    }
+
+    @Test
+    void testLimitTimeout() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(limitConfig(1));
+        limit.acquire();
+        assertThrows(ConcurrencyLimitExceededException.class, limit::acquire, "Should not get a slot over the limit");
+
+        limit.release(FAST, false);
+        limit.acquire();
+        assertEquals(1, limit.getInFlight());
+    }
+
+    @Test
+    void testAcquireAsync() throws Exception {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(limitConfig(1));
+        assertTrue(limit.acquireAsync().isDone(), "Should get a slot right away under the limit");
+
+        final CompletableFuture<Void> waiting = limit.acquireAsync();
+        assertFalse(waiting.isDone(), "Should wait for a slot over the limit");
+        limit.release(FAST, false);
+        assertTrue(waiting.isDone(), "Should hand the released slot to the waiting caller");
+        assertEquals(1, limit.getInFlight());
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> limit.acquireAsync().get(1, TimeUnit.SECONDS));
+        assertEquals(ConcurrencyLimitExceededException.class, exception.getCause().getClass(), "Should fail once the permit timeout is up");
+        limit.release(FAST, false);
+        assertEquals(0, limit.getInFlight(), "Should not hand a slot to a caller which timed out");
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimit limit, int count) {
+        for (int i = 0; i < count; i++) {
+            limit.acquire();
+        }
+    }
+
+    private static void release(AdaptiveConcurrencyLimit limit, int count, long latency, boolean overloaded) {
+        for (int i = 0; i < count; i++) {
+            limit.release(latency, overloaded);
+        }
+    }
+
+    private static BBClientConfiguration.ConcurrencyLimitConfiguration limitConfig(int initialLimit) {
+        final BBClientConfiguration.ConcurrencyLimitConfiguration config = new BBClientConfiguration().getConcurrencyLimit();
+        config.setInitialLimit(initialLimit);
+        config.setMaxLimit(10);
+        config.setLatencyThreshold(1000);
+        config.setPermitTimeout(10);
+        return config;
+    }
+}
@@ -0,0 +1,75 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class AdaptivePageSizeTest {
+
+    private static final ResourceType EOB = ResourceType.ExplanationOfBenefit;
+    private static final int DEFAULT_COUNT = 100;
+
+    @Test
+    void testDisabled() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize(pageSizeConfig(false), DEFAULT_COUNT);
+        pageSize.recordTotal(EOB, 5);
+        pageSize.recordPage(EOB, 5, TimeUnit.MILLISECONDS.toNanos(10), 5000);
+
+        assertEquals(DEFAULT_COUNT, pageSize.firstPageCount(EOB, 1));
+        assertEquals(DEFAULT_COUNT, pageSize.nextPageCount(EOB, 1000));
+    }
+
+    @Test
+    void testUnobservedType() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize(pageSizeConfig(true), DEFAULT_COUNT);
+
+        assertEquals(DEFAULT_COUNT, pageSize.firstPageCount(EOB, 1), "Should use the default count until pages are observed");
+        assertEquals(DEFAULT_COUNT, pageSize.nextPageCount(EOB, 1000), "Should not exceed the default count until pages are observed");
+    }
+
+    @Test
+    void testLightPatients() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize(pageSizeConfig(true), DEFAULT_COUNT);
+        for (int i = 0; i < 20; i++) {
+            pageSize.recordTotal(EOB, 12);
+            pageSize.recordPage(EOB, 12, TimeUnit.MILLISECONDS.toNanos(120), 12 * 10000);
+        }
+
+        assertEquals(15, pageSize.firstPageCount(EOB, 1), "Should ask for the typical total, with headroom");
+        assertEquals(150, pageSize.firstPageCount(EOB, 10), "Should scale with the number of patients");
+    }
+
+    @Test
+    void testHeavyPatients() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize(pageSizeConfig(true), DEFAULT_COUNT);
+        // 1 ms and 10 KB per resource, so the 2 s target latency allows 2000 resources and the 4 MB target size allows 419
+        pageSize.recordTotal(EOB, 3000);
+        pageSize.recordPage(EOB, 100, TimeUnit.MILLISECONDS.toNanos(100), 100 * 10000);
+
+        assertEquals(419, pageSize.getBudget(EOB), "Should be bound by the target size");
+        assertEquals(419, pageSize.firstPageCount(EOB, 1), "Should ask for as much as the budget allows");
+        assertEquals(50, pageSize.nextPageCount(EOB, 50), "Should ask for the rest of the search");
+        assertEquals(10, pageSize.nextPageCount(EOB, 1), "Should not go under the minimum count");
+    }
+
+    @Test
+    void testSlowPages() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize(pageSizeConfig(true), DEFAULT_COUNT);
+        pageSize.recordPage(EOB, 100, TimeUnit.SECONDS.toNanos(10), 0);
+
+        assertEquals(20, pageSize.getBudget(EOB), "Should be bound by the target latency");
+    }
+
+    private static BBClientConfiguration.PageSizeConfiguration pageSizeConfig(boolean enabled) {
+        final BBClientConfiguration.PageSizeConfiguration config = new BBClientConfiguration().getPageSize();
+        config.setEnabled(enabled);
+        return config;
+    }
+}
@@ -29,9 +29,12 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.MissingResourceException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -54,6 +57,7 @@ class BlueButtonClientTest {
     private static final String[] TEST_PATIENT_IDS = {"20140000008325", "20140000009893"};
 
     private static BlueButtonClient bbc;
+    private static BlueButtonAsyncClient asyncBbc;
     private static ClientAndServer mockServer;
     private static Config conf;
 
@@ -62,6 +66,7 @@ class BlueButtonClientTest {
         conf = getTestConfig();
         final Injector injector = Guice.createInjector(Stage.DEVELOPMENT, new TestModule(), new BlueButtonClientModule<>(getClientConfig()));
         bbc = injector.getInstance(BlueButtonClient.class);
+        asyncBbc = injector.getInstance(BlueButtonAsyncClient.class);
 
         mockServer = ClientAndServer.startClientAndServer(conf.getInt("test.mockServerPort"));
         createMockServerExpectation("/v1/fhir/metadata", HttpStatus.OK_200, getRawXML(METADATA_PATH), List.of());
@@ -225,6 +230,58 @@ class BlueButtonClientTest {
         );
     }
 
+    @Test
+    void shouldGetFHIRFromPatientIDAsync() throws Exception {
+        final Patient ret = asyncBbc.requestPatientFromServer(TEST_PATIENT_ID).get(10, TimeUnit.SECONDS);
+
+        assertNotNull(ret, "The demo Patient object returned from the async client should not be null");
+        assertEquals("Doe", ret.getName().get(0).getFamily(), "The demo Patient object data differs from what is expected");
+    }
+
+    @Test
+    void shouldHaveNextBundleAsync() throws Exception {
+        final Bundle response = asyncBbc.requestEOBFromServer(TEST_PATIENT_ID).get(10, TimeUnit.SECONDS);
+
+        assertEquals(32, response.getTotal(), "The demo patient should have exactly 32 EOBs");
+        assertNotNull(response.getLink(Bundle.LINK_NEXT), "Should have a next link");
+        final Bundle nextResponse = asyncBbc.requestNextBundleFromServer(response).get(10, TimeUnit.SECONDS);
+        assertEquals(10, nextResponse.getEntry().size());
+    }
+
+    @Test
+    void shouldGetCoverageFromPatientIDsAsync() throws Exception {
+        final Bundle response = asyncBbc.requestCoverageFromServer(List.of(TEST_PATIENT_ID), null).get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, response.getTotal(), "The demo patient should have exactly 3 Coverage");
+    }
+
+    @Test
+    void shouldRunRequestsConcurrentlyAsync() throws Exception {
+        // The mock server delays each response by a second, so the requests must be in flight together
+        final long start = System.nanoTime();
+        final List<CompletableFuture<Bundle>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(asyncBbc.requestCoverageFromServer(TEST_PATIENT_ID));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "Should not wait for the requests one at a time");
+        for (CompletableFuture<Bundle> future : futures) {
+            assertEquals(3, future.get().getTotal(), "The demo patient should have exactly 3 Coverage");
+        }
+    }
+
+    @Test
+    void shouldFailWhenResourceNotFoundAsync() {
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> asyncBbc.requestPatientFromServer(TEST_NONEXISTENT_PATIENT_ID).get(10, TimeUnit.SECONDS));
+        assertEquals(ResourceNotFoundException.class, exception.getCause().getClass(), "Should fail with the same exception as the blocking client");
+
+        exception = assertThrows(ExecutionException.class,
+                () -> asyncBbc.requestEOBFromServer(TEST_NONEXISTENT_PATIENT_ID).get(10, TimeUnit.SECONDS));
+        assertEquals(ResourceNotFoundException.class, exception.getCause().getClass(), "Should fail when the patient has no EOBs bundle entries");
+    }
+
     @Test
     void shouldHashMbi() throws GeneralSecurityException {
         // Cases from BFD tests https://github.com/CMSgov/beneficiary-fhir-data/blob/master/apps/bfd-pipeline/bfd-pipeline-rif-load/src/test/java/gov/cms/bfd/pipeline/rif/load/RifLoaderTest.java
@@ -0,0 +1,110 @@
+package gov.cms.dpc.bluebutton.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.CacheTestFixture;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class BlueButtonResponseCacheTest {
+
+    private static final FhirContext context = FhirContext.forDstu3();
+    private static final String PATIENT_ID = "20140000008325";
+
+    private final CacheTestFixture<BBClientConfiguration.ResponseCacheConfiguration> fixture = new CacheTestFixture<>(() -> {
+        final BBClientConfiguration.ResponseCacheConfiguration config = new BBClientConfiguration().getResponseCache();
+        config.setFreshness(300);
+        return config;
+    }, BBClientConfiguration.ResponseCacheConfiguration::setEnabled);
+
+    @Test
+    void testHitsAndMisses() {
+        final BlueButtonResponseCache cache = buildCache(true);
+        final AtomicInteger fetched = new AtomicInteger();
+        final Supplier<Patient> fetcher = () -> {
+            fetched.incrementAndGet();
+            return (Patient) new Patient().setId(PATIENT_ID);
+        };
+
+        final Patient first = cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher);
+        final Patient second = cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher);
+        assertAll(() -> assertEquals(1, fetched.get(), "Should only fetch the patient once"),
+                () -> assertEquals(PATIENT_ID, second.getIdElement().getIdPart(), "Should have the cached patient"),
+                () -> assertNotSame(first, second, "Should parse a fresh copy on each hit"));
+
+        assertEquals(1, fixture.getHits(BlueButtonResponseCache.class));
+        assertEquals(1, fixture.getMisses(BlueButtonResponseCache.class));
+    }
+
+    @Test
+    void testHitsAndMissesAsync() throws Exception {
+        final BlueButtonResponseCache cache = buildCache(true);
+        final AtomicInteger fetched = new AtomicInteger();
+        final Supplier<CompletableFuture<Patient>> fetcher = () -> {
+            fetched.incrementAndGet();
+            return CompletableFuture.completedFuture((Patient) new Patient().setId(PATIENT_ID));
+        };
+
+        cache.getAsync(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher).get();
+        final Patient cached = cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, () -> fail("Should have the patient fetched asynchronously"));
+        assertEquals(PATIENT_ID, cached.getIdElement().getIdPart(), "Should have the cached patient");
+        cache.getAsync(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher).get();
+        assertEquals(1, fetched.get(), "Should only fetch the patient once");
+    }
+
+    @Test
+    void testExpiry() {
+        final BlueButtonResponseCache cache = buildCache(true);
+        final AtomicInteger fetched = new AtomicInteger();
+        final Supplier<Patient> fetcher = () -> {
+            fetched.incrementAndGet();
+            return (Patient) new Patient().setId(PATIENT_ID);
+        };
+
+        cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher);
+        fixture.advance(Duration.ofSeconds(301));
+        cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, fetcher);
+        assertEquals(2, fetched.get(), "Should fetch the patient again once it is stale");
+    }
+
+    @Test
+    void testPagedBundleNotCached() {
+        final BlueButtonResponseCache cache = buildCache(true);
+        final AtomicInteger fetched = new AtomicInteger();
+        final Supplier<Bundle> fetcher = () -> {
+            fetched.incrementAndGet();
+            final Bundle bundle = new Bundle();
+            bundle.addLink().setRelation(Bundle.LINK_NEXT).setUrl("https://bluebutton.test/v1/fhir/Coverage?startIndex=10");
+            return bundle;
+        };
+
+        cache.get(ResourceType.Coverage, PATIENT_ID, Bundle.class, fetcher);
+        cache.get(ResourceType.Coverage, PATIENT_ID, Bundle.class, fetcher);
+        assertEquals(2, fetched.get(), "Should not cache a bundle with more pages");
+    }
+
+    @Test
+    void testDisabled() {
+        final BlueButtonResponseCache cache = buildCache(false);
+        final Patient patient = new Patient();
+
+        assertSame(patient, cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, () -> patient), "Should return the fetched patient");
+        assertSame(patient, cache.get(ResourceType.Patient, PATIENT_ID, Patient.class, () -> patient), "Should fetch the patient again");
+    }
+
+    private BlueButtonResponseCache buildCache(boolean enabled) {
+        return new BlueButtonResponseCache(fixture.cacheConfig(enabled), context, fixture.getRegistry(), fixture.getTicker());
+    }
+}
@@ -0,0 +1,136 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import gov.cms.dpc.testing.CacheTestFixture;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class MbiHashCacheTest {
+
+    private static final byte[] PEPPER = Hex.decode("6E6F747468657265616C706570706572");
+    private static final String MBI = "123456789A";
+
+    private final CacheTestFixture<BBClientConfiguration.MbiHashCacheConfiguration> fixture = new CacheTestFixture<>(() -> {
+        final BBClientConfiguration.MbiHashCacheConfiguration config = new BBClientConfiguration().getMbiHashCache();
+        config.setExpireAfter(1);
+        return config;
+    }, (config, enabled) -> config.setMaximumSize(enabled ? 10 : 0));
+
+    @Test
+    void testHitsAndMisses() throws GeneralSecurityException {
+        final MbiHashCache cache = buildCache(true, null);
+        final AtomicInteger computed = new AtomicInteger();
+        final MbiHashCache.HashFunction hashFunction = mbi -> "hash-" + computed.incrementAndGet();
+
+        assertEquals("hash-1", cache.get(MBI, hashFunction));
+        assertEquals("hash-1", cache.get(MBI, hashFunction), "Should return the cached hash");
+        assertEquals("hash-2", cache.get("3456789", hashFunction));
+        assertEquals(2, computed.get(), "Should only compute each MBI once");
+
+        assertEquals(1, fixture.getHits(MbiHashCache.class));
+        assertEquals(2, fixture.getMisses(MbiHashCache.class));
+    }
+
+    @Test
+    void testDisabled() throws GeneralSecurityException {
+        final MbiHashCache cache = buildCache(false, null);
+        final AtomicInteger computed = new AtomicInteger();
+
+        cache.get(MBI, mbi -> "hash-" + computed.incrementAndGet());
+        assertEquals("hash-2", cache.get(MBI, mbi -> "hash-" + computed.incrementAndGet()), "Should compute the hash every time");
+        assertEquals(0, fixture.getHits(MbiHashCache.class));
+    }
+
+    @Test
+    void testStoreDeferred(@TempDir Path tempDir) throws Exception {
+        final Path storePath = tempDir.resolve("mbi-hashes");
+        final MbiHashCache cache = buildCache(true, storePath);
+        cache.get(MBI, mbi -> "stored-hash");
+
+        assertFalse(Files.readString(storePath, StandardCharsets.UTF_8).contains("stored-hash"), "Should not write the hash on the lookup");
+        cache.flush();
+        assertTrue(Files.readString(storePath, StandardCharsets.UTF_8).contains("stored-hash"), "Should write the hash on the next flush");
+        cache.close();
+    }
+
+    @Test
+    void testStoreSurvivesRestart(@TempDir Path tempDir) throws Exception {
+        final Path storePath = tempDir.resolve("mbi-hashes");
+        final MbiHashCache cache = buildCache(true, storePath);
+        cache.get(MBI, mbi -> "stored-hash");
+        cache.close();
+
+        final String stored = Files.readString(storePath, StandardCharsets.UTF_8);
+        assertTrue(stored.contains("stored-hash"), "Should persist the hash");
+        assertFalse(stored.contains(MBI), "Should not persist the MBI");
+
+        final MbiHashCache restarted = buildCache(true, storePath);
+        assertEquals("stored-hash", restarted.get(MBI, mbi -> fail("Should load the hash from the store")));
+        restarted.close();
+    }
+
+    @Test
+    void testStoreDropsExpiredEntries(@TempDir Path tempDir) throws Exception {
+        final Path storePath = tempDir.resolve("mbi-hashes");
+        final MbiHashCache cache = buildCache(true, storePath);
+        cache.get(MBI, mbi -> "stored-hash");
+        cache.close();
+
+        // Age the stored entry past the expiration
+        final String[] fields = Files.readString(storePath, StandardCharsets.UTF_8).trim().split(" ");
+        final long expired = Long.parseLong(fields[2]) - 2 * 60 * 1000;
+        Files.writeString(storePath, fields[0] + " " + fields[1] + " " + expired + "\n", StandardCharsets.UTF_8);
+
+        final MbiHashCache restarted = buildCache(true, storePath);
+        assertEquals("new-hash", restarted.get(MBI, mbi -> "new-hash"), "Should recompute an expired hash");
+        restarted.close();
+    }
+
+    @Test
+    void testStoreCompacted(@TempDir Path tempDir) throws Exception {
+        final Path storePath = tempDir.resolve("mbi-hashes");
+        final MbiHashCache cache = buildCache(true, storePath);
+
+        // Many more MBIs than the cache can hold, the evicted ones should not stay in the store
+        for (int i = 0; i < 100; i++) {
+            cache.get(String.valueOf(i), mbi -> "hash-" + mbi);
+            if (i % 10 == 0) {
+                cache.flush();
+            }
+        }
+        cache.close();
+        final List<String> stored = Files.readAllLines(storePath, StandardCharsets.UTF_8);
+        assertTrue(stored.size() <= MbiHashCache.COMPACTION_RATIO * 10, "Should compact the store as it grows");
+        assertFalse(stored.isEmpty(), "Should keep the cached hashes in the store");
+        assertTrue(stored.stream().allMatch(line -> line.split(" ").length == 3), "Should only have complete entries");
+    }
+
+    @Test
+    void testStoreDisabled(@TempDir Path tempDir) throws Exception {
+        final Path storePath = tempDir.resolve("mbi-hashes");
+        final MbiHashCache cache = buildCache(false, storePath);
+
+        assertEquals("hash", cache.get(MBI, mbi -> "hash"));
+        cache.close();
+        assertFalse(Files.exists(storePath), "Should not store hashes when the cache is disabled");
+    }
+
+    private MbiHashCache buildCache(boolean enabled, Path storePath) {
+        final BBClientConfiguration.MbiHashCacheConfiguration config = fixture.cacheConfig(enabled);
+        config.setStorePath(storePath == null ? null : storePath.toString());
+        return new MbiHashCache(config, PEPPER, fixture.getRegistry());
+    }
+}
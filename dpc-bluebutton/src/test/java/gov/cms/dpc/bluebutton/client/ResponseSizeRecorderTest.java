@@ -0,0 +1,76 @@
+package gov.cms.dpc.bluebutton.client;
+
+import gov.cms.dpc.testing.BufferedLoggerHandler;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(BufferedLoggerHandler.class)
+class ResponseSizeRecorderTest {
+
+    private static final byte[] BODY = "{\"resourceType\":\"Bundle\",\"entry\":[]}".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testCompressedResponse() throws Exception {
+        final byte[] compressed = gzip(BODY);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        final ByteArrayEntity entity = new ByteArrayEntity(compressed);
+        entity.setContentEncoding("gzip");
+        response.setEntity(entity);
+
+        ResponseSizeRecorder.start();
+        process(response);
+        assertArrayEquals(BODY, EntityUtils.toByteArray(response.getEntity()), "Should decompress the response");
+        final ResponseSizeRecorder.Sizes sizes = ResponseSizeRecorder.stop();
+
+        assertAll(() -> assertEquals(compressed.length, sizes.getCompressed(), "Should count the bytes on the wire"),
+                () -> assertEquals(BODY.length, sizes.getDecompressed(), "Should count the decompressed bytes"));
+    }
+
+    @Test
+    void testUncompressedResponse() throws Exception {
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new ByteArrayEntity(BODY));
+
+        ResponseSizeRecorder.start();
+        process(response);
+        EntityUtils.consume(response.getEntity());
+        final ResponseSizeRecorder.Sizes sizes = ResponseSizeRecorder.stop();
+
+        assertAll(() -> assertEquals(BODY.length, sizes.getCompressed()),
+                () -> assertEquals(BODY.length, sizes.getDecompressed()));
+        assertEquals(0, ResponseSizeRecorder.stop().getCompressed(), "Should reset the sizes");
+    }
+
+    /**
+     * Run the interceptors in the order of the client built by the module
+     */
+    private static void process(HttpResponse response) throws Exception {
+        final HttpClientContext context = HttpClientContext.create();
+        ResponseSizeRecorder.compressedInterceptor().process(response, context);
+        new ResponseContentEncoding().process(response, context);
+        ResponseSizeRecorder.decompressedInterceptor().process(response, context);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
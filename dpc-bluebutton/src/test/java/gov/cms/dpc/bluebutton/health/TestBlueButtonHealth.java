@@ -1,8 +1,11 @@
 package gov.cms.dpc.bluebutton.health;
 
 import com.codahale.metrics.health.HealthCheck;
+import gov.cms.dpc.bluebutton.client.AdaptiveConcurrencyLimit;
 import gov.cms.dpc.bluebutton.client.BlueButtonClient;
+import gov.cms.dpc.bluebutton.config.BBClientConfiguration;
 import gov.cms.dpc.testing.BufferedLoggerHandler;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
 import org.hl7.fhir.dstu3.model.Enumerations;
 import org.junit.jupiter.api.Test;
@@ -10,6 +13,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(BufferedLoggerHandler.class)
@@ -22,7 +27,7 @@ class TestBlueButtonHealth {
 
         final BlueButtonClient bbc = Mockito.mock(BlueButtonClient.class);
         when(bbc.requestCapabilityStatement()).thenReturn(new CapabilityStatement().setStatus(Enumerations.PublicationStatus.ACTIVE));
-        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc);
+        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc, CircuitBreaker.ofDefaults("test"), concurrencyLimit());
 
         final HealthCheck.Result check = blueButtonHealthCheck.check();
         assertTrue(check.isHealthy(), "Mock BlueButton should be healthy");
@@ -36,7 +41,7 @@ class TestBlueButtonHealth {
                 .then(answer -> {
                     throw new RuntimeException(EXCEPTION_MESSAGE);
                 });
-        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc);
+        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc, CircuitBreaker.ofDefaults("test"), concurrencyLimit());
 
         final HealthCheck.Result check = blueButtonHealthCheck.check();
         assertAll(() -> assertFalse(check.isHealthy(), "Mock BlueButton should not healthy"),
@@ -49,10 +54,29 @@ class TestBlueButtonHealth {
 
         final BlueButtonClient bbc = Mockito.mock(BlueButtonClient.class);
         when(bbc.requestCapabilityStatement()).thenReturn(new CapabilityStatement().setStatus(Enumerations.PublicationStatus.DRAFT));
-        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc);
+        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc, CircuitBreaker.ofDefaults("test"), concurrencyLimit());
 
         final HealthCheck.Result check = blueButtonHealthCheck.check();
         assertAll(() -> assertFalse(check.isHealthy(), "Mock BlueButton should not healthy"),
                 () -> assertEquals(BlueButtonHealthCheck.INVALID_MESSAGE, check.getMessage(), "Should throw exact message"));
     }
+
+    @Test
+    void testCircuitBreakerOpen() {
+
+        final BlueButtonClient bbc = Mockito.mock(BlueButtonClient.class);
+        final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("test");
+        circuitBreaker.transitionToOpenState();
+        final BlueButtonHealthCheck blueButtonHealthCheck = new BlueButtonHealthCheck(bbc, circuitBreaker, concurrencyLimit());
+
+        final HealthCheck.Result check = blueButtonHealthCheck.check();
+        assertAll(() -> assertFalse(check.isHealthy(), "Should not be healthy with the breaker open"),
+                () -> assertEquals(BlueButtonHealthCheck.CIRCUIT_OPEN_MESSAGE, check.getMessage(), "Should have the breaker message"),
+                () -> assertEquals("OPEN", check.getDetails().get("circuitBreaker"), "Should report the breaker state"));
+        verify(bbc, never()).requestCapabilityStatement();
+    }
+
+    private static AdaptiveConcurrencyLimit concurrencyLimit() {
+        return new AdaptiveConcurrencyLimit(new BBClientConfiguration().getConcurrencyLimit());
+    }
 }
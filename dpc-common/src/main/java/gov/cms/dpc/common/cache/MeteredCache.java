@@ -0,0 +1,120 @@
+package gov.cms.dpc.common.cache;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import gov.cms.dpc.common.utils.MetricMaker;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Caffeine {@link Cache} which records how well it works, shared by the caches in front of the databases and BlueButton.
+ * <p>
+ * The metrics are registered under the class which owns the cache: the hits and misses meters, the hit rate over the last five minutes, and the size of the cache.
+ * A disabled cache never builds the underlying {@link Cache}: lookups always miss, without being recorded, and entries are never stored.
+ *
+ * @param <K> - the type of the keys
+ * @param <V> - the type of the values
+ */
+public class MeteredCache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final Meter hits;
+    private final Meter misses;
+
+    /**
+     * Create a cache
+     *
+     * @param enabled  - {@code false} to disable the cache
+     * @param builder  - builds the underlying {@link Cache}, only called when the cache is enabled
+     * @param registry - the {@link MetricRegistry} for the cache metrics
+     * @param klass    - the class which owns the cache, to name the metrics
+     */
+    public MeteredCache(boolean enabled, Supplier<Cache<K, V>> builder, MetricRegistry registry, Class<?> klass) {
+        this.cache = enabled ? builder.get() : null;
+
+        final var metricMaker = new MetricMaker(registry, klass);
+        final Map<String, Meter> meters = metricMaker.registerMeters(List.of("hits", "misses"));
+        this.hits = meters.get("hits");
+        this.misses = meters.get("misses");
+        metricMaker.registerCachedGauge("hitRate", () -> {
+            final double requests = hits.getFiveMinuteRate() + misses.getFiveMinuteRate();
+            return requests == 0 ? 0 : hits.getFiveMinuteRate() / requests;
+        });
+        metricMaker.registerCachedGauge("size", () -> cache == null ? 0 : cache.estimatedSize());
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Get a cached value, recording a hit or a miss
+     *
+     * @param key - the key of the value
+     * @return - the cached value, {@code null} on a miss
+     */
+    @Nullable
+    public V getIfPresent(K key) {
+        return getIfPresent(key, value -> true);
+    }
+
+    /**
+     * Get a cached value which is still valid, recording a hit or a miss. A value which is not valid counts as a miss, but is left in the cache.
+     *
+     * @param key     - the key of the value
+     * @param isValid - checks whether the cached value can be used
+     * @return - the cached value, {@code null} on a miss
+     */
+    @Nullable
+    public V getIfPresent(K key, Predicate<? super V> isValid) {
+        if (cache == null) {
+            return null;
+        }
+        final V value = cache.getIfPresent(key);
+        if (value != null && isValid.test(value)) {
+            hits.mark();
+            return value;
+        }
+        misses.mark();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        if (cache != null) {
+            cache.put(key, value);
+        }
+    }
+
+    public void invalidate(K key) {
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * @return - a view of the cached entries, which does not record hits or misses. Empty when the cache is disabled
+     */
+    public Map<K, V> asMap() {
+        return cache == null ? Map.of() : cache.asMap();
+    }
+
+    /**
+     * @return - the total weight of the entries, for caches bounded by weight. The number of entries otherwise
+     */
+    public long weightedSize() {
+        if (cache == null) {
+            return 0;
+        }
+        return cache.policy().eviction()
+                .map(Policy.Eviction::weightedSize)
+                .orElse(OptionalLong.empty())
+                .orElse(cache.estimatedSize());
+    }
+}
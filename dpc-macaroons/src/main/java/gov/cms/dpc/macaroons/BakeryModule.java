@@ -3,26 +3,36 @@ package gov.cms.dpc.macaroons;
 import com.google.inject.PrivateModule;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import gov.cms.dpc.macaroons.store.CachingRootKeyStore;
 import gov.cms.dpc.macaroons.store.IRootKeyStore;
 import gov.cms.dpc.macaroons.store.hibernate.HibernateKeyStore;
 
+import javax.inject.Singleton;
 import java.security.SecureRandom;
 
 public class BakeryModule extends PrivateModule {
 
+    // Each key is a few dozen bytes, so this holds the keys of all the active tokens in a few MB
+    private static final long ROOT_KEY_CACHE_SIZE = 50_000;
+
     public BakeryModule() {
         // Not used
     }
 
     @Override
     protected void configure() {
-        bind(IRootKeyStore.class).to(HibernateKeyStore.class);
         expose(IRootKeyStore.class);
         expose(SecureRandom.class);
         bind(MacaroonBakery.class).toProvider(BakeryProvider.class).in(Scopes.SINGLETON);
         expose(MacaroonBakery.class);
     }
 
+    @Provides
+    @Singleton
+    IRootKeyStore provideRootKeyStore(HibernateKeyStore store) {
+        return new CachingRootKeyStore(store, ROOT_KEY_CACHE_SIZE);
+    }
+
     @Provides
     SecureRandom provideRandom() {
         return new SecureRandom();
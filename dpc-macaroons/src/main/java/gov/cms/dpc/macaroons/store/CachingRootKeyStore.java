@@ -0,0 +1,54 @@
+package gov.cms.dpc.macaroons.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Read-through cache in front of another {@link IRootKeyStore}.
+ * <p>
+ * Root keys never change once they are created, so a key only needs to be read from the underlying store the first time a Macaroon ID is seen,
+ * after that verifying a Macaroon does not leave the process. Keys are cached as they are created, and evicted when they are removed through this store.
+ * The cache is bounded, the least used keys are read again from the underlying store when needed.
+ * Unknown IDs are not cached, they always go to the underlying store, which throws.
+ */
+public class CachingRootKeyStore implements IRootKeyStore {
+
+    private final IRootKeyStore store;
+    private final Cache<String, String> cache;
+
+    /**
+     * Create a cache in front of the given store
+     *
+     * @param store       - {@link IRootKeyStore} to read keys from on a miss
+     * @param maximumSize - maximum number of keys to hold
+     */
+    public CachingRootKeyStore(IRootKeyStore store, long maximumSize) {
+        this.store = store;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public IDKeyPair create() {
+        final IDKeyPair keyPair = this.store.create();
+        this.cache.put(keyPair.getId(), keyPair.getKey());
+        return keyPair;
+    }
+
+    @Override
+    public String get(String macaroonID) {
+        return this.cache.get(macaroonID, this.store::get);
+    }
+
+    @Override
+    public void remove(String macaroonID) {
+        this.store.remove(macaroonID);
+        this.cache.invalidate(macaroonID);
+    }
+
+    @Override
+    public String generateKey() {
+        return this.store.generateKey();
+    }
+}
@@ -21,6 +21,14 @@ public interface IRootKeyStore {
      */
     String get(String macaroonID);
 
+    /**
+     * Remove the RootKey associated to the given Macaroon ID, Macaroons with this ID can no longer be verified.
+     * Does nothing if no key exists
+     *
+     * @param macaroonID - {@link String} macaroon ID to remove key for
+     */
+    void remove(String macaroonID);
+
     /**
      * Generate a random key for use with caveats
      *
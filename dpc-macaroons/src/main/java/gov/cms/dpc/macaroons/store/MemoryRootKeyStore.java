@@ -7,16 +7,21 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Simple wrapper class around a fixed {@link String} root key.
+ * Simple wrapper class around a fixed {@link String} root key, which every created Macaroon shares.
  * Incredibly simplistic, only good for testing
  */
 @Singleton
 public class MemoryRootKeyStore implements IRootKeyStore {
 
+    private static final String ROOT_KEY_ID = "0";
+
     private final String rootKey;
     private final SecureRandom random;
+    private final Map<String, String> keys = new ConcurrentHashMap<>();
 
     @Inject
     public MemoryRootKeyStore(SecureRandom random) {
@@ -24,22 +29,30 @@ public class MemoryRootKeyStore implements IRootKeyStore {
         final byte[] keyBytes = new byte[24];
         random.nextBytes(keyBytes);
         this.rootKey = new String(keyBytes, StandardCharsets.UTF_8);
+        this.keys.put(ROOT_KEY_ID, rootKey);
     }
 
     @Override
     public IDKeyPair create() {
-        return new IDKeyPair("0", rootKey);
+        this.keys.put(ROOT_KEY_ID, rootKey);
+        return new IDKeyPair(ROOT_KEY_ID, rootKey);
     }
 
     @Override
     public String get(String macaroonID) {
-        if (macaroonID.equals("0")) {
-            return rootKey;
+        final String key = this.keys.get(macaroonID);
+        if (key != null) {
+            return key;
         }
 
         throw new BakeryException(String.format("Cannot find root key for ID: %s", macaroonID));
     }
 
+    @Override
+    public void remove(String macaroonID) {
+        this.keys.remove(macaroonID);
+    }
+
     @Override
     public String generateKey() {
         return SecretHelpers.generateSecretKey(this.random);
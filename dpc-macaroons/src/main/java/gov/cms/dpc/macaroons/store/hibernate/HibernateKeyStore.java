@@ -79,4 +79,21 @@ public class HibernateKeyStore implements IRootKeyStore {
         }
     }
 
+    @Override
+    public void remove(String macaroonID) {
+        try (final Session session = this.factory.openSession()) {
+            final Transaction tx = session.beginTransaction();
+            try {
+                final RootKeyEntity entity = session.get(RootKeyEntity.class, macaroonID);
+                if (entity != null) {
+                    session.delete(entity);
+                }
+                tx.commit();
+            } catch (Exception e) {
+                tx.rollback();
+                throw new BakeryException(String.format("Cannot remove key from database. %s", e.getMessage()));
+            }
+        }
+    }
+
 }
@@ -37,6 +37,19 @@ public abstract class AbstractStoreTest {
         assertThrows(BakeryException.class, () -> store.get("1"), "Should throw an exception on unknown ID");
     }
 
+    @Test
+    void removeTest() {
+        final IDKeyPair idKeyPair = store.create();
+        assertEquals(idKeyPair.getKey(), store.get(idKeyPair.getId()), "Keys should be equal");
+
+        store.remove(idKeyPair.getId());
+        assertThrows(BakeryException.class, () -> store.get(idKeyPair.getId()), "Should throw an exception on removed ID");
+        store.remove(idKeyPair.getId());
+
+        // Stores may reuse IDs (e.g. the memory store), so leave a key for the other tests
+        store.create();
+    }
+
     protected abstract void teardown();
 
 
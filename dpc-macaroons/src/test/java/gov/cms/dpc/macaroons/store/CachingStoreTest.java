@@ -0,0 +1,67 @@
+package gov.cms.dpc.macaroons.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingStoreTest extends AbstractStoreTest {
+
+    private static final AtomicInteger reads = new AtomicInteger();
+
+    CachingStoreTest() {
+        super(new CachingRootKeyStore(new CountingStore(new MemoryRootKeyStore(new SecureRandom())), 10));
+    }
+
+    @Test
+    void testKeyReadOnce() {
+        final int before = reads.get();
+        final IDKeyPair idKeyPair = store.create();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(idKeyPair.getKey(), store.get(idKeyPair.getId()), "Keys should be equal");
+        }
+        assertEquals(before, reads.get(), "Should not read a created key from the underlying store");
+
+        final IRootKeyStore reopened = new CachingRootKeyStore(new CountingStore(new MemoryRootKeyStore(new SecureRandom())), 10);
+        reopened.get("0");
+        reopened.get("0");
+        assertEquals(before + 1, reads.get(), "Should only read an existing key once");
+    }
+
+    @Override
+    protected void teardown() {
+        // Not used
+    }
+
+    private static class CountingStore implements IRootKeyStore {
+
+        private final IRootKeyStore store;
+
+        private CountingStore(IRootKeyStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public IDKeyPair create() {
+            return store.create();
+        }
+
+        @Override
+        public String get(String macaroonID) {
+            reads.incrementAndGet();
+            return store.get(macaroonID);
+        }
+
+        @Override
+        public void remove(String macaroonID) {
+            store.remove(macaroonID);
+        }
+
+        @Override
+        public String generateKey() {
+            return store.generateKey();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gov.cms.dpc.queue;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import gov.cms.dpc.common.hibernate.queue.DPCQueueManagedSessionFactory;
@@ -9,10 +10,16 @@ import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.exceptions.JobQueueUnhealthy;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import gov.cms.dpc.queue.models.JobStatusSummary;
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.query.Query;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +27,9 @@ import javax.inject.Inject;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,10 +37,15 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
  * Implements a distributed {@link gov.cms.dpc.queue.models.JobQueueBatch} using a Postgres database
+ * <p>
+ * New batches are signalled to the aggregators with a Postgres NOTIFY on the {@link #NEW_BATCH_CHANNEL} channel.
+ * The first time an aggregator waits for new batches, a listener thread is started, which holds a connection that LISTENs on the channel.
+ * Notifications can be missed (e.g. while reconnecting), so aggregators still poll the queue, just much less often.
  */
 public class DistributedBatchQueue extends JobQueueCommon {
 
@@ -38,15 +53,28 @@ public class DistributedBatchQueue extends JobQueueCommon {
     private static final Logger logger = LoggerFactory.getLogger(DistributedBatchQueue.class);
     private static final String DB_UNHEALTHY = "Database cluster is not responding";
     private static final String JOB_UNHEALTHY = "Aggregator is not making progress on the queue";
+    static final String NEW_BATCH_CHANNEL = "job_queue_batch_new";
+    private static final int LISTEN_TIMEOUT = 10000; // How long to block for notifications before checking the connection, in milliseconds
+    private static final long LISTEN_RETRY_DELAY = 5000; // How long to wait before reconnecting the listener, in milliseconds
+    // Lock a batch and read the progress it last saved, before saving its new progress
+    private static final String BATCH_PROGRESS_QUERY = "SELECT status, patient_index, patient_count FROM job_queue_batch WHERE batch_id = Cast(:batchID as uuid) FOR UPDATE";
+    // Apply the change in the progress of one batch to the summary of its job. The start time of the job is the earliest start time of its batches, and is kept when they are restarted.
+    private static final String UPDATE_SUMMARY_QUERY = "UPDATE job_status_summary s SET " +
+            "queued_count = s.queued_count + :queued, running_count = s.running_count + :running, " +
+            "completed_count = s.completed_count + :completed, failed_count = s.failed_count + :failed, " +
+            "patients_processed = s.patients_processed + :processed, start_time = LEAST(s.start_time, b.start_time), update_time = current_timestamp " +
+            "FROM job_queue_batch b WHERE b.batch_id = Cast(:batchID as uuid) AND s.job_id = b.job_id";
 
     // Object variables
     private final SessionFactory factory;
+    private final AtomicBoolean listenerStarted = new AtomicBoolean(false);
 
     // Metrics
     private final Timer waitTimer; // The wait time for a job to start
     private final Timer partialTimer; // The time to complete each partial of a batch
     private final Timer successTimer; // The work time a successful job takes
     private final Timer failureTimer; // The work time a failed job takes
+    private final Meter notificationMeter; // The new batch notifications received
 
 
     @Inject
@@ -65,6 +93,7 @@ public class DistributedBatchQueue extends JobQueueCommon {
         this.partialTimer = metricBuilder.registerTimer("partialTime");
         this.successTimer = metricBuilder.registerTimer("successTime");
         this.failureTimer = metricBuilder.registerTimer("failureTime");
+        this.notificationMeter = metricBuilder.registerMeter("newBatchNotifications");
         metricBuilder.registerCachedGauge("queueLength", this::queueSize);
     }
 
@@ -85,6 +114,7 @@ public class DistributedBatchQueue extends JobQueueCommon {
                 for ( JobQueueBatch batch : jobBatches ) {
                     session.persist(batch);
                 }
+                session.persist(JobStatusSummary.fromBatches(jobBatches));
                 tx.commit();
             } catch (Exception e) {
                 logger.error("Cannot add job batches to database", e);
@@ -134,6 +164,21 @@ public class DistributedBatchQueue extends JobQueueCommon {
         }
     }
 
+    @Override
+    public Optional<JobStatusSummary> getJobSummary(UUID jobID) {
+        try (final Session session = this.factory.openSession()) {
+            final JobStatusSummary summary = session.get(JobStatusSummary.class, jobID);
+            if ( summary == null ) {
+                return Optional.empty();
+            }
+            // The files are only needed for the manifest of a completed job
+            if ( summary.getStatus() == JobStatus.COMPLETED ) {
+                Hibernate.initialize(summary.getJobQueueBatchFiles());
+            }
+            return Optional.of(summary);
+        }
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Optional<JobQueueBatchFile> getJobBatchFile(UUID organizationID, String fileID) {
@@ -150,6 +195,7 @@ public class DistributedBatchQueue extends JobQueueCommon {
 
     @Override
     public Optional<JobQueueBatch> claimBatch(UUID aggregatorID) {
+        recordClaimAttempt(aggregatorID);
         try (final Session session = this.factory.openSession()) {
             final Transaction tx = session.beginTransaction();
             try {
@@ -181,12 +227,16 @@ public class DistributedBatchQueue extends JobQueueCommon {
 
             query.select(root);
             query.where(root.get("batchID").in(stuckBatchIDs.stream().map(UUID::fromString).collect(Collectors.toList())));
+            // Update the summaries in a consistent order, so concurrent restarts do not deadlock on them
+            query.orderBy(builder.asc(root.get("jobID")));
             final List<JobQueueBatch> stuckJobList = session.createQuery(query).getResultList();
 
             for ( JobQueueBatch stuckJob : stuckJobList ) {
                 logger.warn(String.format("Restarting stuck batch... batchID=%s", stuckJob.getBatchID()));
+                final BatchProgress previous = BatchProgress.of(stuckJob);
                 stuckJob.restartBatch();
                 session.merge(stuckJob);
+                updateJobSummary(session, stuckJob, previous);
             }
         }
     }
@@ -207,14 +257,18 @@ public class DistributedBatchQueue extends JobQueueCommon {
 
         if ( batchID.isPresent() ) {
             JobQueueBatch batch = session.get(JobQueueBatch.class, UUID.fromString(batchID.get()));
+            final BatchProgress previous = BatchProgress.of(batch);
             try {
                 batch.setRunningStatus(aggregatorID);
+                // The patients are lazily loaded, and the aggregator needs them after the session is closed
+                Hibernate.initialize(batch.getPatients());
             } catch (Exception e) {
                 logger.error("Failed to mark job as running. Marking the job as failed", e);
                 batch.setFailedStatus(aggregatorID);
                 return Optional.empty();
             } finally {
                 session.merge(batch);
+                updateJobSummary(session, batch, previous);
             }
 
             final var delay = Duration.between(batch.getStartTime().orElseThrow(), batch.getUpdateTime().orElseThrow());
@@ -226,17 +280,109 @@ public class DistributedBatchQueue extends JobQueueCommon {
         }
     }
 
+    @Override
+    public boolean awaitNewBatches(UUID aggregatorID, long timeout, TimeUnit unit) throws InterruptedException {
+        if (listenerStarted.compareAndSet(false, true)) {
+            final Thread listener = new Thread(this::listenForNewBatches, "queue-batch-listener");
+            listener.setDaemon(true);
+            listener.start();
+        }
+        return super.awaitNewBatches(aggregatorID, timeout, unit);
+    }
+
+    @Override
+    protected void notifyNewBatches() {
+        try (final Session session = this.factory.openSession()) {
+            final Transaction tx = session.beginTransaction();
+            try {
+                session.createNativeQuery("NOTIFY " + NEW_BATCH_CHANNEL).executeUpdate();
+            } finally {
+                tx.commit();
+            }
+        } catch (Exception e) {
+            // Not fatal, the aggregators will find the batches on their next poll
+            logger.warn("Unable to notify the aggregators of new batches", e);
+        }
+    }
+
+    /**
+     * Listen for new batch notifications, and wake up the aggregators of this process when one is received.
+     * Runs until the session factory is closed, reconnecting when the connection is lost.
+     */
+    private void listenForNewBatches() {
+        final ConnectionProvider connectionProvider = this.factory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+
+        while (!this.factory.isClosed()) {
+            Connection connection = null;
+            try {
+                connection = connectionProvider.getConnection();
+                connection.setAutoCommit(true);
+                try (final Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + NEW_BATCH_CHANNEL);
+                }
+                logger.info("Listening for new batches on channel {}", NEW_BATCH_CHANNEL);
+                // Batches may have been submitted while we were not listening
+                signalNewBatches();
+
+                final PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (!this.factory.isClosed()) {
+                    final PGNotification[] notifications = pgConnection.getNotifications(LISTEN_TIMEOUT);
+                    if (notifications != null && notifications.length > 0) {
+                        notificationMeter.mark(notifications.length);
+                        signalNewBatches();
+                    } else if (!connection.isValid(LISTEN_TIMEOUT / 1000)) {
+                        throw new SQLException("Listener connection is no longer valid");
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Unable to listen for new batches, relying on polling until reconnected", e);
+                try {
+                    Thread.sleep(LISTEN_RETRY_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } finally {
+                releaseListenerConnection(connectionProvider, connection);
+            }
+        }
+    }
+
+    private static void releaseListenerConnection(ConnectionProvider connectionProvider, Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            try (final Statement statement = connection.createStatement()) {
+                statement.execute("UNLISTEN " + NEW_BATCH_CHANNEL);
+            }
+        } catch (SQLException e) {
+            logger.debug("Unable to stop listening on the listener connection", e);
+        }
+        try {
+            connectionProvider.closeConnection(connection);
+        } catch (SQLException e) {
+            logger.error("Unable to release the listener connection", e);
+        }
+    }
+
     @Override
     public void pauseBatch(JobQueueBatch job, UUID aggregatorID) {
         try (final Session session = this.factory.openSession()) {
             final Transaction tx = session.beginTransaction();
             try {
+                final BatchProgress previous = BatchProgress.persisted(session, job);
                 job.setPausedStatus(aggregatorID);
                 session.merge(job);
+                updateJobSummary(session, job, previous);
             } finally {
                 tx.commit();
             }
         }
+        // The batch can be picked up by another aggregator
+        notifyNewBatches();
     }
 
     @Override
@@ -245,9 +391,11 @@ public class DistributedBatchQueue extends JobQueueCommon {
             final Transaction tx = session.beginTransaction();
             try {
                 final Optional<OffsetDateTime> lastUpdate = job.getUpdateTime();
+                final BatchProgress previous = BatchProgress.persisted(session, job);
 
                 // We just need to persist the job, as any results will be attached to the job and cascade
                 session.merge(job);
+                updateJobSummary(session, job, previous);
 
                 final var delay = Duration.between(lastUpdate.orElseThrow(), job.getUpdateTime().orElseThrow());
                 partialTimer.update(delay.toMillis(), TimeUnit.MILLISECONDS);
@@ -266,8 +414,10 @@ public class DistributedBatchQueue extends JobQueueCommon {
         try (final Session session = this.factory.openSession()) {
             final Transaction tx = session.beginTransaction();
             try {
+                final BatchProgress previous = BatchProgress.persisted(session, job);
                 job.setCompletedStatus(aggregatorID);
                 session.merge(job);
+                updateJobSummary(session, job, previous);
 
                 final var delay = Duration.between(job.getStartTime().orElseThrow(), job.getCompleteTime().orElseThrow());
                 successTimer.update(delay.toMillis(), TimeUnit.MILLISECONDS);
@@ -282,8 +432,10 @@ public class DistributedBatchQueue extends JobQueueCommon {
         try (final Session session = this.factory.openSession()) {
             final Transaction tx = session.beginTransaction();
             try {
+                final BatchProgress previous = BatchProgress.persisted(session, job);
                 job.setFailedStatus(aggregatorID);
                 session.merge(job);
+                updateJobSummary(session, job, previous);
 
                 final var delay = Duration.between(job.getStartTime().orElseThrow(), job.getUpdateTime().orElseThrow());
                 failureTimer.update(delay.toMillis(), TimeUnit.MILLISECONDS);
@@ -293,6 +445,29 @@ public class DistributedBatchQueue extends JobQueueCommon {
         }
     }
 
+    /**
+     * Apply the change in the progress of a batch to the {@link JobStatusSummary} of its job, as part of the current transaction.
+     * <p>
+     * Only the counters of the summary are incremented, so saving a batch costs the same however many batches the job has.
+     * The increments commute, so concurrent saves of the batches of a job only wait on each other for the summary row lock.
+     *
+     * @param session  - The active database session
+     * @param batch    - The batch which was saved
+     * @param previous - The {@link BatchProgress} of the batch before it was saved
+     */
+    private void updateJobSummary(Session session, JobQueueBatch batch, BatchProgress previous) {
+        final BatchProgress current = BatchProgress.of(batch);
+        session.flush();
+        session.createNativeQuery(UPDATE_SUMMARY_QUERY)
+                .setParameter("queued", current.count(JobStatus.QUEUED) - previous.count(JobStatus.QUEUED))
+                .setParameter("running", current.count(JobStatus.RUNNING) - previous.count(JobStatus.RUNNING))
+                .setParameter("completed", current.count(JobStatus.COMPLETED) - previous.count(JobStatus.COMPLETED))
+                .setParameter("failed", current.count(JobStatus.FAILED) - previous.count(JobStatus.FAILED))
+                .setParameter("processed", current.processed - previous.processed)
+                .setParameter("batchID", batch.getBatchID().toString())
+                .executeUpdate();
+    }
+
     @Override
     public long queueSize() {
         try (final Session session = this.factory.openSession()) {
@@ -335,4 +510,44 @@ public class DistributedBatchQueue extends JobQueueCommon {
             }
         }
     }
+
+    /**
+     * What a batch contributes to the {@link JobStatusSummary} of its job
+     */
+    private static class BatchProgress {
+
+        private final JobStatus status;
+        private final int processed;
+
+        private BatchProgress(JobStatus status, Integer patientIndex, int patientCount) {
+            this.status = status;
+            // Completed batches have their patient index cleared, so count all of their patients
+            this.processed = status == JobStatus.COMPLETED ? patientCount : Optional.ofNullable(patientIndex).orElse(-1) + 1;
+        }
+
+        static BatchProgress of(JobQueueBatch batch) {
+            return new BatchProgress(batch.getStatus(), batch.getPatientIndex().orElse(null), batch.getPatientCount());
+        }
+
+        /**
+         * Lock the batch and read the progress it last saved.
+         * The batch given to the queue may have made progress since it was last saved, so its own state cannot be used.
+         *
+         * @param session - The active database session
+         * @param batch   - The batch about to be saved
+         * @return - the {@link BatchProgress} of the saved batch
+         */
+        static BatchProgress persisted(Session session, JobQueueBatch batch) {
+            final Object[] row = (Object[]) session.createNativeQuery(BATCH_PROGRESS_QUERY)
+                    .setParameter("batchID", batch.getBatchID().toString())
+                    .uniqueResultOptional()
+                    .orElseThrow(() -> new JobQueueFailure(batch.getJobID(), batch.getBatchID(), "The batch is not in the queue"));
+            final Integer patientIndex = row[1] == null ? null : ((Number) row[1]).intValue();
+            return new BatchProgress(JobStatus.values()[((Number) row[0]).intValue()], patientIndex, ((Number) row[2]).intValue());
+        }
+
+        int count(JobStatus status) {
+            return this.status == status ? 1 : 0;
+        }
+    }
 }
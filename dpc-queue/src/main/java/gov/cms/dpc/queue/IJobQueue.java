@@ -2,11 +2,14 @@ package gov.cms.dpc.queue;
 
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import gov.cms.dpc.queue.models.JobStatusSummary;
 import org.hl7.fhir.dstu3.model.ResourceType;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface for submitting/retrieving export jobs to a backing queue.
@@ -25,6 +28,18 @@ public interface IJobQueue {
      */
     UUID createJob(UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes);
 
+    /**
+     * Create and submit a job into the queue, which only fetches the resources updated since a point in time. See {@link #createJob(UUID, String, List, List)}.
+     *
+     * @param orgID         - The organization submitting the job
+     * @param providerID    - The provider submitting the job
+     * @param patients      - The list of patients to fetch data for
+     * @param resourceTypes - The resource types to fetch patient data for
+     * @param since         - Only fetch the resources updated since this time, null to fetch all the resources
+     * @return The UUID of the created job
+     */
+    UUID createJob(UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes, OffsetDateTime since);
+
     /**
      * Find a batch in the queue, regardless of job status. Does not alter the batch.
      *
@@ -41,6 +56,15 @@ public interface IJobQueue {
      */
     List<JobQueueBatch> getJobBatches(UUID jobID);
 
+    /**
+     * Find the status summary of a given job. Does not load the batches of the job.
+     * The files of the job are only loaded once the job has completed.
+     *
+     * @param jobID - the id of the job to search
+     * @return Optional that contains the {@link JobStatusSummary} of the job, if present
+     */
+    Optional<JobStatusSummary> getJobSummary(UUID jobID);
+
     /**
      * Find the {@link JobQueueBatchFile} that corresponds to the given file name
      *
@@ -58,6 +82,18 @@ public interface IJobQueue {
      */
     Optional<JobQueueBatch> claimBatch(UUID aggregatorID);
 
+    /**
+     * Wait until new batches may be available to claim, or until the timeout elapses.
+     * Returns right away if new batches were submitted (or paused batches re-queued) since the aggregator last called {@link #claimBatch(UUID)}.
+     *
+     * @param aggregatorID - the current aggregator waiting for work
+     * @param timeout      - the maximum time to wait
+     * @param unit         - the {@link TimeUnit} of the timeout
+     * @return - {@code true} new batches may be available, {@code false} the timeout elapsed
+     * @throws InterruptedException - if the waiting thread is interrupted
+     */
+    boolean awaitNewBatches(UUID aggregatorID, long timeout, TimeUnit unit) throws InterruptedException;
+
     /**
      * Pauses the current progress and allows another aggregator to pick up the batch.
      *
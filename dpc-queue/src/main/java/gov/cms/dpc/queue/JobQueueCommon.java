@@ -5,15 +5,25 @@ import gov.cms.dpc.queue.models.JobQueueBatch;
 import io.reactivex.Observable;
 import org.hl7.fhir.dstu3.model.ResourceType;
 
+import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public abstract class JobQueueCommon implements IJobQueue {
 
     // Object variables
     private final int batchSize;
 
+    // Signalling of new batches to the aggregators of this process.
+    // Each aggregator remembers the signal count of its last claim, so signals between a claim and the following wait are not lost.
+    private final Object newBatchLock = new Object();
+    private long newBatchSignals = 0;
+    private final Map<UUID, Long> claimedSignals = new ConcurrentHashMap<>();
+
     public abstract void submitJobBatches(List<JobQueueBatch> jobBatches);
 
     public JobQueueCommon(int batchSize) {
@@ -22,17 +32,22 @@ public abstract class JobQueueCommon implements IJobQueue {
 
     @Override
     public UUID createJob(UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes) {
+        return createJob(orgID, providerID, patients, resourceTypes, null);
+    }
+
+    @Override
+    public UUID createJob(UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes, OffsetDateTime since) {
         final UUID jobID = UUID.randomUUID();
 
         List<JobQueueBatch> jobBatches = Observable.fromIterable(patients)
                 .buffer(batchSize)
-                .map(patientBatch -> this.createJobBatch(jobID, orgID, providerID, patientBatch, resourceTypes))
+                .map(patientBatch -> this.createJobBatch(jobID, orgID, providerID, patientBatch, resourceTypes, since))
                 .toList()
                 .blockingGet();
 
         // Expect a single empty job when no patients passed
         if ( jobBatches.isEmpty() && patients.isEmpty() ) {
-            jobBatches.add(this.createJobBatch(jobID, orgID, providerID, Collections.emptyList(), resourceTypes));
+            jobBatches.add(this.createJobBatch(jobID, orgID, providerID, Collections.emptyList(), resourceTypes, since));
         }
 
         // Set the priority of a job batch
@@ -41,14 +56,58 @@ public abstract class JobQueueCommon implements IJobQueue {
         jobBatches.forEach(batch -> batch.setPriority(priority));
 
         this.submitJobBatches(jobBatches);
+        this.notifyNewBatches();
         return jobBatches.stream().map(JobQueueBatch::getJobID).findFirst().orElseThrow(() -> new JobQueueFailure("Unable to create job. No batches to submit."));
     }
 
-    protected JobQueueBatch createJobBatch(UUID jobID, UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes) {
-        return new JobQueueBatch(jobID, orgID, providerID, patients, resourceTypes);
+    protected JobQueueBatch createJobBatch(UUID jobID, UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes, OffsetDateTime since) {
+        return new JobQueueBatch(jobID, orgID, providerID, patients, resourceTypes, since);
     }
 
     public int getBatchSize() {
         return batchSize;
     }
+
+    @Override
+    public boolean awaitNewBatches(UUID aggregatorID, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        synchronized (newBatchLock) {
+            final Long lastClaim = claimedSignals.get(aggregatorID);
+            while (lastClaim != null && lastClaim == newBatchSignals && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(newBatchLock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            return lastClaim == null || lastClaim != newBatchSignals;
+        }
+    }
+
+    /**
+     * Notify the aggregators that new batches are available to claim.
+     * By default, only the aggregators of this process are notified.
+     */
+    protected void notifyNewBatches() {
+        signalNewBatches();
+    }
+
+    /**
+     * Wake up the aggregators of this process that are waiting for new batches
+     */
+    protected void signalNewBatches() {
+        synchronized (newBatchLock) {
+            newBatchSignals++;
+            newBatchLock.notifyAll();
+        }
+    }
+
+    /**
+     * Record that an aggregator is about to look for a batch to claim. Must be called before querying for the batch.
+     *
+     * @param aggregatorID - the aggregator claiming a batch
+     */
+    protected void recordClaimAttempt(UUID aggregatorID) {
+        synchronized (newBatchLock) {
+            claimedSignals.put(aggregatorID, newBatchSignals);
+        }
+    }
 }
@@ -3,6 +3,7 @@ package gov.cms.dpc.queue;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import gov.cms.dpc.queue.models.JobStatusSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +51,13 @@ public class MemoryBatchQueue extends JobQueueCommon {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public synchronized Optional<JobStatusSummary> getJobSummary(UUID jobID) {
+        // Nothing to precompute in memory, summarize the batches on request
+        final List<JobQueueBatch> batches = getJobBatches(jobID);
+        return batches.isEmpty() ? Optional.empty() : Optional.of(JobStatusSummary.fromBatches(batches));
+    }
+
     @Override
     public synchronized Optional<JobQueueBatchFile> getJobBatchFile(UUID organizationID, String fileID) {
         return this.queue.values().stream()
@@ -62,6 +70,7 @@ public class MemoryBatchQueue extends JobQueueCommon {
     @Override
     public synchronized Optional<JobQueueBatch> claimBatch(UUID aggregatorID) {
         logger.debug("Pulling first QUEUED job");
+        recordClaimAttempt(aggregatorID);
         final Optional<JobQueueBatch> first = this.queue.values()
                 .stream()
                 .filter(jobQueueBatch -> jobQueueBatch.getStatus().equals(JobStatus.QUEUED))
@@ -84,6 +93,7 @@ public class MemoryBatchQueue extends JobQueueCommon {
     public synchronized void pauseBatch(JobQueueBatch job, UUID aggregatorID) {
         job.setPausedStatus(aggregatorID);
         job.setUpdateTime();
+        notifyNewBatches();
     }
 
     @Override
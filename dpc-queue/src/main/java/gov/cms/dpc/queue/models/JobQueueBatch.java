@@ -1,11 +1,11 @@
 package gov.cms.dpc.queue.models;
 
-import gov.cms.dpc.common.converters.hibernate.StringListConverter;
 import gov.cms.dpc.queue.JobStatus;
 import gov.cms.dpc.queue.converters.ResourceTypeListConverter;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.hibernate.annotations.Immutable;
 import org.hl7.fhir.dstu3.model.ResourceType;
 
 import javax.persistence.*;
@@ -81,11 +81,23 @@ public class JobQueueBatch implements Serializable {
 
     /**
      * The list of patient-ids for the specified provider from the attribution server
+     * <p>
+     * The list is written once, when the batch is submitted, and is only loaded when the batch is claimed.
+     * Saving the progress of a batch does not rewrite the list, see {@link #patientIndex}.
      */
-    @Convert(converter = StringListConverter.class)
-    @Column(name = "patients", columnDefinition = "text")
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "job_queue_batch_patient", joinColumns = @JoinColumn(name = "batch_id"))
+    @OrderColumn(name = "patient_order")
+    @Column(name = "patient_id", nullable = false)
+    @Immutable
     List<String> patients;
 
+    /**
+     * The number of patients in the batch, so the batch progress can be reported without loading the patients
+     */
+    @Column(name = "patient_count", nullable = false, updatable = false)
+    private int patientCount;
+
     /**
      * The last processed patient index. Null indicates no patients have been processed yet.
      */
@@ -99,6 +111,12 @@ public class JobQueueBatch implements Serializable {
     @Column(name = "resource_types")
     private List<ResourceType> resourceTypes;
 
+    /**
+     * Only the resources updated since this time are fetched. Null indicates all the resources are fetched. Set at job creation.
+     */
+    @Column(name = "since", updatable = false)
+    private OffsetDateTime since;
+
     /**
      * The current aggregator processing the batch. Null indicates no aggregator is processing the batch.
      */
@@ -142,12 +160,18 @@ public class JobQueueBatch implements Serializable {
     }
 
     public JobQueueBatch(UUID jobID, UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes) {
+        this(jobID, orgID, providerID, patients, resourceTypes, null);
+    }
+
+    public JobQueueBatch(UUID jobID, UUID orgID, String providerID, List<String> patients, List<ResourceType> resourceTypes, OffsetDateTime since) {
         this.batchID = UUID.randomUUID();
         this.jobID = jobID;
         this.orgID = orgID;
         this.providerID = providerID;
         this.patients = patients;
+        this.patientCount = patients.size();
         this.resourceTypes = resourceTypes;
+        this.since = since;
         this.status = JobStatus.QUEUED;
         this.submitTime = OffsetDateTime.now(ZoneOffset.UTC);
         this.jobQueueBatchFiles = new ArrayList<>();
@@ -196,10 +220,20 @@ public class JobQueueBatch implements Serializable {
         return priority;
     }
 
+    /**
+     * Get the list of patients of the batch.
+     * The patients are only loaded with a claimed batch, use {@link #getPatientCount()} for the other batches.
+     *
+     * @return the list of patient-ids
+     */
     public List<String> getPatients() {
         return patients;
     }
 
+    public int getPatientCount() {
+        return patientCount;
+    }
+
     public Optional<Integer> getPatientIndex() {
         return Optional.ofNullable(patientIndex);
     }
@@ -208,6 +242,10 @@ public class JobQueueBatch implements Serializable {
         return resourceTypes;
     }
 
+    public Optional<OffsetDateTime> getSince() {
+        return Optional.ofNullable(since);
+    }
+
     public Optional<UUID> getAggregatorID() {
         return Optional.ofNullable(aggregatorID);
     }
@@ -410,9 +448,10 @@ public class JobQueueBatch implements Serializable {
                 .append(providerID, that.providerID)
                 .append(status, that.status)
                 .append(priority, that.priority)
-                .append(patients, that.patients)
+                .append(patientCount, that.patientCount)
                 .append(patientIndex, that.patientIndex)
                 .append(resourceTypes, that.resourceTypes)
+                .append(since, that.since)
                 .append(aggregatorID, that.aggregatorID)
                 .append(updateTime, that.updateTime)
                 .append(submitTime, that.submitTime)
@@ -431,9 +470,10 @@ public class JobQueueBatch implements Serializable {
                 .append(providerID)
                 .append(status)
                 .append(priority)
-                .append(patients)
+                .append(patientCount)
                 .append(patientIndex)
                 .append(resourceTypes)
+                .append(since)
                 .append(aggregatorID)
                 .append(updateTime)
                 .append(submitTime)
@@ -451,9 +491,10 @@ public class JobQueueBatch implements Serializable {
                 ", providerID='" + providerID + '\'' +
                 ", status=" + status +
                 ", priority=" + priority +
-                ", patients=" + patients +
+                ", patientCount=" + patientCount +
                 ", patientIndex=" + patientIndex +
                 ", resourceTypes=" + resourceTypes +
+                ", since=" + since +
                 ", aggregatorID=" + aggregatorID +
                 ", updateTime=" + updateTime +
                 ", submitTime=" + submitTime +
@@ -107,6 +107,12 @@ public class JobQueueBatchFile implements Serializable {
     @Column(name = "file_length")
     private long fileLength;
 
+    @Column(name = "uncompressed_length")
+    private long uncompressedLength;
+
+    @Column(name = "compressed")
+    private boolean compressed;
+
     public JobQueueBatchFile() {
         // for hibernate
     }
@@ -166,6 +172,32 @@ public class JobQueueBatchFile implements Serializable {
         this.fileLength = fileLength;
     }
 
+    /**
+     * The length of the NDJSON content of the file. Same as {@link #getFileLength()}, unless the file is compressed.
+     *
+     * @return - the uncompressed length of the file
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    public void setUncompressedLength(long uncompressedLength) {
+        this.uncompressedLength = uncompressedLength;
+    }
+
+    /**
+     * Whether the file is written gzip compressed. The checksum is always of the uncompressed content.
+     *
+     * @return - {@code true} the file is compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,239 @@
+package gov.cms.dpc.queue.models;
+
+import gov.cms.dpc.queue.JobStatus;
+import gov.cms.dpc.queue.converters.ResourceTypeListConverter;
+import gov.cms.dpc.queue.exceptions.JobQueueFailure;
+import org.hibernate.annotations.Immutable;
+import org.hl7.fhir.dstu3.model.ResourceType;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The JobStatusSummary is a job level view of the {@link JobQueueBatch}es of a job.
+ * It is kept up to date by the queue as the batches move through their {@link JobStatus}, so that the status of a job
+ * can be reported without loading all of its batches.
+ * <p>
+ * The list of files is only loaded once the job has completed.
+ */
+@Entity(name = "job_status_summary")
+public class JobStatusSummary implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    @Id
+    @Column(name = "job_id")
+    private UUID jobID;
+
+    @Column(name = "organization_id")
+    private UUID orgID;
+
+    @Column(name = "provider_id")
+    private String providerID;
+
+    @Convert(converter = ResourceTypeListConverter.class)
+    @Column(name = "resource_types")
+    private List<ResourceType> resourceTypes;
+
+    @Column(name = "batch_count")
+    private int batchCount;
+
+    @Column(name = "queued_count")
+    private int queuedCount;
+
+    @Column(name = "running_count")
+    private int runningCount;
+
+    @Column(name = "completed_count")
+    private int completedCount;
+
+    @Column(name = "failed_count")
+    private int failedCount;
+
+    /**
+     * The number of patients in all the batches of the job
+     */
+    @Column(name = "patient_count")
+    private int patientCount;
+
+    /**
+     * The number of patients processed, across all the batches of the job
+     */
+    @Column(name = "patients_processed")
+    private int patientsProcessed;
+
+    /**
+     * The time the first batch of the job started to work
+     */
+    @Column(name = "start_time", nullable = true)
+    private OffsetDateTime startTime;
+
+    /**
+     * The time the summary was last updated
+     */
+    @Column(name = "update_time", nullable = true)
+    private OffsetDateTime updateTime;
+
+    /**
+     * The files written by the batches of the job. This is the manifest of the job once it has completed.
+     */
+    @OneToMany(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id", insertable = false, updatable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    @Immutable
+    private List<JobQueueBatchFile> jobQueueBatchFiles;
+
+    public JobStatusSummary() {
+        // for hibernate
+    }
+
+    /**
+     * Summarize the batches of a job
+     *
+     * @param batches - all the batches of the job
+     * @return - the summary of the job
+     */
+    public static JobStatusSummary fromBatches(List<JobQueueBatch> batches) {
+        final JobQueueBatch firstBatch = batches.stream().findFirst().orElseThrow(() -> new JobQueueFailure("No job batches to summarize"));
+
+        final JobStatusSummary summary = new JobStatusSummary();
+        summary.jobID = firstBatch.getJobID();
+        summary.orgID = firstBatch.getOrgID();
+        summary.providerID = firstBatch.getProviderID();
+        summary.resourceTypes = firstBatch.getResourceTypes();
+        summary.batchCount = batches.size();
+        summary.jobQueueBatchFiles = new ArrayList<>();
+        for (JobQueueBatch batch : batches) {
+            summary.patientCount += batch.getPatientCount();
+            switch (batch.getStatus()) {
+                case QUEUED:
+                    summary.queuedCount++;
+                    break;
+                case RUNNING:
+                    summary.runningCount++;
+                    break;
+                case COMPLETED:
+                    summary.completedCount++;
+                    break;
+                case FAILED:
+                    summary.failedCount++;
+                    break;
+                default:
+                    break;
+            }
+            // The patient index of a completed batch is cleared
+            summary.patientsProcessed += batch.getStatus() == JobStatus.COMPLETED ? batch.getPatientCount() : batch.getPatientIndex().orElse(-1) + 1;
+            summary.jobQueueBatchFiles.addAll(batch.getJobQueueBatchFiles());
+        }
+        summary.startTime = batches.stream()
+                .map(JobQueueBatch::getStartTime)
+                .flatMap(Optional::stream)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        summary.updateTime = OffsetDateTime.now(ZoneOffset.UTC);
+        return summary;
+    }
+
+    public UUID getJobID() {
+        return jobID;
+    }
+
+    public UUID getOrgID() {
+        return orgID;
+    }
+
+    public String getProviderID() {
+        return providerID;
+    }
+
+    public List<ResourceType> getResourceTypes() {
+        return resourceTypes;
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    public int getQueuedCount() {
+        return queuedCount;
+    }
+
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    public int getPatientsProcessed() {
+        return patientsProcessed;
+    }
+
+    public Optional<OffsetDateTime> getStartTime() {
+        return Optional.ofNullable(startTime);
+    }
+
+    public Optional<OffsetDateTime> getUpdateTime() {
+        return Optional.ofNullable(updateTime);
+    }
+
+    /**
+     * The status of the job as a whole.
+     * A job has failed if any of its batches failed, and has completed once all of its batches have completed.
+     *
+     * @return - the {@link JobStatus} of the job
+     */
+    public JobStatus getStatus() {
+        if (failedCount > 0) {
+            return JobStatus.FAILED;
+        } else if (runningCount > 0) {
+            return JobStatus.RUNNING;
+        } else if (queuedCount > 0) {
+            return JobStatus.QUEUED;
+        }
+        return JobStatus.COMPLETED;
+    }
+
+    /**
+     * The files of the job. Only available once the job has completed.
+     *
+     * @return - the list of {@link JobQueueBatchFile}
+     */
+    public List<JobQueueBatchFile> getJobQueueBatchFiles() {
+        return jobQueueBatchFiles;
+    }
+
+    @Override
+    public String toString() {
+        return "JobStatusSummary{" +
+                "jobID=" + jobID +
+                ", orgID=" + orgID +
+                ", providerID='" + providerID + '\'' +
+                ", resourceTypes=" + resourceTypes +
+                ", batchCount=" + batchCount +
+                ", queuedCount=" + queuedCount +
+                ", runningCount=" + runningCount +
+                ", completedCount=" + completedCount +
+                ", failedCount=" + failedCount +
+                ", patientCount=" + patientCount +
+                ", patientsProcessed=" + patientsProcessed +
+                ", startTime=" + startTime +
+                ", updateTime=" + updateTime +
+                '}';
+    }
+}
@@ -5,6 +5,7 @@ import gov.cms.dpc.common.hibernate.queue.DPCQueueManagedSessionFactory;
 import gov.cms.dpc.queue.exceptions.JobQueueFailure;
 import gov.cms.dpc.queue.models.JobQueueBatch;
 import gov.cms.dpc.queue.models.JobQueueBatchFile;
+import gov.cms.dpc.queue.models.JobStatusSummary;
 import gov.cms.dpc.testing.BufferedLoggerHandler;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -18,6 +19,7 @@ import org.junit.jupiter.api.TestFactory;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
@@ -56,7 +58,9 @@ class QueueTest {
                     final DynamicTest second = DynamicTest.dynamicTest(nameGenerator.apply(queue, "Missing Job"), () -> testMissingJob(queue));
                     final DynamicTest third = DynamicTest.dynamicTest(nameGenerator.apply(queue, "EOB Submission"), () -> testPatientAndEOBSubmission(queue));
                     final DynamicTest fourth = DynamicTest.dynamicTest(nameGenerator.apply(queue, "Invalid batch on queue"), () -> testInvalidJobBatch(queue));
-                    return List.of(first, second, third, fourth);
+                    final DynamicTest fifth = DynamicTest.dynamicTest(nameGenerator.apply(queue, "New batch signalling"), () -> testNewBatchSignalling(queue));
+                    final DynamicTest sixth = DynamicTest.dynamicTest(nameGenerator.apply(queue, "Job summary"), () -> testJobSummary(queue));
+                    return List.of(first, second, third, fourth, fifth, sixth);
                 })
                 .flatMap(Collection::stream);
     }
@@ -74,6 +78,7 @@ class QueueTest {
             try {
                 session.createQuery("delete from job_queue_batch_file").executeUpdate();
                 session.createQuery("delete from job_queue_batch").executeUpdate();
+                session.createQuery("delete from job_status_summary").executeUpdate();
             } finally {
                 tx.commit();
             }
@@ -160,8 +165,12 @@ class QueueTest {
         final var orgID = UUID.randomUUID();
         final var jobID = queue.createJob(orgID, "test-provider-1", List.of("test-patient-1", "test-patient-2"), Arrays.asList(ResourceType.Patient, ResourceType.ExplanationOfBenefit));
 
+        // The patient count is available without claiming the batch
+        assertEquals(2, queue.getJobBatches(jobID).get(0).getPatientCount(), "Should have the patient count");
+
         // Retrieve the job with both resources
         final var workBatch = queue.claimBatch(aggregatorID).get();
+        assertEquals(List.of("test-patient-1", "test-patient-2"), workBatch.getPatients(), "Should have the patients in order");
         workBatch.addJobQueueFile(ResourceType.Patient, 0, 1);
         workBatch.addJobQueueFile(ResourceType.ExplanationOfBenefit, 0, 1);
 
@@ -192,6 +201,63 @@ class QueueTest {
         assertThrows(JobQueueFailure.class, () -> queue.completeBatch(null, aggregatorID), "Should error when completing a job which does not exist");
     }
 
+    void testNewBatchSignalling(JobQueueCommon queue) throws InterruptedException {
+        // Nothing to claim, so the aggregator waits
+        assertTrue(queue.claimBatch(aggregatorID).isEmpty(), "Should not have a job to work");
+
+        // Submitting a job should signal the waiting aggregator
+        queue.createJob(UUID.randomUUID(), "test-provider-1", List.of("test-patient-1"), Collections.singletonList(ResourceType.Patient));
+        assertTrue(queue.awaitNewBatches(aggregatorID, 10, TimeUnit.SECONDS), "Should be signalled of the new batch");
+
+        final var workBatch = queue.claimBatch(aggregatorID);
+        assertTrue(workBatch.isPresent(), "Should have a job to work");
+        queue.failBatch(workBatch.get(), aggregatorID);
+    }
+
+    void testJobSummary(JobQueueCommon queue) {
+        final UUID orgID = UUID.randomUUID();
+        final var jobID = queue.createJob(orgID, "test-provider-1", List.of("test-patient-1", "test-patient-2"), Collections.singletonList(ResourceType.Patient));
+
+        // Queued
+        final JobStatusSummary queued = queue.getJobSummary(jobID).orElseThrow();
+        assertAll(() -> assertEquals(JobStatus.QUEUED, queued.getStatus(), "Job should be queued"),
+                () -> assertEquals(orgID, queued.getOrgID(), "Should have the organization"),
+                () -> assertEquals(1, queued.getBatchCount(), "Should have 1 batch"),
+                () -> assertEquals(2, queued.getPatientCount(), "Should have 2 patients"));
+
+        // Running, with one patient processed
+        final var workBatch = queue.claimBatch(aggregatorID).orElseThrow();
+        workBatch.fetchNextPatient(aggregatorID);
+        queue.completePartialBatch(workBatch, aggregatorID);
+        final JobStatusSummary running = queue.getJobSummary(jobID).orElseThrow();
+        assertAll(() -> assertEquals(JobStatus.RUNNING, running.getStatus(), "Job should be running"),
+                () -> assertEquals(1, running.getPatientsProcessed(), "Should have processed 1 patient"),
+                () -> assertTrue(running.getStartTime().isPresent(), "Should have a start time"));
+
+        // Paused, keeping its progress, then picked up again
+        queue.pauseBatch(workBatch, aggregatorID);
+        final JobStatusSummary paused = queue.getJobSummary(jobID).orElseThrow();
+        assertAll(() -> assertEquals(JobStatus.QUEUED, paused.getStatus(), "Job should be queued again"),
+                () -> assertEquals(1, paused.getQueuedCount(), "Should have 1 queued batch"),
+                () -> assertEquals(0, paused.getRunningCount(), "Should have no running batch"),
+                () -> assertEquals(1, paused.getPatientsProcessed(), "Should keep the processed patient"));
+        final var resumedBatch = queue.claimBatch(aggregatorID).orElseThrow();
+        assertEquals(1, queue.getJobSummary(jobID).orElseThrow().getRunningCount(), "Should have 1 running batch");
+
+        // Completed, with the files of the job
+        resumedBatch.fetchNextPatient(aggregatorID);
+        resumedBatch.addJobQueueFile(ResourceType.Patient, 0, 2);
+        queue.completeBatch(resumedBatch, aggregatorID);
+        final JobStatusSummary completed = queue.getJobSummary(jobID).orElseThrow();
+        assertAll(() -> assertEquals(JobStatus.COMPLETED, completed.getStatus(), "Job should be completed"),
+                () -> assertEquals(1, completed.getCompletedCount(), "Should have 1 completed batch"),
+                () -> assertEquals(0, completed.getQueuedCount() + completed.getRunningCount(), "Should have no other batches"),
+                () -> assertEquals(2, completed.getPatientsProcessed(), "Should have processed all patients"),
+                () -> assertEquals(1, completed.getJobQueueBatchFiles().size(), "Should have the file of the job"));
+
+        assertTrue(queue.getJobSummary(UUID.randomUUID()).isEmpty(), "Should not have a summary for a missing job");
+    }
+
     void testInvalidJobBatch(JobQueueCommon queue) {
         final UUID orgID = UUID.randomUUID();
         final UUID jobID = UUID.randomUUID();
@@ -0,0 +1,57 @@
+package gov.cms.dpc.testing;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Shared setup for the tests of the metered caches: the cache configuration, a {@link Ticker} which only moves when told to, and the registry holding the cache metrics.
+ *
+ * @param <C> - the type of the cache configuration
+ */
+public class CacheTestFixture<C> {
+
+    private final Supplier<C> defaults;
+    private final BiConsumer<C, Boolean> setEnabled;
+    private final AtomicLong now = new AtomicLong();
+    private final MetricRegistry registry = new MetricRegistry();
+
+    /**
+     * @param defaults   - creates the default configuration of the cache
+     * @param setEnabled - enables or disables the cache in the configuration
+     */
+    public CacheTestFixture(Supplier<C> defaults, BiConsumer<C, Boolean> setEnabled) {
+        this.defaults = defaults;
+        this.setEnabled = setEnabled;
+    }
+
+    public C cacheConfig(boolean enabled) {
+        final C config = defaults.get();
+        setEnabled.accept(config, enabled);
+        return config;
+    }
+
+    public Ticker getTicker() {
+        return now::get;
+    }
+
+    public void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public long getHits(Class<?> klass) {
+        return registry.meter(MetricRegistry.name(klass, "hitsMeter")).getCount();
+    }
+
+    public long getMisses(Class<?> klass) {
+        return registry.meter(MetricRegistry.name(klass, "missesMeter")).getCount();
+    }
+}